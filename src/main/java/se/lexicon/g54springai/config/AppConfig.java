@@ -1,23 +1,178 @@
 package se.lexicon.g54springai.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.model.tool.DefaultToolCallingManager;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.retry.support.RetryTemplate;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import se.lexicon.g54springai.memory.ChatMemoryProperties;
+import se.lexicon.g54springai.memory.MappedChatMemoryRepository;
+import se.lexicon.g54springai.memory.ShardedChatMemoryRepository;
+import se.lexicon.g54springai.memory.TokenBudgetChatMemory;
+import se.lexicon.g54springai.routing.RoutingChatModel;
+import se.lexicon.g54springai.routing.RoutingProperties;
+import se.lexicon.g54springai.service.UpstreamCallGuard;
+import se.lexicon.g54springai.store.IndexedNameStore;
+import se.lexicon.g54springai.store.LoggedNameStore;
+import se.lexicon.g54springai.store.NameStore;
+import se.lexicon.g54springai.tools.ParallelToolCallingManager;
+import se.lexicon.g54springai.tools.ToolExecutionProperties;
+import se.lexicon.g54springai.tracing.InMemorySpanExporter;
+import se.lexicon.g54springai.tracing.TraceStore;
+
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 @ComponentScan("se.lexicon.*")
+@EnableConfigurationProperties({RoutingProperties.class, ToolExecutionProperties.class, ChatMemoryProperties.class})
 public class AppConfig {
 
     @Bean
-    public ChatMemory chatMemory() {
+    public ChatMemory chatMemory(ChatMemoryRepository chatMemoryRepository,
+                                 ChatModel chatModel,
+                                 ChatMemoryProperties properties,
+                                 UpstreamCallGuard upstreamCallGuard,
+                                 MeterRegistry meterRegistry) {
         // Chat Memory Types:
         // 1. MessageWindowChatMemory: Keeps a fixed number of recent messages.
         // 2. ChatMemoryRepository: Stores messages in a database or persistent storage.
         // 3. VectorStoreChatMemory: Uses vector embeddings for advanced retrieval.
-        return MessageWindowChatMemory.builder()
-                .maxMessages(10)
-                .build(); // Default window size is 20 messages.
+        // 4. TokenBudgetChatMemory: Keeps as many recent messages as fit in a token budget, older ones are
+        //    summarized in the background.
+        ChatMemoryProperties.Summary summary = properties.summary();
+        ChatOptions summaryOptions = ChatOptions.builder()
+                .model(summary.model())
+                .temperature(0.0)
+                .maxTokens(400)
+                .build();
+        return new TokenBudgetChatMemory(chatMemoryRepository, new JTokkitTokenCountEstimator(), properties.maxTokens(),
+                properties.maxStoredTokens(), summary.enabled() ? chatModel : null, summaryOptions, summary.threads(),
+                upstreamCallGuard, meterRegistry);
+    }
+
+    @Bean
+    public ChatMemoryRepository chatMemoryRepository(ChatMemoryProperties properties, MeterRegistry meterRegistry) {
+        // Where the conversations live:
+        // - in-memory: on the heap, lost on restart, never evicted
+        // - sharded: on the heap, lock-striped, idle and least recently used conversations are evicted (opt-in,
+        //   conversations can be forgotten)
+        // - mapped: append-only memory-mapped segment files, survives restarts (see MappedChatMemoryRepository)
+        ChatMemoryProperties.Sharded sharded = properties.sharded();
+        ChatMemoryProperties.Mapped mapped = properties.mapped();
+        return switch (properties.store()) {
+            case "in-memory" -> new InMemoryChatMemoryRepository();
+            case "sharded" -> new ShardedChatMemoryRepository(sharded.shards(), sharded.idleTtl(),
+                    sharded.maxConversations(), sharded.maxSize().toBytes(), sharded.sweepInterval(), meterRegistry);
+            case "mapped" -> new MappedChatMemoryRepository(Paths.get(mapped.directory()),
+                    Math.toIntExact(mapped.segmentSize().toBytes()), mapped.compactionThreshold(), mapped.syncWrites());
+            default -> throw new IllegalArgumentException("Unknown chat memory store: " + properties.store());
+        };
+    }
+
+    @Bean
+    public NameStore nameStore(@Value("${app.names.store:memory}") String store,
+                               @Value("${app.names.initial:Mehrdad,Elnaz,Simon,Marcus}") String[] initialNames,
+                               @Value("${app.names.log.directory:names}") String directory,
+                               @Value("${app.names.log.snapshot-every:10000}") int snapshotEvery,
+                               @Value("${app.names.log.sync-writes:true}") boolean syncWrites) {
+        // Names managed by the AppToolCalling tools; indexed for substring search, safe for concurrent requests
+        // - memory: starts from the initial names on every restart
+        // - log: append-only log with group commit and snapshots (see LoggedNameStore); initial names on first start
+        return switch (store) {
+            case "memory" -> new IndexedNameStore(List.of(initialNames));
+            case "log" -> new LoggedNameStore(Paths.get(directory), snapshotEvery, syncWrites, List.of(initialNames));
+            default -> throw new IllegalArgumentException("Unknown name store: " + store);
+        };
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler modelIoScheduler(@Value("${app.reactive.io-threads:32}") int threadCap,
+                                      @Value("${app.reactive.io-queue-size:1000}") int queuedTaskCap) {
+        // Bounded pool for blocking file and network I/O (uploads, image and audio model calls) used by the
+        // reactive API, so the blocking work never runs on an event-loop thread.
+        return Schedulers.newBoundedElastic(threadCap, queuedTaskCap, "model-io");
+    }
+
+    @Bean(destroyMethod = "close")
+    @Primary
+    @ConditionalOnProperty(name = "app.routing.enabled", havingValue = "true")
+    public RoutingChatModel routingChatModel(RoutingProperties routing,
+                                             OpenAiChatModel openAiChatModel,
+                                             ToolCallingManager toolCallingManager,
+                                             RetryTemplate retryTemplate,
+                                             ObservationRegistry observationRegistry,
+                                             MeterRegistry meterRegistry) {
+        // Every ChatModel user (services, ChatClient, summarizer) goes through the router when it is enabled.
+        // One model per endpoint/key pair, all with the options of spring.ai.openai.chat.options.
+        if (routing.endpoints().isEmpty()) {
+            throw new IllegalArgumentException("app.routing.enabled needs at least one app.routing.endpoints entry");
+        }
+        OpenAiChatOptions defaultOptions = (OpenAiChatOptions) openAiChatModel.getDefaultOptions();
+        Map<String, ChatModel> models = new LinkedHashMap<>();
+        for (RoutingProperties.Endpoint endpoint : routing.endpoints()) {
+            String name = endpoint.name() != null ? endpoint.name() : "endpoint-" + models.size();
+            OpenAiApi api = OpenAiApi.builder()
+                    .baseUrl(endpoint.baseUrl())
+                    .apiKey(endpoint.apiKey())
+                    .build();
+            models.put(name, OpenAiChatModel.builder()
+                    .openAiApi(api)
+                    .defaultOptions(defaultOptions.copy())
+                    .toolCallingManager(toolCallingManager)
+                    .retryTemplate(retryTemplate)
+                    .observationRegistry(observationRegistry)
+                    .build());
+        }
+        return new RoutingChatModel(models, routing.ejection(), routing.hedging(), meterRegistry);
+    }
+
+    @Bean
+    public SpanProcessor inMemorySpanProcessor(TraceStore traceStore) {
+        // Finished spans (HTTP requests, chat client, model round trips, tool calls, chat memory) go straight to the
+        // in-memory trace store, see /api/traces. Not batched: the export is a few map operations, and a timeline
+        // is complete as soon as its request is.
+        return SimpleSpanProcessor.create(new InMemorySpanExporter(traceStore));
+    }
+
+    @Bean(destroyMethod = "close")
+    public ToolCallingManager toolCallingManager(ToolCallbackResolver toolCallbackResolver,
+                                                 ToolExecutionExceptionProcessor toolExecutionExceptionProcessor,
+                                                 ObservationRegistry observationRegistry,
+                                                 ToolExecutionProperties toolExecution,
+                                                 MeterRegistry meterRegistry) {
+        // Replaces Spring AI's default manager (used by the OpenAI chat model and the routed endpoints): the tool
+        // calls of one model turn run concurrently instead of one after the other, see app.tools.*
+        ToolCallingManager defaultManager = DefaultToolCallingManager.builder()
+                .observationRegistry(observationRegistry)
+                .toolCallbackResolver(toolCallbackResolver)
+                .toolExecutionExceptionProcessor(toolExecutionExceptionProcessor)
+                .build();
+        return new ParallelToolCallingManager(defaultManager, toolCallbackResolver, toolExecutionExceptionProcessor,
+                observationRegistry, meterRegistry, toolExecution);
     }
-}
\ No newline at end of file
+}
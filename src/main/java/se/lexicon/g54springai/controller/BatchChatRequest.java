@@ -0,0 +1,7 @@
+package se.lexicon.g54springai.controller;
+
+import java.util.List;
+
+// Body of POST /api/chat/messages/batch
+public record BatchChatRequest(List<String> questions) {
+}
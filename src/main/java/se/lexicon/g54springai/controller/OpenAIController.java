@@ -1,32 +1,48 @@
 package se.lexicon.g54springai.controller;
 
 import jakarta.servlet.annotation.MultipartConfig;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import reactor.core.publisher.Flux;
+import se.lexicon.g54springai.service.BatchChatResult;
+import se.lexicon.g54springai.service.BatchChatService;
 import se.lexicon.g54springai.service.ChatClientService;
 import se.lexicon.g54springai.service.OpenAIService;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/chat")
 public class OpenAIController {
 
+    // Tomcat's sendfile request attributes (org.apache.tomcat.util.net.Constants / Globals)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     private final OpenAIService service;
     private final ChatClientService clientService;
+    private final BatchChatService batchService;
 
     @Autowired
-    public OpenAIController(OpenAIService service, ChatClientService clientService) {
+    public OpenAIController(OpenAIService service, ChatClientService clientService, BatchChatService batchService) {
         this.service = service;
         this.clientService = clientService;
+        this.batchService = batchService;
     }
 
     @GetMapping
@@ -40,9 +56,22 @@ public class OpenAIController {
             @NotNull(message = "Question cannot be null")
             @NotBlank(message = "Question cannot be blank")
             @Size(max = 200, message = "Question cannot exceed 200 characters")
-            @RequestParam String question
+            @RequestParam String question,
+            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl
     ) {
-        return service.processSimpleChatQuery(question);
+        return service.processSimpleChatQuery(question, isCacheBypassed(cacheControl));
+    }
+
+
+    // Many questions in one request: one NDJSON line {"index":..,"answer":..} or {"index":..,"error":..} per question,
+    // written as soon as it is answered (use the index to restore the order)
+    @PostMapping(value = "/messages/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchChatResult> processBatchChatQuery(
+            @RequestBody BatchChatRequest request,
+            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl
+    ) {
+        return batchService.processBatch(request.questions(), isCacheBypassed(cacheControl));
     }
 
 
@@ -62,9 +91,10 @@ public class OpenAIController {
             @NotNull(message = "Question cannot be null")
             @NotBlank(message = "Question cannot be blank")
             @Size(max = 200, message = "Question cannot exceed 200 characters")
-            @RequestParam String question
+            @RequestParam String question,
+            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl
     ) {
-        return service.processSimpleChatQueryWithContext(question);
+        return service.processSimpleChatQueryWithContext(question, isCacheBypassed(cacheControl));
     }
 
 
@@ -86,14 +116,25 @@ public class OpenAIController {
     }
 
 
+    // Returns the generated image itself (model response format b64_json)
+    @GetMapping(value = "/images/generate", produces = MediaType.IMAGE_PNG_VALUE)
+    public byte[] generateImage(
+            @NotNull(message = "Query cannot be null")
+            @NotBlank(message = "Query cannot be blank")
+            @Size(max = 1000, message = "Query cannot exceed 1000 characters")
+            @RequestParam String query) {
+        return service.generateImage(query);
+    }
+
+
     @PostMapping("/speech-to-text")
     public String speechToText(@RequestParam("file") MultipartFile file) throws IOException {
         return service.speechToText(file);
     }
 
     @GetMapping("/text-to-speech")
-    public ResponseEntity<byte[]> streamAudio(@RequestParam String text) throws IOException {
-        byte[] audioData = service.textToSpeech(text);
+    public ResponseEntity<Resource> streamAudio(@RequestParam String text, HttpServletRequest request) throws IOException {
+        Resource audioData = service.textToSpeechAudio(text);
 
         // Set headers to indicate streaming audio
         HttpHeaders headers = new HttpHeaders();
@@ -101,10 +142,39 @@ public class OpenAIController {
         //headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=output.mp3");
         headers.set(HttpHeaders.CONTENT_DISPOSITION,
                 "attachment; filename=speech_" + System.currentTimeMillis() + ".mp3");
+        headers.setContentLength(audioData.contentLength());
+
+        // Cached audio on disk: Tomcat sends the file with sendfile (kernel to socket, no copy through the heap)
+        // once the handler returns; the body is left empty for it
+        if (audioData.isFile() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, audioData.getFile().getAbsolutePath());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, audioData.contentLength());
+            return new ResponseEntity<>(headers, HttpStatus.OK);
+        }
+        return new ResponseEntity<>(audioData, headers, HttpStatus.OK);
+
+    }
 
 
-        return new ResponseEntity<>(audioData, headers, HttpStatus.OK);
+    // Chunked response: audio is forwarded to the client while the rest of the text is still being synthesized
+    @GetMapping("/text-to-speech/stream")
+    public ResponseEntity<StreamingResponseBody> streamAudioChunked(@RequestParam String text) {
+        Flux<byte[]> audio = service.textToSpeechStream(text);
+        StreamingResponseBody body = outputStream -> {
+            // closing the stream cancels the synthesis when the client goes away
+            try (Stream<byte[]> chunks = audio.toStream()) {
+                Iterator<byte[]> iterator = chunks.iterator();
+                while (iterator.hasNext()) {
+                    outputStream.write(iterator.next());
+                    outputStream.flush();
+                }
+            }
+        };
 
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, "audio/mpeg");
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 
 
@@ -120,11 +190,24 @@ public class OpenAIController {
             @NotBlank(message = "Question cannot be blank")
             @Size(max = 200, message = "Question cannot exceed 200 characters")
             String question) {
-        System.out.println("conversationId = " + conversationId);
-        System.out.println("question = " + question);
         return service.chatMemory(question, conversationId);
     }
 
+    @GetMapping("/messages/chat-memory/stream")
+    public Flux<String> chatMemoryStream(
+            @RequestParam
+            @NotNull(message = "Conversation ID cannot be null")
+            @NotBlank(message = "Conversation ID cannot be blank")
+            @Size(max = 36, message = "Conversation ID cannot exceed 36 characters")
+            String conversationId,
+            @RequestParam
+            @NotNull(message = "Question cannot be null")
+            @NotBlank(message = "Question cannot be blank")
+            @Size(max = 200, message = "Question cannot exceed 200 characters")
+            String question) {
+        return service.chatMemoryStream(question, conversationId);
+    }
+
     @GetMapping("/reset-chat")
     public void resetChat(
             @RequestParam
@@ -147,9 +230,26 @@ public class OpenAIController {
                                 @NotBlank(message = "Question cannot be blank")
                                 @Size(max = 200, message = "Question cannot exceed 200 characters")
                                 String question) {
-        System.out.println("conversationId = " + conversationId);
-        System.out.println("question = " + question);
         return clientService.chatMemory(question, conversationId);
     }
 
+    @GetMapping("/messages/new-chat-memory/stream")
+    public Flux<String> newChatMemoryStream(@RequestParam
+                                            @NotNull(message = "Conversation ID cannot be null")
+                                            @NotBlank(message = "Conversation ID cannot be blank")
+                                            @Size(max = 36, message = "Conversation ID cannot exceed 36 characters")
+                                            String conversationId,
+                                            @RequestParam
+                                            @NotNull(message = "Question cannot be null")
+                                            @NotBlank(message = "Question cannot be blank")
+                                            @Size(max = 200, message = "Question cannot exceed 200 characters")
+                                            String question) {
+        return clientService.chatMemoryStream(question, conversationId);
+    }
+
+    // "Cache-Control: no-cache" (or no-store) asks for a fresh answer instead of a cached one
+    private static boolean isCacheBypassed(String cacheControl) {
+        return cacheControl != null && (cacheControl.contains("no-cache") || cacheControl.contains("no-store"));
+    }
+
 }
\ No newline at end of file
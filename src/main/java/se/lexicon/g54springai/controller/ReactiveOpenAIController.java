@@ -0,0 +1,120 @@
+package se.lexicon.g54springai.controller;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.lexicon.g54springai.service.ReactiveOpenAIService;
+
+// Same operations as OpenAIController, but every handler returns a Mono/Flux so the request thread is released
+// while the model is working.
+// The app runs on Spring MVC (servlet) even though WebFlux is on the classpath: with both starters present, Spring
+// Boot picks MVC. MVC serves Mono/Flux return values with async request processing, so the Tomcat thread is given
+// back as soon as the handler returns and the response is written when the publisher emits. The model calls
+// themselves are non-blocking (WebClient), but uploads are still read through the servlet API.
+@RestController
+@RequestMapping("/api/reactive/chat")
+public class ReactiveOpenAIController {
+
+    private final ReactiveOpenAIService service;
+
+    @Autowired
+    public ReactiveOpenAIController(ReactiveOpenAIService service) {
+        this.service = service;
+    }
+
+    // http://localhost:8080/api/reactive/chat/messages?question=
+    @GetMapping("/messages")
+    public Mono<String> processSimpleChatQuery(
+            @NotNull(message = "Question cannot be null")
+            @NotBlank(message = "Question cannot be blank")
+            @Size(max = 200, message = "Question cannot exceed 200 characters")
+            @RequestParam String question
+    ) {
+        return service.processSimpleChatQuery(question);
+    }
+
+    @GetMapping("/messages/stream")
+    public Flux<String> processSimpleChatQueryWithStream(
+            @NotNull(message = "Question cannot be null")
+            @NotBlank(message = "Question cannot be blank")
+            @Size(max = 200, message = "Question cannot exceed 200 characters")
+            @RequestParam String question
+    ) {
+        return service.processSimpleChatQueryWithStream(question);
+    }
+
+    @GetMapping("/messages/lexbot")
+    public Mono<String> processSimpleChatQueryWithContext(
+            @NotNull(message = "Question cannot be null")
+            @NotBlank(message = "Question cannot be blank")
+            @Size(max = 200, message = "Question cannot exceed 200 characters")
+            @RequestParam String question
+    ) {
+        return service.processSimpleChatQueryWithContext(question);
+    }
+
+    @PostMapping("/images/describe")
+    public Mono<String> askToProcessImage(@RequestParam
+                                          @NotNull(message = "File cannot be null")
+                                          MultipartFile file) {
+        return service.processImage(file);
+    }
+
+    @GetMapping("/images/generate/url")
+    public Mono<String> generateImageAndReturnUrl(
+            @NotNull(message = "Query cannot be null")
+            @NotBlank(message = "Query cannot be blank")
+            @Size(max = 1000, message = "Query cannot exceed 1000 characters")
+            @RequestParam String query) {
+        return service.generateImageAndReturnUrl(query);
+    }
+
+    @PostMapping("/speech-to-text")
+    public Mono<String> speechToText(@RequestParam("file") MultipartFile file) {
+        return service.speechToText(file);
+    }
+
+    @GetMapping("/text-to-speech")
+    public Mono<ResponseEntity<byte[]>> streamAudio(@RequestParam String text) {
+        return service.textToSpeech(text).map(audioData -> {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.CONTENT_TYPE, "audio/mpeg");
+            headers.set(HttpHeaders.CONTENT_DISPOSITION,
+                    "attachment; filename=speech_" + System.currentTimeMillis() + ".mp3");
+            return new ResponseEntity<>(audioData, headers, HttpStatus.OK);
+        });
+    }
+
+    @GetMapping("/messages/chat-memory")
+    public Mono<String> chatMemory(
+            @RequestParam
+            @NotNull(message = "Conversation ID cannot be null")
+            @NotBlank(message = "Conversation ID cannot be blank")
+            @Size(max = 36, message = "Conversation ID cannot exceed 36 characters")
+            String conversationId,
+            @RequestParam
+            @NotNull(message = "Question cannot be null")
+            @NotBlank(message = "Question cannot be blank")
+            @Size(max = 200, message = "Question cannot exceed 200 characters")
+            String question) {
+        return service.chatMemory(question, conversationId);
+    }
+
+    @GetMapping("/reset-chat")
+    public Mono<Void> resetChat(
+            @RequestParam
+            @NotNull(message = "Conversation ID cannot be null")
+            @NotBlank(message = "Conversation ID cannot be blank")
+            @Size(max = 36, message = "Conversation ID cannot exceed 36 characters")
+            String conversationId) {
+        return service.resetChatMemory(conversationId);
+    }
+}
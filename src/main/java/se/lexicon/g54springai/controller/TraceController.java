@@ -0,0 +1,38 @@
+package se.lexicon.g54springai.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import se.lexicon.g54springai.tracing.TraceStore;
+import se.lexicon.g54springai.tracing.TraceTimeline;
+
+import java.util.List;
+
+// Timelines of recent requests (every request answers with its trace id in the X-Trace-Id header)
+@RestController
+@RequestMapping("/api/traces")
+public class TraceController {
+
+    private final TraceStore traceStore;
+
+    @Autowired
+    public TraceController(TraceStore traceStore) {
+        this.traceStore = traceStore;
+    }
+
+    // http://localhost:8080/api/traces?limit=20
+    @GetMapping
+    public List<TraceTimeline> recentTraces(@RequestParam(defaultValue = "20") int limit) {
+        return traceStore.recent(Math.max(1, Math.min(limit, 200)));
+    }
+
+    @GetMapping("/{traceId}")
+    public ResponseEntity<TraceTimeline> trace(@PathVariable String traceId) {
+        TraceTimeline timeline = traceStore.get(traceId);
+        return timeline != null ? ResponseEntity.ok(timeline) : ResponseEntity.notFound().build();
+    }
+}
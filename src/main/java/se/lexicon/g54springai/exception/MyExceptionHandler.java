@@ -1,6 +1,7 @@
 package se.lexicon.g54springai.exception;
 
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -43,6 +44,17 @@ public class MyExceptionHandler {
         return createErrorResponse(HttpStatus.BAD_REQUEST, violations);
     }
 
+    // Handle upstream overload (admission rejected the call, or the model answered 429/503)
+    @ExceptionHandler(UpstreamOverloadedException.class)
+    public ResponseEntity<ErrorResponse> handleUpstreamOverloaded(UpstreamOverloadedException ex) {
+        System.out.println("HandleUpstreamOverloaded: " + ex.getMessage());
+        ErrorResponse errorResponse = new ErrorResponse(HttpStatus.SERVICE_UNAVAILABLE.value(), new String[]{ex.getMessage()});
+        // overload is short-lived: a client that retries after a second usually gets through
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(errorResponse);
+    }
+
     // Handle runtime exceptions
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<ErrorResponse> handleRuntimeException(RuntimeException ex) {
@@ -0,0 +1,17 @@
+package se.lexicon.g54springai.exception;
+
+// Thrown when a request cannot be admitted to the upstream model because too many calls are already in flight,
+// or when the upstream itself answered that it is rate limited or overloaded. Also used when the local image
+// preprocessing pool is full, which has the same remedy: retry shortly.
+public class UpstreamOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UpstreamOverloadedException(String message) {
+        super(message);
+    }
+
+    public UpstreamOverloadedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
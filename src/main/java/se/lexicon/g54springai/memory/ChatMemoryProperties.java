@@ -0,0 +1,45 @@
+package se.lexicon.g54springai.memory;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+// app.chat-memory.*: where conversations are stored and how much of them is sent with a prompt.
+// - store: in-memory | sharded | mapped, see AppConfig.chatMemoryRepository
+// - maxTokens: budget of the messages sent with every prompt, see TokenBudgetChatMemory
+// - maxStoredTokens: hard cap of a stored conversation, also when summaries fail or fall behind
+@ConfigurationProperties("app.chat-memory")
+public record ChatMemoryProperties(
+        @DefaultValue("in-memory") String store,
+        @DefaultValue("3000") int maxTokens,
+        @DefaultValue("12000") int maxStoredTokens,
+        @DefaultValue Summary summary,
+        @DefaultValue Mapped mapped,
+        @DefaultValue Sharded sharded) {
+
+    // Older messages are folded into a rolling summary written by model, on threads background threads.
+    public record Summary(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("gpt-4.1-mini") String model,
+            @DefaultValue("2") int threads) {
+    }
+
+    // See MappedChatMemoryRepository.
+    public record Mapped(
+            @DefaultValue("chat-memory") String directory,
+            @DefaultValue("64MB") DataSize segmentSize,
+            @DefaultValue("0.5") double compactionThreshold,
+            @DefaultValue("false") boolean syncWrites) {
+    }
+
+    // See ShardedChatMemoryRepository.
+    public record Sharded(
+            @DefaultValue("64") int shards,
+            @DefaultValue("30m") Duration idleTtl,
+            @DefaultValue("100000") long maxConversations,
+            @DefaultValue("256MB") DataSize maxSize,
+            @DefaultValue("1m") Duration sweepInterval) {
+    }
+}
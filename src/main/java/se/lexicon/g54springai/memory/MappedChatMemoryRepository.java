@@ -0,0 +1,414 @@
+package se.lexicon.g54springai.memory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Durable ChatMemoryRepository backed by an append-only log of memory-mapped segment files.
+//
+// Every saveAll/deleteByConversationId appends one record holding the whole conversation (or a tombstone);
+// the latest record of a conversation wins. The heap only holds an index conversationId -> record location,
+// the messages themselves stay in the mapped files (page cache) until they are read.
+//
+// Record layout: [magic int][payload length int][crc32 int][payload]. The magic is written last, so a record
+// torn by a crash is never taken for a complete one; on startup the segments are scanned, a record with a bad
+// checksum ends the scan of its segment and the index is rebuilt from what remains.
+//
+// Sealed segments whose live data drops below compactionThreshold are compacted in the background: their live
+// records are copied to the active segment and the file is deleted (and unmapped, as are all segments on close;
+// the repository cannot be used after close).
+public class MappedChatMemoryRepository implements ChatMemoryRepository, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedChatMemoryRepository.class);
+
+    private static final int MAGIC = 0x43484D31; // "CHM1"
+    private static final int HEADER_BYTES = 12;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final double compactionThreshold;
+    private final boolean syncWrites;
+
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    // readers share the lock; appends, rolls and compaction take it exclusively
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-memory-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Segment active;
+    private boolean closed; // guarded by the write lock
+
+    public MappedChatMemoryRepository(Path directory, int segmentBytes, double compactionThreshold, boolean syncWrites) {
+        if (segmentBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("Segment size is too small");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.compactionThreshold = compactionThreshold;
+        this.syncWrites = syncWrites;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open chat memory log in " + directory, e);
+        }
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Long location = index.get(conversationId);
+            if (location == null) {
+                return List.of();
+            }
+            Segment segment = segments.get(segmentId(location));
+            return MessageCodec.decode(segment.payload(offset(location))).messages();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        append(conversationId, MessageCodec.encode(conversationId, false, messages), false);
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        if (index.containsKey(conversationId)) {
+            append(conversationId, MessageCodec.encode(conversationId, true, List.of()), true);
+        }
+    }
+
+    private void append(String conversationId, byte[] payload, boolean tombstone) {
+        int recordBytes = HEADER_BYTES + payload.length;
+        if (recordBytes > segmentBytes) {
+            throw new IllegalArgumentException("Conversation " + conversationId + " is too large for a segment");
+        }
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            if (active.remaining() < recordBytes) {
+                roll();
+            }
+            int offset = active.write(payload);
+            Long previous = tombstone
+                    ? index.remove(conversationId)
+                    : index.put(conversationId, location(active.id, offset));
+            if (!tombstone) {
+                active.liveBytes += recordBytes;
+            }
+            if (previous != null) {
+                Segment old = segments.get(segmentId(previous));
+                old.liveBytes -= old.recordBytes(offset(previous));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Seals the active segment and starts a new one; called with the write lock held.
+    private void roll() {
+        active.force();
+        active = openSegment(active.id + 1);
+        compactor.execute(this::compact);
+    }
+
+    // One segment per lock hold so appends are not stalled for a whole pass.
+    private void compact() {
+        for (Segment segment : segments.values()) {
+            lock.writeLock().lock();
+            try {
+                if (!closed && needsCompaction(segment)) {
+                    compact(segment);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Write lock held: active, position and liveBytes only change under it.
+    private boolean needsCompaction(Segment segment) {
+        return segment != active && segments.containsKey(segment.id)
+                && segment.liveBytes <= segment.position * compactionThreshold;
+    }
+
+    // Moves the live records of a sealed segment to the active one and deletes its file; write lock held.
+    private void compact(Segment segment) {
+        boolean olderSegmentsExist = segments.firstKey() < segment.id;
+        int offset = 0;
+        while (offset < segment.position) {
+            ByteBuffer payload = segment.payload(offset);
+            int recordBytes = HEADER_BYTES + payload.remaining();
+            MessageCodec.Conversation conversation = MessageCodec.decodeHeader(payload.duplicate());
+            Long current = index.get(conversation.conversationId());
+            boolean live = current != null && current == location(segment.id, offset);
+            // a tombstone must outlive older records of the same conversation
+            boolean keepTombstone = conversation.deleted() && current == null && olderSegmentsExist;
+            if (live || keepTombstone) {
+                byte[] bytes = new byte[payload.remaining()];
+                payload.get(bytes);
+                if (active.remaining() < recordBytes) {
+                    active.force();
+                    active = openSegment(active.id + 1);
+                }
+                int newOffset = active.write(bytes);
+                if (live) {
+                    index.put(conversation.conversationId(), location(active.id, newOffset));
+                    active.liveBytes += recordBytes;
+                }
+            }
+            offset += recordBytes;
+        }
+        active.force();
+        segments.remove(segment.id);
+        segment.unmap();
+        segment.delete();
+    }
+
+    // Rebuilds the index from the segment files; a torn or corrupt record ends the scan of its segment, the later
+    // segments are still read.
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = openSegment(id);
+            segment.scan(this::replay);
+        }
+        active = segments.isEmpty() ? openSegment(0) : segments.lastEntry().getValue();
+    }
+
+    private void replay(Segment segment, int offset, ByteBuffer payload) {
+        int recordBytes = HEADER_BYTES + payload.remaining();
+        MessageCodec.Conversation conversation = MessageCodec.decodeHeader(payload);
+        Long previous = conversation.deleted()
+                ? index.remove(conversation.conversationId())
+                : index.put(conversation.conversationId(), location(segment.id, offset));
+        if (!conversation.deleted()) {
+            segment.liveBytes += recordBytes;
+        }
+        if (previous != null) {
+            Segment old = segments.get(segmentId(previous));
+            old.liveBytes -= old.recordBytes(offset(previous));
+        }
+    }
+
+    private Segment openSegment(int id) {
+        Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            Segment segment = new Segment(id, file, buffer);
+            segments.put(id, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map " + file, e);
+        }
+    }
+
+    private static long location(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    public int conversationCount() {
+        return index.size();
+    }
+
+    // Callers hold the lock; a segment buffer must not be touched once it is unmapped.
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Chat memory log in " + directory + " is closed");
+        }
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+        try {
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Segment segment : segments.values()) {
+                segment.force();
+                segment.unmap();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private interface RecordVisitor {
+        void visit(Segment segment, int offset, ByteBuffer payload);
+    }
+
+    private final class Segment {
+
+        private final int id;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int position;   // end of the last complete record
+        private long liveBytes;  // bytes of records the index still points to (updated under the write lock)
+
+        Segment(int id, Path file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        int remaining() {
+            return segmentBytes - position;
+        }
+
+        // Appends a record and returns its offset; the magic goes in last so a torn write is never valid.
+        int write(byte[] payload) {
+            int offset = position;
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            buffer.putInt(offset + 4, payload.length);
+            buffer.putInt(offset + 8, (int) crc.getValue());
+            buffer.put(offset + HEADER_BYTES, payload);
+            buffer.putInt(offset, MAGIC);
+            position = offset + HEADER_BYTES + payload.length;
+            if (syncWrites) {
+                buffer.force(offset, position - offset);
+            }
+            return offset;
+        }
+
+        ByteBuffer payload(int offset) {
+            int length = buffer.getInt(offset + 4);
+            return buffer.slice(offset + HEADER_BYTES, length);
+        }
+
+        int recordBytes(int offset) {
+            return HEADER_BYTES + buffer.getInt(offset + 4);
+        }
+
+        void scan(RecordVisitor visitor) {
+            int offset = 0;
+            while (offset + HEADER_BYTES <= segmentBytes && buffer.getInt(offset) == MAGIC) {
+                int length = buffer.getInt(offset + 4);
+                if (length < 0 || offset + HEADER_BYTES + length > segmentBytes) {
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(offset + HEADER_BYTES, length);
+                CRC32 crc = new CRC32();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != buffer.getInt(offset + 8)) {
+                    break;
+                }
+                visitor.visit(this, offset, payload);
+                offset += HEADER_BYTES + length;
+            }
+            position = offset;
+            // wipe whatever a crash left behind the last good record so it cannot resurface later
+            for (int i = offset; i < Math.min(offset + HEADER_BYTES, segmentBytes); i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+
+        void force() {
+            buffer.force();
+        }
+
+        // Releases the mapping now instead of whenever the buffer is garbage collected.
+        void unmap() {
+            if (INVOKE_CLEANER == null) {
+                return;
+            }
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException e) {
+                log.debug("Could not unmap {}, leaving it to the garbage collector", file, e);
+            }
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete compacted segment {}", file, e);
+            }
+        }
+    }
+
+    // sun.misc.Unsafe.invokeCleaner is the only way to unmap a buffer explicitly; without it (other JVMs) the
+    // mappings are released by the garbage collector.
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Explicit unmapping is not available", e);
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+}
@@ -0,0 +1,376 @@
+package se.lexicon.g54springai.memory;
+
+import org.springframework.ai.chat.messages.AbstractMessage;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.content.Media;
+import org.springframework.util.MimeType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact binary form of a conversation (conversation id + messages) used by the on-disk repositories.
+// Kept per message: type, text, metadata, media (user and assistant messages), assistant tool calls and tool
+// responses. Metadata values that are strings, booleans, integers, longs, doubles, lists or maps of those keep
+// their type; any other value comes back as its toString(). The message type entry is not stored, every
+// message sets it itself.
+final class MessageCodec {
+
+    private static final byte USER = 1;
+    private static final byte ASSISTANT = 2;
+    private static final byte SYSTEM = 3;
+    private static final byte TOOL = 4;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte INTEGER = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte LIST = 6;
+    private static final byte MAP = 7;
+
+    private static final byte MEDIA_BYTES = 1;
+    private static final byte MEDIA_TEXT = 2;
+
+    private MessageCodec() {
+    }
+
+    record Conversation(String conversationId, boolean deleted, List<Message> messages) {
+    }
+
+    static byte[] encode(String conversationId, boolean deleted, List<Message> messages) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, conversationId);
+            out.writeBoolean(deleted);
+            out.writeInt(messages.size());
+            for (Message message : messages) {
+                writeMessage(out, message);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Conversation decode(ByteBuffer payload) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteBufferInputStream(payload));
+            String conversationId = readString(in);
+            boolean deleted = in.readBoolean();
+            int count = in.readInt();
+            List<Message> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                messages.add(readMessage(in));
+            }
+            return new Conversation(conversationId, deleted, messages);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reads only the conversation id and the tombstone flag (used when scanning segments); messages are left out.
+    static Conversation decodeHeader(ByteBuffer payload) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteBufferInputStream(payload));
+            String conversationId = readString(in);
+            return new Conversation(conversationId, in.readBoolean(), List.of());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeMessage(DataOutputStream out, Message message) throws IOException {
+        MessageType type = message.getMessageType();
+        switch (type) {
+            case USER -> {
+                out.writeByte(USER);
+                writeString(out, message.getText());
+                writeMetadata(out, message.getMetadata());
+                writeMedia(out, ((UserMessage) message).getMedia());
+            }
+            case SYSTEM -> {
+                out.writeByte(SYSTEM);
+                writeString(out, message.getText());
+                writeMetadata(out, message.getMetadata());
+            }
+            case ASSISTANT -> {
+                AssistantMessage assistantMessage = (AssistantMessage) message;
+                out.writeByte(ASSISTANT);
+                writeString(out, message.getText());
+                writeMetadata(out, message.getMetadata());
+                writeMedia(out, assistantMessage.getMedia());
+                List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+                out.writeInt(toolCalls.size());
+                for (AssistantMessage.ToolCall toolCall : toolCalls) {
+                    writeString(out, toolCall.id());
+                    writeString(out, toolCall.type());
+                    writeString(out, toolCall.name());
+                    writeString(out, toolCall.arguments());
+                }
+            }
+            case TOOL -> {
+                out.writeByte(TOOL);
+                writeMetadata(out, message.getMetadata());
+                List<ToolResponseMessage.ToolResponse> responses = ((ToolResponseMessage) message).getResponses();
+                out.writeInt(responses.size());
+                for (ToolResponseMessage.ToolResponse response : responses) {
+                    writeString(out, response.id());
+                    writeString(out, response.name());
+                    writeString(out, response.responseData());
+                }
+            }
+        }
+    }
+
+    private static Message readMessage(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case USER: {
+                String text = readString(in);
+                Map<String, Object> metadata = readMetadata(in);
+                return UserMessage.builder().text(text).metadata(metadata).media(readMedia(in)).build();
+            }
+            case SYSTEM: {
+                String text = readString(in);
+                return SystemMessage.builder().text(text).metadata(readMetadata(in)).build();
+            }
+            case ASSISTANT: {
+                String text = readString(in);
+                Map<String, Object> metadata = readMetadata(in);
+                List<Media> media = readMedia(in);
+                return new AssistantMessage(text, metadata, readToolCalls(in), media);
+            }
+            case TOOL: {
+                Map<String, Object> metadata = readMetadata(in);
+                return new ToolResponseMessage(readToolResponses(in), metadata);
+            }
+            default:
+                throw new IOException("Unknown message type " + type);
+        }
+    }
+
+    private static List<AssistantMessage.ToolCall> readToolCalls(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            toolCalls.add(new AssistantMessage.ToolCall(readString(in), readString(in), readString(in), readString(in)));
+        }
+        return toolCalls;
+    }
+
+    private static List<ToolResponseMessage.ToolResponse> readToolResponses(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            responses.add(new ToolResponseMessage.ToolResponse(readString(in), readString(in), readString(in)));
+        }
+        return responses;
+    }
+
+    private static void writeMetadata(DataOutputStream out, Map<String, Object> metadata) throws IOException {
+        Map<String, Object> stored = new LinkedHashMap<>(metadata);
+        stored.remove(AbstractMessage.MESSAGE_TYPE);
+        out.writeInt(stored.size());
+        for (Map.Entry<String, Object> entry : stored.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, Object> readMetadata(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, Object> metadata = new HashMap<>(Math.max(count * 2, 4));
+        for (int i = 0; i < count; i++) {
+            metadata.put(readString(in), readValue(in));
+        }
+        return metadata;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        switch (value) {
+            case null -> out.writeByte(NULL);
+            case String text -> {
+                out.writeByte(STRING);
+                writeString(out, text);
+            }
+            case Boolean bool -> {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean(bool);
+            }
+            case Integer number -> {
+                out.writeByte(INTEGER);
+                out.writeInt(number);
+            }
+            case Long number -> {
+                out.writeByte(LONG);
+                out.writeLong(number);
+            }
+            case Double number -> {
+                out.writeByte(DOUBLE);
+                out.writeDouble(number);
+            }
+            case List<?> list -> {
+                out.writeByte(LIST);
+                out.writeInt(list.size());
+                for (Object element : list) {
+                    writeValue(out, element);
+                }
+            }
+            case Map<?, ?> map -> {
+                out.writeByte(MAP);
+                out.writeInt(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeString(out, String.valueOf(entry.getKey()));
+                    writeValue(out, entry.getValue());
+                }
+            }
+            default -> {
+                out.writeByte(STRING);
+                writeString(out, value.toString());
+            }
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case BOOLEAN:
+                return in.readBoolean();
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case LIST: {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case MAP: {
+                int size = in.readInt();
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(readString(in), readValue(in));
+                }
+                return map;
+            }
+            default:
+                throw new IOException("Unknown metadata value type " + type);
+        }
+    }
+
+    // media data is either the content itself (bytes) or a reference to it (a URL string)
+    private static void writeMedia(DataOutputStream out, List<Media> media) throws IOException {
+        out.writeInt(media.size());
+        for (Media item : media) {
+            writeString(out, item.getId());
+            writeString(out, item.getName());
+            writeString(out, item.getMimeType().toString());
+            if (item.getData() instanceof byte[] data) {
+                out.writeByte(MEDIA_BYTES);
+                out.writeInt(data.length);
+                out.write(data);
+            } else {
+                out.writeByte(MEDIA_TEXT);
+                writeString(out, String.valueOf(item.getData()));
+            }
+        }
+    }
+
+    private static List<Media> readMedia(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Media> media = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Media.Builder builder = Media.builder()
+                    .id(readString(in))
+                    .name(readString(in))
+                    .mimeType(MimeType.valueOf(readString(in)));
+            byte kind = in.readByte();
+            if (kind == MEDIA_BYTES) {
+                byte[] data = in.readNBytes(in.readInt());
+                builder.data(data);
+            } else if (kind == MEDIA_TEXT) {
+                builder.data(readString(in));
+            } else {
+                throw new IOException("Unknown media kind " + kind);
+            }
+            media.add(builder.build());
+        }
+        return media;
+    }
+
+    // strings are length-prefixed UTF-8; -1 encodes null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) {
+            throw new IOException("Truncated string");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Reads from a (mapped) buffer without copying it first.
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(target, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package se.lexicon.g54springai.memory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// In-memory ChatMemoryRepository that keeps the heap bounded.
+// - Conversations are spread over lock-striped shards, so requests on different conversations rarely share a lock.
+// - Each shard keeps its conversations in LRU order; abandoned conversations are removed by a background sweeper
+//   once they have been idle for idleTtl.
+// - When more than maxConversations or maxBytes (estimated) are held, least recently used conversations are
+//   evicted, starting with the shard that was just written.
+// Gauges: chat.memory.conversations, chat.memory.bytes; counter chat.memory.evictions{cause=idle|count|bytes}.
+public class ShardedChatMemoryRepository implements ChatMemoryRepository, AutoCloseable {
+
+    // rough per-object overhead used by the size estimate
+    private static final int MESSAGE_OVERHEAD_BYTES = 64;
+    private static final int CONVERSATION_OVERHEAD_BYTES = 128;
+
+    private final Shard[] shards;
+    private final long idleTtlNanos;
+    private final long maxConversations;
+    private final long maxBytes;
+
+    private final AtomicLong conversations = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Counter idleEvictions;
+    private final Counter countEvictions;
+    private final Counter bytesEvictions;
+
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-memory-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ShardedChatMemoryRepository(int shardCount, Duration idleTtl, long maxConversations, long maxBytes,
+                                       Duration sweepInterval, MeterRegistry meterRegistry) {
+        if (shardCount <= 0 || maxConversations <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Shard count and limits must be positive");
+        }
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+        this.idleTtlNanos = idleTtl.toNanos();
+        this.maxConversations = maxConversations;
+        this.maxBytes = maxBytes;
+        this.idleEvictions = meterRegistry.counter("chat.memory.evictions", "cause", "idle");
+        this.countEvictions = meterRegistry.counter("chat.memory.evictions", "cause", "count");
+        this.bytesEvictions = meterRegistry.counter("chat.memory.evictions", "cause", "bytes");
+        meterRegistry.gauge("chat.memory.conversations", conversations);
+        meterRegistry.gauge("chat.memory.bytes", bytes);
+        sweeper.scheduleWithFixedDelay(this::sweepIdle, sweepInterval.toMillis(), sweepInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        List<String> ids = new ArrayList<>();
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                ids.addAll(shard.entries.keySet());
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        Shard shard = shardFor(conversationId);
+        shard.lock.lock();
+        try {
+            Entry entry = shard.entries.get(conversationId); // also marks it as most recently used
+            if (entry == null) {
+                return List.of();
+            }
+            entry.lastAccessNanos = System.nanoTime();
+            return entry.messages;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        Entry entry = new Entry(List.copyOf(messages), estimateBytes(conversationId, messages));
+        Shard shard = shardFor(conversationId);
+        shard.lock.lock();
+        try {
+            Entry previous = shard.entries.put(conversationId, entry);
+            if (previous == null) {
+                conversations.incrementAndGet();
+            } else {
+                bytes.addAndGet(-previous.bytes);
+            }
+            bytes.addAndGet(entry.bytes);
+            evictOverCapacity(shard, conversationId);
+        } finally {
+            shard.lock.unlock();
+        }
+        if (overCapacity()) {
+            evictFromOtherShards(shard);
+        }
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        Shard shard = shardFor(conversationId);
+        shard.lock.lock();
+        try {
+            Entry removed = shard.entries.remove(conversationId);
+            if (removed != null) {
+                released(removed);
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    public long conversationCount() {
+        return conversations.get();
+    }
+
+    public long estimatedBytes() {
+        return bytes.get();
+    }
+
+    // Evicts LRU conversations of the given shard (never the one just saved) while over a limit; shard lock held.
+    private void evictOverCapacity(Shard shard, String keep) {
+        Iterator<Map.Entry<String, Entry>> eldest = shard.entries.entrySet().iterator();
+        while (overCapacity() && eldest.hasNext()) {
+            Map.Entry<String, Entry> candidate = eldest.next();
+            if (candidate.getKey().equals(keep)) {
+                continue;
+            }
+            countEviction();
+            eldest.remove();
+            released(candidate.getValue());
+        }
+    }
+
+    // The written shard had nothing left to give: take from the others without waiting on busy ones.
+    private void evictFromOtherShards(Shard written) {
+        for (Shard shard : shards) {
+            if (!overCapacity()) {
+                return;
+            }
+            if (shard == written || !shard.lock.tryLock()) {
+                continue;
+            }
+            try {
+                evictOverCapacity(shard, null);
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    private void sweepIdle() {
+        long now = System.nanoTime();
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                // access order: the first entry that is still fresh ends the sweep of this shard
+                Iterator<Entry> eldest = shard.entries.values().iterator();
+                while (eldest.hasNext()) {
+                    Entry entry = eldest.next();
+                    if (now - entry.lastAccessNanos < idleTtlNanos) {
+                        break;
+                    }
+                    eldest.remove();
+                    released(entry);
+                    idleEvictions.increment();
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    private boolean overCapacity() {
+        return conversations.get() > maxConversations || bytes.get() > maxBytes;
+    }
+
+    private void countEviction() {
+        if (conversations.get() > maxConversations) {
+            countEvictions.increment();
+        } else {
+            bytesEvictions.increment();
+        }
+    }
+
+    private void released(Entry entry) {
+        conversations.decrementAndGet();
+        bytes.addAndGet(-entry.bytes);
+    }
+
+    private Shard shardFor(String conversationId) {
+        int hash = conversationId.hashCode();
+        hash ^= (hash >>> 16); // spread the high bits like HashMap does
+        return shards[Math.floorMod(hash, shards.length)];
+    }
+
+    private static long estimateBytes(String conversationId, List<Message> messages) {
+        long size = CONVERSATION_OVERHEAD_BYTES + 2L * conversationId.length();
+        for (Message message : messages) {
+            size += MESSAGE_OVERHEAD_BYTES + textBytes(message.getText());
+            if (message instanceof AssistantMessage assistantMessage) {
+                for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                    size += MESSAGE_OVERHEAD_BYTES + textBytes(toolCall.name()) + textBytes(toolCall.arguments());
+                }
+            } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+                for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                    size += MESSAGE_OVERHEAD_BYTES + textBytes(response.responseData());
+                }
+            }
+        }
+        return size;
+    }
+
+    private static long textBytes(String text) {
+        return text == null ? 0 : 2L * text.length();
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        // access-ordered: iteration starts at the least recently used conversation
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    private static final class Entry {
+        private final List<Message> messages;
+        private final long bytes;
+        private volatile long lastAccessNanos = System.nanoTime();
+
+        Entry(List<Message> messages, long bytes) {
+            this.messages = messages;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package se.lexicon.g54springai.memory;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import se.lexicon.g54springai.service.UpstreamCallGuard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+// ChatMemory that bounds every prompt by a token budget instead of a message count.
+// - get() returns the rolling summary (if any) plus the newest messages that fit in maxTokens.
+// - Token counts are computed once per message, when it is added, and kept in the metadata of the stored copy
+//   (the caller's message is not modified).
+// - Once the stored messages exceed the budget, the older ones are folded into the rolling summary by the
+//   summarizer model on a background thread, through the UpstreamCallGuard; requests never wait for it. Without a
+//   summarizer the older messages are simply dropped.
+// - Whatever the summarizer does, a conversation never stores more than maxStoredTokens: when summaries fail or fall
+//   behind, the oldest messages (not the summary) are dropped.
+// Every get() records the window it returns: chat.memory.window.messages and chat.memory.window.tokens.
+// Used through the ChatMemory bean, so it applies to OpenAIServiceImpl and ChatClientServiceImpl alike.
+public class TokenBudgetChatMemory implements ChatMemory, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenBudgetChatMemory.class);
+
+    private static final String SUMMARY_PREFIX = "Summary of the earlier conversation:\n";
+    private static final String TOKEN_COUNT = "tokenCount";
+    // role marker and separators that every message adds on top of its text
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+    private static final int LOCK_STRIPES = 64;
+
+    private static final String SUMMARIZE_INSTRUCTIONS = """
+            You maintain a running summary of a conversation between a user and an assistant.
+            Merge the existing summary and the new messages into one updated summary.
+            Keep names, facts, decisions, open questions and user preferences; drop small talk.
+            Answer with the summary only, at most 200 words.
+            """;
+
+    private final ChatMemoryRepository repository;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final int maxTokens;
+    private final int maxStoredTokens;
+    private final ChatModel summarizer;
+    private final ChatOptions summaryOptions;
+    private final UpstreamCallGuard upstreamCallGuard;
+    private final ExecutorService summaryExecutor;
+    private final Set<String> summarizing = ConcurrentHashMap.newKeySet();
+    // add() and the summary write-back read-modify-write the stored conversation; striped so that
+    // different conversations rarely share a lock
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final DistributionSummary windowMessages;
+    private final DistributionSummary windowTokens;
+
+    // summarizer may be null: older messages are then dropped instead of summarized (and upstreamCallGuard is unused)
+    public TokenBudgetChatMemory(ChatMemoryRepository repository, TokenCountEstimator tokenCountEstimator, int maxTokens,
+                                 int maxStoredTokens, ChatModel summarizer, ChatOptions summaryOptions,
+                                 int summaryThreads, UpstreamCallGuard upstreamCallGuard, MeterRegistry meterRegistry) {
+        if (maxTokens <= 0) {
+            throw new IllegalArgumentException("Token budget must be positive");
+        }
+        if (maxStoredTokens < maxTokens) {
+            throw new IllegalArgumentException("Stored token cap must not be below the token budget");
+        }
+        if (summarizer != null && upstreamCallGuard == null) {
+            throw new IllegalArgumentException("A summarizer needs an upstream call guard");
+        }
+        this.repository = repository;
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.maxTokens = maxTokens;
+        this.maxStoredTokens = maxStoredTokens;
+        this.summarizer = summarizer;
+        this.summaryOptions = summaryOptions;
+        this.upstreamCallGuard = upstreamCallGuard;
+        this.summaryExecutor = summarizer == null ? null : Executors.newFixedThreadPool(summaryThreads, runnable -> {
+            Thread thread = new Thread(runnable, "chat-memory-summarizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.windowMessages = DistributionSummary.builder("chat.memory.window.messages").register(meterRegistry);
+        this.windowTokens = DistributionSummary.builder("chat.memory.window.tokens").baseUnit("tokens")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        List<Message> counted = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            counted.add(withTokenCount(message));
+        }
+        int storedTokens;
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            List<Message> stored = new ArrayList<>(repository.findByConversationId(conversationId));
+            stored.addAll(counted);
+            stored = trimToBudget(stored, summarizer == null ? maxTokens : maxStoredTokens);
+            repository.saveAll(conversationId, stored);
+            storedTokens = tokens(stored);
+        } finally {
+            lock.unlock();
+        }
+        if (summarizer != null && storedTokens > maxTokens) {
+            scheduleSummary(conversationId);
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        List<Message> stored = repository.findByConversationId(conversationId);
+        List<Message> window = new ArrayList<>();
+        int budget = maxTokens;
+        int first = 0;
+        if (!stored.isEmpty() && isSummary(stored.get(0))) {
+            window.add(stored.get(0));
+            budget -= tokenCount(stored.get(0));
+            first = 1;
+        }
+        window.addAll(stored.subList(olderThan(stored, first, budget), stored.size()));
+        windowMessages.record(window.size());
+        windowTokens.record(tokens(window));
+        return window;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            repository.deleteByConversationId(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleSummary(String conversationId) {
+        if (!summarizing.add(conversationId)) {
+            return; // one summary per conversation at a time; the next add() catches up
+        }
+        try {
+            summaryExecutor.execute(() -> {
+                try {
+                    summarize(conversationId);
+                } catch (RuntimeException e) {
+                    log.warn("Could not summarize conversation {}", conversationId, e);
+                } finally {
+                    summarizing.remove(conversationId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            summarizing.remove(conversationId);
+        }
+    }
+
+    // Folds everything older than half the budget into the summary; runs off the request path.
+    private void summarize(String conversationId) {
+        List<Message> snapshot = repository.findByConversationId(conversationId);
+        Message oldSummary = !snapshot.isEmpty() && isSummary(snapshot.get(0)) ? snapshot.get(0) : null;
+        int first = oldSummary == null ? 0 : 1;
+        int keepFrom = olderThan(snapshot, first, maxTokens / 2);
+        if (keepFrom <= first) {
+            return;
+        }
+        List<Message> folded = snapshot.subList(first, keepFrom);
+
+        StringBuilder transcript = new StringBuilder();
+        if (oldSummary != null) {
+            transcript.append("Existing summary:\n").append(oldSummary.getText().substring(SUMMARY_PREFIX.length())).append("\n\n");
+        }
+        transcript.append("New messages:\n");
+        for (Message message : folded) {
+            transcript.append(message.getMessageType().getValue()).append(": ").append(textOf(message)).append('\n');
+        }
+        Prompt prompt = new Prompt(
+                List.of(new SystemMessage(SUMMARIZE_INSTRUCTIONS), new UserMessage(transcript.toString())), summaryOptions);
+        ChatResponse response = upstreamCallGuard.call("chat.memory.summary",
+                summaryOptions != null ? summaryOptions.getModel() : null, () -> summarizer.call(prompt));
+        if (response == null || response.getResult() == null || response.getResult().getOutput().getText() == null) {
+            return;
+        }
+        Message summary = withTokenCount(new SystemMessage(SUMMARY_PREFIX + response.getResult().getOutput().getText().trim()));
+
+        ReentrantLock lock = lockFor(conversationId);
+        lock.lock();
+        try {
+            // messages may have been added (or the conversation cleared) while the model was summarizing:
+            // only replace the part that was actually summarized
+            List<Message> current = repository.findByConversationId(conversationId);
+            if (current.size() < keepFrom || !samePrefix(current, snapshot, keepFrom)) {
+                return;
+            }
+            List<Message> updated = new ArrayList<>(current.size() - keepFrom + 1);
+            updated.add(summary);
+            updated.addAll(current.subList(keepFrom, current.size()));
+            repository.saveAll(conversationId, updated);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drops the oldest messages that do not fit in the budget; a summary in front is kept and counts against it.
+    private List<Message> trimToBudget(List<Message> messages, int budget) {
+        int first = !messages.isEmpty() && isSummary(messages.get(0)) ? 1 : 0;
+        int keepFrom = olderThan(messages, first, first == 1 ? budget - tokenCount(messages.get(0)) : budget);
+        if (keepFrom == first) {
+            return messages;
+        }
+        List<Message> trimmed = new ArrayList<>(messages.size() - keepFrom + first);
+        trimmed.addAll(messages.subList(0, first));
+        trimmed.addAll(messages.subList(keepFrom, messages.size()));
+        return trimmed;
+    }
+
+    // Index of the oldest message to keep so that messages[index..] fit in budget (at least the newest is kept);
+    // never splits a tool call from its tool response.
+    private int olderThan(List<Message> messages, int first, int budget) {
+        int index = messages.size();
+        while (index > first) {
+            int cost = tokenCount(messages.get(index - 1));
+            if (cost > budget && index < messages.size()) {
+                break;
+            }
+            budget -= cost;
+            index--;
+        }
+        while (index < messages.size() && messages.get(index).getMessageType() == MessageType.TOOL) {
+            index++;
+        }
+        return index;
+    }
+
+    private int tokens(List<Message> messages) {
+        int total = 0;
+        for (Message message : messages) {
+            total += tokenCount(message);
+        }
+        return total;
+    }
+
+    // Read from the metadata of stored messages; computed again for anything that has none.
+    private int tokenCount(Message message) {
+        if (message.getMetadata().get(TOKEN_COUNT) instanceof Integer cached) {
+            return cached;
+        }
+        return MESSAGE_OVERHEAD_TOKENS + tokenCountEstimator.estimate(textOf(message));
+    }
+
+    // A copy of the message with its token count in the metadata; the message itself may be shared with the
+    // caller (and other threads), so it is never modified.
+    private Message withTokenCount(Message message) {
+        if (message.getMetadata().get(TOKEN_COUNT) instanceof Integer) {
+            return message;
+        }
+        Map<String, Object> metadata = new HashMap<>(message.getMetadata());
+        metadata.put(TOKEN_COUNT, tokenCount(message));
+        return switch (message) {
+            case UserMessage user -> UserMessage.builder().text(user.getText()).media(user.getMedia())
+                    .metadata(metadata).build();
+            case SystemMessage system -> SystemMessage.builder().text(system.getText()).metadata(metadata).build();
+            case AssistantMessage assistant -> new AssistantMessage(assistant.getText(), metadata,
+                    assistant.getToolCalls(), assistant.getMedia());
+            case ToolResponseMessage tool -> new ToolResponseMessage(tool.getResponses(), metadata);
+            default -> message; // unknown message type: counted again when needed
+        };
+    }
+
+    private static String textOf(Message message) {
+        StringBuilder text = new StringBuilder(message.getText() == null ? "" : message.getText());
+        if (message instanceof AssistantMessage assistantMessage) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                text.append(' ').append(toolCall.name()).append(' ').append(toolCall.arguments());
+            }
+        } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                text.append(' ').append(response.responseData());
+            }
+        }
+        return text.toString();
+    }
+
+    // compares type and text only: metadata differs between reads of stores that decode on every read
+    private static boolean samePrefix(List<Message> a, List<Message> b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a.get(i).getMessageType() != b.get(i).getMessageType() || !textOf(a.get(i)).equals(textOf(b.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSummary(Message message) {
+        return message.getMessageType() == MessageType.SYSTEM && message.getText() != null
+                && message.getText().startsWith(SUMMARY_PREFIX);
+    }
+
+    private ReentrantLock lockFor(String conversationId) {
+        return locks[Math.floorMod(conversationId.hashCode(), LOCK_STRIPES)];
+    }
+
+    @Override
+    public void close() {
+        if (summaryExecutor != null) {
+            summaryExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package se.lexicon.g54springai.prompt;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.openai.OpenAiChatOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A preloaded chat prompt: the system message (null when there is none), an optional fixed user text and the
+// options, all built once when the templates are loaded. The options are shared by every call and must not be
+// changed; hand optionsCopy() to code that modifies them (ChatClient adds the tool callbacks to its options).
+public record ChatPromptTemplate(String name, SystemMessage system, String userText, OpenAiChatOptions options) {
+
+    // The system message always comes first: it is byte-identical on every call, so the provider can serve
+    // it (and a conversation's unchanged history after it) from its prompt cache.
+    public Prompt prompt(List<Message> messages) {
+        List<Message> instructions = new ArrayList<>(messages.size() + 1);
+        if (system != null) {
+            instructions.add(system);
+        }
+        instructions.addAll(messages);
+        return new Prompt(instructions, options);
+    }
+
+    public Prompt prompt(Message... messages) {
+        return prompt(List.of(messages));
+    }
+
+    public String systemText() {
+        return system != null ? system.getText() : null;
+    }
+
+    public OpenAiChatOptions optionsCopy() {
+        return options.copy();
+    }
+}
@@ -0,0 +1,25 @@
+package se.lexicon.g54springai.prompt;
+
+import org.springframework.ai.image.ImagePrompt;
+import org.springframework.ai.openai.OpenAiImageOptions;
+
+import java.util.Map;
+
+// A preloaded image prompt: the template is split around its {subject} placeholder once, and the options are
+// built once per response format ("url" or "b64_json"), so rendering is a plain concatenation.
+public record ImagePromptTemplate(String name, String prefix, String suffix, Map<String, OpenAiImageOptions> options) {
+
+    public static final String PLACEHOLDER = "{subject}";
+
+    public ImagePrompt prompt(String subject, String responseFormat) {
+        OpenAiImageOptions imageOptions = options.get(responseFormat);
+        if (imageOptions == null) {
+            throw new IllegalArgumentException("Unsupported response format: " + responseFormat);
+        }
+        return new ImagePrompt(prefix + subject + suffix, imageOptions);
+    }
+
+    public String model() {
+        return options.values().iterator().next().getModel();
+    }
+}
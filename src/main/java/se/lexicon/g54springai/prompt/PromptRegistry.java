@@ -0,0 +1,210 @@
+package se.lexicon.g54springai.prompt;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.OpenAiImageOptions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Prompt texts and model options of the services, loaded from a YAML file (app.prompts.location) into immutable
+// templates once, instead of being rebuilt on every call:
+//   prompts.chat.<name>:  system, user, model, temperature, max-tokens
+//   prompts.image.<name>: template (with one {subject}), model, quality
+// When the file is on the file system it is checked every reload-interval (from startReloading(), which Spring calls
+// once the registry is constructed) and reloaded when it changed. A file that does not parse or misses a template is
+// rejected and the previous templates stay in use.
+@Component
+public class PromptRegistry implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PromptRegistry.class);
+
+    public static final String LEXBOT = "lexbot";
+    public static final String VISION = "vision";
+    public static final String CHAT_MEMORY = "chat-memory";
+    public static final String NAME_TOOLS = "name-tools";
+    public static final String IMAGE = "generate";
+
+    private static final List<String> CHAT_TEMPLATES = List.of(LEXBOT, VISION, CHAT_MEMORY, NAME_TOOLS);
+    private static final List<String> IMAGE_TEMPLATES = List.of(IMAGE);
+    private static final List<String> IMAGE_RESPONSE_FORMATS = List.of("url", "b64_json");
+
+    private record Templates(Map<String, ChatPromptTemplate> chat, Map<String, ImagePromptTemplate> image) {
+    }
+
+    private final Resource location;
+    private final Duration reloadInterval;
+    private ScheduledExecutorService reloader;
+    private volatile Templates templates;
+    private volatile long lastModified;
+
+    @Autowired
+    public PromptRegistry(@Value("${app.prompts.location:classpath:prompts.yml}") Resource location,
+                          @Value("${app.prompts.reload-interval:10s}") Duration reloadInterval) {
+        this.location = location;
+        this.reloadInterval = reloadInterval;
+        this.lastModified = lastModified(location);
+        this.templates = load(location);
+    }
+
+    @PostConstruct
+    public void startReloading() {
+        if (reloader != null || !reloadInterval.isPositive() || !location.isFile()) {
+            return;
+        }
+        reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "prompt-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloader.scheduleWithFixedDelay(this::reloadIfModified, reloadInterval.toMillis(), reloadInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    public ChatPromptTemplate chat(String name) {
+        ChatPromptTemplate template = templates.chat().get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown chat prompt: " + name);
+        }
+        return template;
+    }
+
+    public ImagePromptTemplate image(String name) {
+        ImagePromptTemplate template = templates.image().get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown image prompt: " + name);
+        }
+        return template;
+    }
+
+    // Reloads the templates now; throws (and keeps the current ones) when the file is invalid.
+    public void reload() {
+        long modified = lastModified(location);
+        templates = load(location);
+        lastModified = modified;
+    }
+
+    private void reloadIfModified() {
+        long modified = lastModified(location);
+        if (modified == lastModified) {
+            return;
+        }
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            lastModified = modified; // not retried until the file changes again
+            log.warn("Could not reload prompts from {}, keeping the current templates", location, e);
+        }
+    }
+
+    private static Templates load(Resource location) {
+        YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        yaml.setResources(location);
+        Properties properties = yaml.getObject();
+        if (properties == null) {
+            throw new IllegalStateException("No prompts in " + location);
+        }
+        Map<String, ChatPromptTemplate> chat = new HashMap<>();
+        for (String name : names(properties, "prompts.chat.")) {
+            chat.put(name, chatTemplate(name, properties, "prompts.chat." + name + "."));
+        }
+        Map<String, ImagePromptTemplate> image = new HashMap<>();
+        for (String name : names(properties, "prompts.image.")) {
+            image.put(name, imageTemplate(name, properties, "prompts.image." + name + "."));
+        }
+        requireAll(chat, CHAT_TEMPLATES, location);
+        requireAll(image, IMAGE_TEMPLATES, location);
+        return new Templates(Map.copyOf(chat), Map.copyOf(image));
+    }
+
+    private static ChatPromptTemplate chatTemplate(String name, Properties properties, String prefix) {
+        String system = properties.getProperty(prefix + "system");
+        OpenAiChatOptions.Builder options = OpenAiChatOptions.builder();
+        String model = properties.getProperty(prefix + "model");
+        if (model != null) {
+            options.model(model);
+        }
+        String temperature = properties.getProperty(prefix + "temperature");
+        if (temperature != null) {
+            options.temperature(Double.parseDouble(temperature));
+        }
+        String maxTokens = properties.getProperty(prefix + "max-tokens");
+        if (maxTokens != null) {
+            options.maxTokens(Integer.parseInt(maxTokens));
+        }
+        return new ChatPromptTemplate(name,
+                system == null || system.isBlank() ? null : SystemMessage.builder().text(system).build(),
+                properties.getProperty(prefix + "user"),
+                options.build());
+    }
+
+    private static ImagePromptTemplate imageTemplate(String name, Properties properties, String prefix) {
+        String template = properties.getProperty(prefix + "template");
+        int placeholder = template == null ? -1 : template.indexOf(ImagePromptTemplate.PLACEHOLDER);
+        if (placeholder < 0 || template.indexOf(ImagePromptTemplate.PLACEHOLDER, placeholder + 1) >= 0) {
+            throw new IllegalStateException("Image prompt " + name + " needs exactly one " + ImagePromptTemplate.PLACEHOLDER);
+        }
+        Map<String, OpenAiImageOptions> options = new HashMap<>();
+        for (String responseFormat : IMAGE_RESPONSE_FORMATS) {
+            options.put(responseFormat, OpenAiImageOptions.builder()
+                    .model(properties.getProperty(prefix + "model"))
+                    .quality(properties.getProperty(prefix + "quality"))
+                    .N(1)
+                    .responseFormat(responseFormat)
+                    .build());
+        }
+        return new ImagePromptTemplate(name, template.substring(0, placeholder),
+                template.substring(placeholder + ImagePromptTemplate.PLACEHOLDER.length()), Map.copyOf(options));
+    }
+
+    private static TreeSet<String> names(Properties properties, String prefix) {
+        TreeSet<String> names = new TreeSet<>();
+        // not stringPropertyNames(): it skips the keys whose YAML value is a number
+        for (Object property : properties.keySet()) {
+            String key = property.toString();
+            if (key.startsWith(prefix) && key.indexOf('.', prefix.length()) > 0) {
+                names.add(key.substring(prefix.length(), key.indexOf('.', prefix.length())));
+            }
+        }
+        return names;
+    }
+
+    private static void requireAll(Map<String, ?> templates, List<String> required, Resource location) {
+        for (String name : required) {
+            if (!templates.containsKey(name)) {
+                throw new IllegalStateException("Missing prompt " + name + " in " + location);
+            }
+        }
+    }
+
+    private static long lastModified(Resource location) {
+        try {
+            return location.isFile() ? location.lastModified() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package se.lexicon.g54springai.routing;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+// The most recent latencies in a ring buffer; percentiles are recomputed every RECOMPUTE_EVERY samples, not per call.
+final class LatencyWindow {
+
+    private static final int RECOMPUTE_EVERY = 16;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long[] samples;
+    private int next;
+    private int count;
+    private int sinceComputed;
+    private double computedFor = Double.NaN;
+    private long computed;
+
+    LatencyWindow(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    void record(long nanos) {
+        lock.lock();
+        try {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            sinceComputed++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // -1 while fewer than minSamples latencies are known
+    long percentile(double percentile, int minSamples) {
+        lock.lock();
+        try {
+            if (count < minSamples) {
+                return -1;
+            }
+            if (sinceComputed >= RECOMPUTE_EVERY || computedFor != percentile) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                computed = sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+                computedFor = percentile;
+                sinceComputed = 0;
+            }
+            return computed;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
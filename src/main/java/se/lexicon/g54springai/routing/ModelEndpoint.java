@@ -0,0 +1,108 @@
+package se.lexicon.g54springai.routing;
+
+import org.springframework.ai.chat.model.ChatModel;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// One endpoint/key pair with its live health: moving averages of latency and error rate, the current streak of
+// failures and the ejection state. Written under the lock, volatile for the lock-free reads of the router.
+final class ModelEndpoint {
+
+    // weight of the newest sample in the moving averages
+    private static final double ALPHA = 0.2;
+
+    final String name;
+    final ChatModel model;
+    final AtomicInteger inFlight = new AtomicInteger();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile double latencyNanos; // 0 = no sample yet
+    private volatile double errorRate;
+    private volatile long ejectedUntil;
+    private volatile boolean ejected;
+    private volatile int samples;
+    private int consecutiveFailures;
+    private int ejections;
+
+    ModelEndpoint(String name, ChatModel model) {
+        this.name = name;
+        this.model = model;
+    }
+
+    void recordSuccess(long nanos) {
+        lock.lock();
+        try {
+            latencyNanos = latencyNanos == 0 ? nanos : latencyNanos + ALPHA * (nanos - latencyNanos);
+            errorRate = errorRate * (1 - ALPHA);
+            samples++;
+            consecutiveFailures = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A cancelled call (a lost hedge) took at least nanos: it only raises the average, and leaves the error rate and
+    // the failure streak alone. Without it an endpoint that always loses would keep the average of the others.
+    void recordCancelled(long nanos) {
+        lock.lock();
+        try {
+            if (nanos > latencyNanos) {
+                latencyNanos = latencyNanos == 0 ? nanos : latencyNanos + ALPHA * (nanos - latencyNanos);
+                samples++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // returns the number of failures in a row
+    int recordFailure() {
+        lock.lock();
+        try {
+            errorRate = errorRate + ALPHA * (1 - errorRate);
+            return ++consecutiveFailures;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Takes the endpoint out until now + baseNanos x ejections (at most maxNanos). When it comes back its
+    // latency is unknown again, so it is judged on fresh samples.
+    void eject(long now, long baseNanos, long maxNanos) {
+        lock.lock();
+        try {
+            ejections++;
+            ejectedUntil = now + Math.min(maxNanos, baseNanos * ejections);
+            ejected = true;
+            consecutiveFailures = 0;
+            latencyNanos = 0;
+            samples = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEjected(long now) {
+        if (ejected && now - ejectedUntil >= 0) {
+            ejected = false;
+        }
+        return ejected;
+    }
+
+    long ejectedUntil() {
+        return ejectedUntil;
+    }
+
+    double latencyNanos() {
+        return latencyNanos;
+    }
+
+    double errorRate() {
+        return errorRate;
+    }
+
+    int samples() {
+        return samples;
+    }
+}
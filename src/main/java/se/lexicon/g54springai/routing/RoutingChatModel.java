@@ -0,0 +1,334 @@
+package se.lexicon.g54springai.routing;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ChatModel that spreads the calls over several endpoints (one ChatModel each, same API, different URL/key).
+// - Weighted random choice: weight = success rate² / (average latency x (calls in flight + 1)), so slow, failing
+//   or busy endpoints get proportionally less traffic. An endpoint without samples gets the average latency.
+// - Outlier ejection, see RoutingProperties.Ejection. If every endpoint is ejected, the one that comes back first
+//   is used anyway: routing never fails a call by itself.
+// - Hedging (opt-in), see RoutingProperties.Hedging. Prompts with tools are never hedged: both calls would run the
+//   tools. Cancelling the losing call interrupts its thread; it does not count as a failure, but the time it ran
+//   is a lower bound of the endpoint's latency.
+// Only failures that are the endpoint's fault count against it (5xx, 401/403/408/429, I/O errors), not 4xx
+// answers to an invalid request.
+// Metrics: model.endpoint.latency/error-rate/ejected{endpoint}, model.endpoint.calls{endpoint,outcome},
+// model.endpoint.ejections{endpoint,cause}, model.hedge.requests{outcome=won|lost}.
+public class RoutingChatModel implements ChatModel, AutoCloseable {
+
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final int MIN_OUTLIER_SAMPLES = 5;
+
+    private final List<ModelEndpoint> endpoints;
+    private final RoutingProperties.Ejection ejection;
+    private final RoutingProperties.Hedging hedging;
+    private final MeterRegistry meterRegistry;
+    private final LatencyWindow callLatencies = new LatencyWindow(512);
+    private final LatencyWindow firstTokenLatencies = new LatencyWindow(512);
+    private final Scheduler scheduler = Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "model-routing");
+
+    // models by endpoint name, in configuration order
+    public RoutingChatModel(Map<String, ChatModel> models, RoutingProperties.Ejection ejection,
+                            RoutingProperties.Hedging hedging, MeterRegistry meterRegistry) {
+        if (models.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+        this.ejection = ejection;
+        this.hedging = hedging;
+        this.meterRegistry = meterRegistry;
+        List<ModelEndpoint> list = new ArrayList<>();
+        models.forEach((name, model) -> {
+            ModelEndpoint endpoint = new ModelEndpoint(name, model);
+            Gauge.builder("model.endpoint.latency", endpoint, e -> e.latencyNanos() / 1e6)
+                    .baseUnit("milliseconds").tag("endpoint", name).register(meterRegistry);
+            Gauge.builder("model.endpoint.error-rate", endpoint, ModelEndpoint::errorRate)
+                    .tag("endpoint", name).register(meterRegistry);
+            Gauge.builder("model.endpoint.ejected", endpoint, e -> e.isEjected(System.nanoTime()) ? 1 : 0)
+                    .tag("endpoint", name).register(meterRegistry);
+            list.add(endpoint);
+        });
+        this.endpoints = List.copyOf(list);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        ModelEndpoint primary = choose(null);
+        if (!hedged(prompt)) {
+            return callOn(primary, prompt, new AtomicBoolean());
+        }
+        Duration delay = hedgeDelay(callLatencies);
+        AtomicBoolean hedgeSent = new AtomicBoolean();
+        Mono<Map.Entry<Boolean, ChatResponse>> first = attempt(primary, prompt).map(response -> Map.entry(false, response));
+        Mono<Map.Entry<Boolean, ChatResponse>> hedge = Mono.defer(() -> {
+            hedgeSent.set(true);
+            return attempt(choose(primary), prompt).map(response -> Map.entry(true, response));
+        }).delaySubscription(delay);
+        Map.Entry<Boolean, ChatResponse> winner = Mono.firstWithValue(first, hedge)
+                .onErrorMap(RoutingChatModel::firstError)
+                .block();
+        if (hedgeSent.get()) {
+            meterRegistry.counter("model.hedge.requests", "outcome", winner.getKey() ? "won" : "lost").increment();
+        }
+        return winner.getValue();
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        ModelEndpoint primary = choose(null);
+        if (!hedged(prompt)) {
+            return streamOn(primary, prompt);
+        }
+        return Flux.defer(() -> {
+            Duration delay = hedgeDelay(firstTokenLatencies);
+            AtomicBoolean hedgeSent = new AtomicBoolean();
+            AtomicBoolean hedgeFirst = new AtomicBoolean();
+            Flux<ChatResponse> hedge = Flux.defer(() -> {
+                hedgeSent.set(true);
+                return streamOn(choose(primary), prompt);
+            }).delaySubscription(delay).doOnNext(response -> hedgeFirst.set(true));
+            // the first stream to produce a token wins, the other one is cancelled
+            return Flux.firstWithValue(streamOn(primary, prompt), hedge)
+                    .onErrorMap(RoutingChatModel::firstError)
+                    .doFinally(signal -> {
+                        if (hedgeSent.get()) {
+                            meterRegistry.counter("model.hedge.requests", "outcome", hedgeFirst.get() ? "won" : "lost").increment();
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return endpoints.get(0).model.getDefaultOptions();
+    }
+
+    private Mono<ChatResponse> attempt(ModelEndpoint endpoint, Prompt prompt) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        return Mono.fromCallable(() -> callOn(endpoint, prompt, cancelled))
+                .subscribeOn(scheduler)
+                .doOnCancel(() -> cancelled.set(true));
+    }
+
+    private ChatResponse callOn(ModelEndpoint endpoint, Prompt prompt, AtomicBoolean cancelled) {
+        long start = System.nanoTime();
+        endpoint.inFlight.incrementAndGet();
+        try {
+            ChatResponse response = endpoint.model.call(prompt);
+            long latency = System.nanoTime() - start;
+            callLatencies.record(latency);
+            succeeded(endpoint, latency);
+            return response;
+        } catch (RuntimeException e) {
+            if (cancelled.get()) {
+                cancelled(endpoint, System.nanoTime() - start);
+            } else {
+                failed(endpoint, e);
+            }
+            throw e;
+        } finally {
+            endpoint.inFlight.decrementAndGet();
+        }
+    }
+
+    private Flux<ChatResponse> streamOn(ModelEndpoint endpoint, Prompt prompt) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicLong firstToken = new AtomicLong();
+            endpoint.inFlight.incrementAndGet();
+            return endpoint.model.stream(prompt)
+                    .doOnNext(response -> {
+                        if (firstToken.compareAndSet(0, System.nanoTime() - start)) {
+                            firstTokenLatencies.record(firstToken.get());
+                        }
+                    })
+                    // streams are judged by their time to first token, which does not depend on the answer length
+                    .doOnComplete(() -> succeeded(endpoint, firstToken.get() != 0 ? firstToken.get() : System.nanoTime() - start))
+                    .doOnError(error -> failed(endpoint, error))
+                    .doOnCancel(() -> cancelled(endpoint, firstToken.get() != 0 ? firstToken.get() : System.nanoTime() - start))
+                    .doFinally(signal -> endpoint.inFlight.decrementAndGet());
+        });
+    }
+
+    // Weighted random choice among the endpoints that are not ejected, excluding one (the hedged primary).
+    private ModelEndpoint choose(ModelEndpoint excluded) {
+        long now = System.nanoTime();
+        double knownLatency = 0;
+        int known = 0;
+        for (ModelEndpoint endpoint : endpoints) {
+            if (endpoint.latencyNanos() > 0) {
+                knownLatency += endpoint.latencyNanos();
+                known++;
+            }
+        }
+        double defaultLatency = known > 0 ? knownLatency / known : 1;
+        double[] weights = new double[endpoints.size()];
+        double total = 0;
+        for (int i = 0; i < endpoints.size(); i++) {
+            ModelEndpoint endpoint = endpoints.get(i);
+            if (endpoint == excluded || endpoint.isEjected(now)) {
+                continue;
+            }
+            double successRate = Math.max(0.01, 1 - endpoint.errorRate());
+            double latency = endpoint.latencyNanos() > 0 ? endpoint.latencyNanos() : defaultLatency;
+            weights[i] = successRate * successRate / (latency * (endpoint.inFlight.get() + 1));
+            total += weights[i];
+        }
+        if (total == 0) {
+            return fallback(excluded);
+        }
+        double pick = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < weights.length; i++) {
+            pick -= weights[i];
+            if (weights[i] > 0 && pick < 0) {
+                return endpoints.get(i);
+            }
+        }
+        return fallback(excluded);
+    }
+
+    // everything is ejected (or excluded): the endpoint whose ejection ends first
+    private ModelEndpoint fallback(ModelEndpoint excluded) {
+        ModelEndpoint best = null;
+        for (ModelEndpoint endpoint : endpoints) {
+            if (endpoint != excluded && (best == null || endpoint.ejectedUntil() - best.ejectedUntil() < 0)) {
+                best = endpoint;
+            }
+        }
+        return best != null ? best : excluded;
+    }
+
+    private void succeeded(ModelEndpoint endpoint, long latency) {
+        endpoint.recordSuccess(latency);
+        calls(endpoint, "success");
+        if (endpoint.samples() >= MIN_OUTLIER_SAMPLES && isLatencyOutlier(endpoint)) {
+            eject(endpoint, "latency");
+        }
+    }
+
+    private void cancelled(ModelEndpoint endpoint, long elapsed) {
+        endpoint.recordCancelled(elapsed);
+        calls(endpoint, "cancelled");
+        if (endpoint.samples() >= MIN_OUTLIER_SAMPLES && isLatencyOutlier(endpoint)) {
+            eject(endpoint, "latency");
+        }
+    }
+
+    private void failed(ModelEndpoint endpoint, Throwable error) {
+        if (!isEndpointFailure(error)) {
+            calls(endpoint, "rejected");
+            return;
+        }
+        calls(endpoint, "failure");
+        if (endpoint.recordFailure() >= ejection.consecutiveFailures()) {
+            eject(endpoint, "failures");
+        }
+    }
+
+    private boolean isLatencyOutlier(ModelEndpoint endpoint) {
+        List<Double> others = new ArrayList<>();
+        long now = System.nanoTime();
+        for (ModelEndpoint other : endpoints) {
+            if (other != endpoint && !other.isEjected(now) && other.samples() >= MIN_OUTLIER_SAMPLES) {
+                others.add(other.latencyNanos());
+            }
+        }
+        if (others.isEmpty()) {
+            return false;
+        }
+        others.sort(null);
+        double median = others.get(others.size() / 2);
+        return endpoint.latencyNanos() > ejection.latencyFactor() * median;
+    }
+
+    private void eject(ModelEndpoint endpoint, String cause) {
+        long now = System.nanoTime();
+        int ejected = 0;
+        for (ModelEndpoint other : endpoints) {
+            if (other.isEjected(now)) {
+                ejected++;
+            }
+        }
+        // at least one endpoint always stays in
+        if (endpoint.isEjected(now) || (ejected + 1) * 100 > ejection.maxEjectedPercent() * endpoints.size()
+                || ejected + 1 >= endpoints.size()) {
+            return;
+        }
+        endpoint.eject(now, ejection.baseTime().toNanos(), ejection.maxTime().toNanos());
+        meterRegistry.counter("model.endpoint.ejections", "endpoint", endpoint.name, "cause", cause).increment();
+    }
+
+    private boolean hedged(Prompt prompt) {
+        if (!hedging.enabled() || endpoints.size() < 2) {
+            return false;
+        }
+        return !(prompt.getOptions() instanceof ToolCallingChatOptions options)
+                || (options.getToolCallbacks().isEmpty() && options.getToolNames().isEmpty());
+    }
+
+    private Duration hedgeDelay(LatencyWindow latencies) {
+        long percentile = latencies.percentile(hedging.percentile(), MIN_HEDGE_SAMPLES);
+        if (percentile < 0) {
+            return hedging.initialDelay();
+        }
+        return Duration.ofNanos(Math.max(percentile, hedging.minDelay().toNanos()));
+    }
+
+    private void calls(ModelEndpoint endpoint, String outcome) {
+        meterRegistry.counter("model.endpoint.calls", "endpoint", endpoint.name, "outcome", outcome).increment();
+    }
+
+    // When every attempt failed, firstWithValue reports a NoSuchElementException with the failures suppressed.
+    private static Throwable firstError(Throwable error) {
+        return error.getSuppressed().length > 0 ? error.getSuppressed()[0] : error;
+    }
+
+    static boolean isEndpointFailure(Throwable error) {
+        int status = statusOf(error);
+        return status == 0 || status >= 500 || status == 401 || status == 403 || status == 408 || status == 429;
+    }
+
+    // HTTP status from the client exception or from Spring AI's "<status> - <body>" message; 0 when there is none
+    static int statusOf(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RestClientResponseException restError) {
+                return restError.getStatusCode().value();
+            }
+            if (cause instanceof WebClientResponseException webError) {
+                return webError.getStatusCode().value();
+            }
+            String message = cause.getMessage();
+            if (message != null && message.length() > 4 && message.charAt(3) == ' '
+                    && Character.isDigit(message.charAt(0)) && Character.isDigit(message.charAt(1))
+                    && Character.isDigit(message.charAt(2))) {
+                return Integer.parseInt(message.substring(0, 3));
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        scheduler.dispose();
+    }
+}
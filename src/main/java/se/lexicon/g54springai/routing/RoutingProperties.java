@@ -0,0 +1,45 @@
+package se.lexicon.g54springai.routing;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+// app.routing.*: the OpenAI-compatible endpoints the chat calls are spread over, see RoutingChatModel.
+@ConfigurationProperties("app.routing")
+public record RoutingProperties(
+        boolean enabled,
+        List<Endpoint> endpoints,
+        @DefaultValue Ejection ejection,
+        @DefaultValue Hedging hedging) {
+
+    public RoutingProperties {
+        endpoints = endpoints == null ? List.of() : List.copyOf(endpoints);
+    }
+
+    // name only labels the metrics; the default model and options are the ones of spring.ai.openai.chat.options
+    public record Endpoint(String name, String baseUrl, String apiKey) {
+    }
+
+    // An endpoint is ejected after consecutiveFailures failed calls, or when its average latency exceeds
+    // latencyFactor x the median of the others. It stays out baseTime x (number of ejections so far), at most
+    // maxTime, and never more than maxEjectedPercent of the endpoints are out at once.
+    public record Ejection(
+            @DefaultValue("5") int consecutiveFailures,
+            @DefaultValue("3.0") double latencyFactor,
+            @DefaultValue("30s") Duration baseTime,
+            @DefaultValue("5m") Duration maxTime,
+            @DefaultValue("50") int maxEjectedPercent) {
+    }
+
+    // Opt-in: a call still unanswered after the percentile of recent latencies (time to first token for streams)
+    // is sent to a second endpoint as well; the first answer wins and the other call is cancelled.
+    // initialDelay is used until enough latencies are known; the delay is never below minDelay.
+    public record Hedging(
+            @DefaultValue("false") boolean enabled,
+            @DefaultValue("0.95") double percentile,
+            @DefaultValue("2s") Duration initialDelay,
+            @DefaultValue("50ms") Duration minDelay) {
+    }
+}
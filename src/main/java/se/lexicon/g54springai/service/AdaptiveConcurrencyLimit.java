@@ -0,0 +1,164 @@
+package se.lexicon.g54springai.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// AIMD concurrency limit of one upstream model, with a bounded wait queue.
+// - Additive increase: a call that completes near the baseline latency while the limit was in use raises the limit
+//   by 1/limit, so by about one per round trip of a full window.
+// - Multiplicative decrease: a rate-limited call (429/503) or one slower than latencyTolerance x baseline multiplies
+//   the limit by backoffRatio, at most once per baseline round trip so one burst of failures counts once.
+// - The baseline follows the latency of successful calls, biased towards the fast ones: it moves a quarter of the way
+//   down to a faster sample and 1/64 of the way up to a slower one. A lone fast outlier does not pin it, and it
+//   decays to a lasting slowdown instead of treating it as congestion forever.
+// Callers beyond the limit wait, first come first served, until their deadline; when queueSize callers are already
+// waiting they are rejected at once.
+public class AdaptiveConcurrencyLimit {
+
+    public record Settings(int initialLimit, int minLimit, int maxLimit, int queueSize,
+                           double backoffRatio, double latencyTolerance) {
+
+        public Settings {
+            if (minLimit <= 0 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+                throw new IllegalArgumentException("Limits must satisfy 0 < min <= initial <= max");
+            }
+            if (queueSize < 0 || backoffRatio <= 0 || backoffRatio >= 1 || latencyTolerance <= 1) {
+                throw new IllegalArgumentException("Invalid admission settings");
+            }
+        }
+
+        // a fixed limit without queueing adjustments, for tests and benchmarks
+        public static Settings fixed(int limit, int queueSize) {
+            return new Settings(limit, limit, limit, queueSize, 0.5, Double.MAX_VALUE);
+        }
+    }
+
+    public enum Admission { ADMITTED, QUEUE_FULL, TIMED_OUT }
+
+    public enum Outcome { SUCCESS, OVERLOADED, FAILED, DROPPED }
+
+    private final Settings settings;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    // written under the lock, volatile for the gauges
+    private volatile double limit;
+    private volatile int inFlight;
+    private volatile int waiting;
+    private long baselineNanos;
+    private long lastDecreaseNanos;
+
+    public AdaptiveConcurrencyLimit(Settings settings) {
+        this.settings = settings;
+        this.limit = settings.initialLimit();
+    }
+
+    // Waits until the call may start or the deadline (System.nanoTime() based) has passed.
+    public Admission acquire(long deadlineNanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            // nobody may overtake the callers already waiting
+            if (waiting == 0 && inFlight < currentLimit()) {
+                inFlight++;
+                return Admission.ADMITTED;
+            }
+            if (waiting >= settings.queueSize()) {
+                return Admission.QUEUE_FULL;
+            }
+            waiting++;
+            try {
+                long remaining = deadlineNanos - System.nanoTime();
+                while (inFlight >= currentLimit()) {
+                    if (remaining <= 0) {
+                        return Admission.TIMED_OUT;
+                    }
+                    remaining = slotFreed.awaitNanos(remaining);
+                }
+                inFlight++;
+                return Admission.ADMITTED;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Admits without waiting, for streams: they must not block the subscribing thread.
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (waiting == 0 && inFlight < currentLimit()) {
+                inFlight++;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Ends an admitted call; latencyNanos is only used for SUCCESS.
+    public void release(Outcome outcome, long latencyNanos) {
+        lock.lock();
+        try {
+            boolean saturated = inFlight >= currentLimit();
+            inFlight--;
+            long now = System.nanoTime();
+            if (outcome == Outcome.OVERLOADED) {
+                decrease(now);
+            } else if (outcome == Outcome.SUCCESS) {
+                if (baselineNanos == 0) {
+                    baselineNanos = latencyNanos;
+                } else if (latencyNanos < baselineNanos) {
+                    baselineNanos -= (baselineNanos - latencyNanos) / 4;
+                } else {
+                    baselineNanos += (latencyNanos - baselineNanos) / 64;
+                }
+                if (latencyNanos > baselineNanos * settings.latencyTolerance()) {
+                    decrease(now);
+                } else if (saturated) {
+                    // only grow a limit that is actually used
+                    limit = Math.min(settings.maxLimit(), limit + 1.0 / limit);
+                }
+            }
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Backs off without a call ending, e.g. when another operation on the same model was rate limited.
+    public void backOff() {
+        lock.lock();
+        try {
+            decrease(System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease(long now) {
+        if (lastDecreaseNanos != 0 && now - lastDecreaseNanos < Math.max(baselineNanos, TimeUnit.MILLISECONDS.toNanos(100))) {
+            return;
+        }
+        limit = Math.max(settings.minLimit(), limit * settings.backoffRatio());
+        lastDecreaseNanos = now;
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    public double limit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight;
+    }
+
+    public int waiting() {
+        return waiting;
+    }
+}
@@ -1,40 +1,90 @@
 package se.lexicon.g54springai.service;
 
 import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import se.lexicon.g54springai.store.NamePage;
+import se.lexicon.g54springai.store.NameStore;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
+// Every tool result ends up in the prompt of the next model round trip, so results are bounded on the server:
+// listing and searching return one page (at most maxPageSize names and maxResultChars characters of names)
+// plus the total and a cursor for the next page, and addNewNames takes at most maxBulkNames names per call.
 @Component
 public class AppToolCalling {
 
-    List<String> storage = new ArrayList<>();
+    // shared by all concurrent requests, see NameStore
+    private final NameStore nameStore;
+    private final int maxPageSize;
+    private final int maxResultChars;
+    private final int maxBulkNames;
 
-    public AppToolCalling() {
-        storage.addAll(Arrays.asList("Mehrdad", "Elnaz", "Simon", "Marcus"));
+    @Autowired
+    public AppToolCalling(NameStore nameStore,
+                          @Value("${app.names.tools.max-page-size:25}") int maxPageSize,
+                          @Value("${app.names.tools.max-result-chars:2000}") int maxResultChars,
+                          @Value("${app.names.tools.max-bulk-names:100}") int maxBulkNames) {
+        this.nameStore = nameStore;
+        this.maxPageSize = maxPageSize;
+        this.maxResultChars = maxResultChars;
+        this.maxBulkNames = maxBulkNames;
     }
 
-    @Tool(description = "Fetches all names from the application.")
-    public List<String> fetchAllNames() {
-        return storage.stream().toList();
+    @Tool(description = "Lists the stored names one page at a time, in the order they were added. "
+            + "Returns the names of the page, the total number of names and nextCursor; "
+            + "nextCursor is null on the last page.")
+    public NamePage fetchNames(
+            @ToolParam(description = "nextCursor of the previous page; omit for the first page", required = false)
+            Integer cursor,
+            @ToolParam(description = "Maximum number of names to return (the server caps it)", required = false)
+            Integer limit) {
+        return nameStore.findPage(null, cursorOf(cursor), limitOf(limit), maxResultChars);
+    }
+
+    @Tool(description = "Searches the names containing a text, ignoring case. "
+            + "Returns one page of matching names, the total number of matches and nextCursor; "
+            + "nextCursor is null on the last page. Use the total to answer 'how many' questions without paging.")
+    public NamePage searchNames(
+            @ToolParam(description = "Text the names must contain") String text,
+            @ToolParam(description = "nextCursor of the previous page; omit for the first page", required = false)
+            Integer cursor,
+            @ToolParam(description = "Maximum number of names to return (the server caps it)", required = false)
+            Integer limit) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("Search text cannot be empty, use fetchNames to list all names");
+        }
+        return nameStore.findPage(text, cursorOf(cursor), limitOf(limit), maxResultChars);
     }
 
     @Tool(description = "Adds a new name to the application.")
     public String addNewName(String name) {
-        storage.add(name);
+        nameStore.add(name);
         return "Operation successful. New name added: " + name;
     }
 
-    @Tool(description = "Finds names containing the specified substring.")
-    public String findNameByName(String name) {
-        System.out.println("name = " + name);
-        List<String> foundNames = storage.stream().filter(n -> n.toLowerCase().contains(name.toLowerCase())).toList();
-        if (foundNames.isEmpty()){
-            return "No names found containing: " + name;
-        } else {
-            return "Found names: " + String.join(", ", foundNames);
+    @Tool(description = "Adds several new names to the application in one call. Prefer it over repeated addNewName calls.")
+    public String addNewNames(@ToolParam(description = "The names to add") List<String> names) {
+        if (names == null || names.isEmpty()) {
+            throw new IllegalArgumentException("No names given");
         }
+        if (names.size() > maxBulkNames) {
+            throw new IllegalArgumentException("At most " + maxBulkNames + " names can be added per call");
+        }
+        nameStore.addAll(names);
+        return "Operation successful. " + names.size() + " names added.";
+    }
+
+    private static int cursorOf(Integer cursor) {
+        if (cursor != null && cursor < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        return cursor == null ? 0 : cursor;
+    }
+
+    private int limitOf(Integer limit) {
+        return limit == null || limit <= 0 ? maxPageSize : Math.min(limit, maxPageSize);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,16 @@
+package se.lexicon.g54springai.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// One line of a batch response: the answer to questions[index], or the error that question failed with.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchChatResult(int index, String answer, String error) {
+
+    public static BatchChatResult success(int index, String answer) {
+        return new BatchChatResult(index, answer, null);
+    }
+
+    public static BatchChatResult failure(int index, String error) {
+        return new BatchChatResult(index, null, error);
+    }
+}
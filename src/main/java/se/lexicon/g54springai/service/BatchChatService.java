@@ -0,0 +1,13 @@
+package se.lexicon.g54springai.service;
+
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+public interface BatchChatService {
+
+    // Answers every question like OpenAIService.processSimpleChatQuery, a bounded number at a time, and emits each
+    // result as soon as it is ready (not in question order). A failing question yields an error result instead of
+    // failing the batch.
+    Flux<BatchChatResult> processBatch(List<String> questions, boolean bypassCache);
+}
@@ -0,0 +1,73 @@
+package se.lexicon.g54springai.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+
+// Fans a batch out over OpenAIService, so it gets the same cache, coalescing, upstream guard and metrics as single
+// questions. Each question runs on its own virtual thread, at most concurrency per batch; across batches the
+// UpstreamCallGuard still bounds the calls to the model. Cancelling the subscription (the client went away) stops
+// the questions that have not started yet.
+@Service
+public class BatchChatServiceImpl implements BatchChatService, AutoCloseable {
+
+    // same limit as GET /api/chat/messages
+    static final int MAX_QUESTION_LENGTH = 200;
+
+    private final OpenAIService openAIService;
+    private final int concurrency;
+    private final int maxQuestions;
+    private final Scheduler scheduler = Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "chat-batch");
+
+    @Autowired
+    public BatchChatServiceImpl(OpenAIService openAIService,
+                                @Value("${app.chat.batch.concurrency:8}") int concurrency,
+                                @Value("${app.chat.batch.max-questions:1000}") int maxQuestions) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Batch concurrency must be positive");
+        }
+        this.openAIService = openAIService;
+        this.concurrency = concurrency;
+        this.maxQuestions = maxQuestions;
+    }
+
+    @Override
+    public Flux<BatchChatResult> processBatch(List<String> questions, boolean bypassCache) {
+        if (questions == null || questions.isEmpty()) {
+            throw new IllegalArgumentException("Questions cannot be null or empty");
+        }
+        if (questions.size() > maxQuestions) {
+            throw new IllegalArgumentException("A batch cannot exceed " + maxQuestions + " questions");
+        }
+        List<String> batch = questions.stream().map(question -> question == null ? "" : question).toList();
+        return Flux.range(0, batch.size())
+                .flatMap(index -> Mono.fromCallable(() -> answer(index, batch.get(index), bypassCache))
+                        .subscribeOn(scheduler), concurrency);
+    }
+
+    private BatchChatResult answer(int index, String question, boolean bypassCache) {
+        if (question.isBlank()) {
+            return BatchChatResult.failure(index, "Question cannot be blank");
+        }
+        if (question.length() > MAX_QUESTION_LENGTH) {
+            return BatchChatResult.failure(index, "Question cannot exceed " + MAX_QUESTION_LENGTH + " characters");
+        }
+        try {
+            return BatchChatResult.success(index, openAIService.processSimpleChatQuery(question, bypassCache));
+        } catch (RuntimeException e) {
+            return BatchChatResult.failure(index, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.dispose();
+    }
+}
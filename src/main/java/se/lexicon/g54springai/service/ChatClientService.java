@@ -1,5 +1,10 @@
 package se.lexicon.g54springai.service;
 
+import reactor.core.publisher.Flux;
+
 public interface ChatClientService {
     String chatMemory(String question, String conversationId);
+
+    // Streams the answer token by token; the exchange is stored in the chat memory only once the answer is complete
+    Flux<String> chatMemoryStream(String question, String conversationId);
 }
\ No newline at end of file
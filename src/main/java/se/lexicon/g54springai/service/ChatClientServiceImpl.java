@@ -1,30 +1,53 @@
 package se.lexicon.g54springai.service;
 
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.model.Generation;
-import org.springframework.ai.openai.OpenAiChatModel;
-import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import se.lexicon.g54springai.prompt.ChatPromptTemplate;
+import se.lexicon.g54springai.prompt.PromptRegistry;
+import se.lexicon.g54springai.tracing.TracedToolCallback;
+
+import java.util.List;
 
 @Service
 public class ChatClientServiceImpl implements ChatClientService {
 
     private final ChatClient chatClient;
     private final ChatMemory chatMemory;
-    private final AppToolCalling appToolCalling;
+    // resolved once: building the callbacks reflects over AppToolCalling and its tool schemas
+    private final ToolCallback[] toolCallbacks;
+    private final PromptRegistry promptRegistry;
+    private final UpstreamCallGuard upstreamCallGuard;
+    private final ModelCallMetrics modelCallMetrics;
+    // Spans of the memory load and save; the model round trips and tool calls get theirs from Spring AI
+    private final ObservationRegistry observationRegistry;
 
     @Autowired
-    public ChatClientServiceImpl(ChatClient.Builder chatClientBuilder, ChatMemory chatMemory, AppToolCalling appToolCalling) {
-        this.chatClient = chatClientBuilder
-                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build())
-                .build();
+    public ChatClientServiceImpl(ChatClient.Builder chatClientBuilder, ChatMemory chatMemory, AppToolCalling appToolCalling,
+                                 PromptRegistry promptRegistry, UpstreamCallGuard upstreamCallGuard,
+                                 ModelCallMetrics modelCallMetrics, ObservationRegistry observationRegistry) {
+        // no memory advisor: it would put the history before the system prompt, so the prompt would not start with
+        // the same bytes on every call; both variants read and write the memory themselves
+        this.chatClient = chatClientBuilder.build();
         this.chatMemory = chatMemory;
-        this.appToolCalling = appToolCalling;
+        // traced: the tool spans also carry the size of the arguments and of the result
+        this.toolCallbacks = TracedToolCallback.wrap(ToolCallbacks.from(appToolCalling), observationRegistry);
+        this.promptRegistry = promptRegistry;
+        this.upstreamCallGuard = upstreamCallGuard;
+        this.modelCallMetrics = modelCallMetrics;
+        this.observationRegistry = observationRegistry;
     }
 
     @Override
@@ -36,26 +59,20 @@ public class ChatClientServiceImpl implements ChatClientService {
             throw new IllegalArgumentException("Conversation ID cannot be null or empty");
         }
 
-        ChatResponse chatResponse = this.chatClient.prompt()
+        // the model comes from the default options, so the metrics take it from the response
+        ChatPromptTemplate template = promptRegistry.chat(PromptRegistry.NAME_TOOLS);
+        List<Message> history = loadHistory(conversationId, null);
+        ChatResponse chatResponse = upstreamCallGuard.call("chat.tools", template.options().getModel(), () -> modelCallMetrics.record("chat.tools", null, () -> this.chatClient.prompt()
+                .system(template.systemText())
+                .messages(history)
                 .user(question)
-                .system("""
-                        You are a specialized name management assistant with the following capabilities:
-                        1. You can fetch and display all stored names using the 'fetAllNames' tool
-                        2. You can search for specific names using the 'findByName' tool
-                        3. You can add new names using the 'addNewName' tool
-                        
-                        Guidelines:
-                        - Always use the appropriate tool for name-related operations
-                        - Only respond with name-related information
-                        - If a request is not about names, politely explain that you can only help with name management
-                        - When displaying names, present them in a clear, organized manner
-                        - Confirm successful operations with brief, clear messages
-                        """)
-                .tools(appToolCalling) // this class contains 3 methods that AI can call
-                .options(OpenAiChatOptions.builder().temperature(0.2).maxTokens(1000).build())
-                .advisors(advisorSpec -> advisorSpec.param(ChatMemory.CONVERSATION_ID, conversationId))
+                .toolCallbacks(toolCallbacks) // the name tools the AI can call, see AppToolCalling
+                .options(template.optionsCopy())
                 .call()
-                .chatResponse();
+                .chatResponse()));
+        if (chatResponse != null && chatResponse.getResult() != null) {
+            saveExchange(conversationId, List.of(new UserMessage(question), chatResponse.getResult().getOutput()), null);
+        }
 
         Generation result = null;
         if (chatResponse != null) {
@@ -63,4 +80,52 @@ public class ChatClientServiceImpl implements ChatClientService {
         }
         return result != null ? result.getOutput().getText() : "No response received";
     }
+
+    @Override
+    public Flux<String> chatMemoryStream(String question, String conversationId) {
+        if (question == null || question.trim().isEmpty()) {
+            throw new IllegalArgumentException("Question cannot be null or empty");
+        }
+        if (conversationId == null || conversationId.trim().isEmpty()) {
+            throw new IllegalArgumentException("Conversation ID cannot be null or empty");
+        }
+
+        return Flux.defer(() -> {
+            // the save runs on whichever thread completes the stream: its span is attached to the request explicitly
+            Observation request = observationRegistry.getCurrentObservation();
+            List<Message> history = loadHistory(conversationId, request);
+            StringBuilder answer = new StringBuilder();
+            ChatPromptTemplate template = promptRegistry.chat(PromptRegistry.NAME_TOOLS);
+            Flux<ChatResponse> responses = this.chatClient.prompt()
+                    .system(template.systemText())
+                    .messages(history)
+                    .user(question)
+                    .toolCallbacks(toolCallbacks)
+                    .options(template.optionsCopy())
+                    .stream()
+                    .chatResponse();
+            return upstreamCallGuard.stream("chat.tools.stream", template.options().getModel(), modelCallMetrics.stream("chat.tools.stream", null, responses))
+                    .filter(chatResponse -> chatResponse.getResult() != null && chatResponse.getResult().getOutput().getText() != null)
+                    .map(chatResponse -> chatResponse.getResult().getOutput().getText())
+                    .doOnNext(answer::append)
+                    // written once, on completion only: a cancelled or failed stream leaves the memory untouched
+                    .doOnComplete(() -> saveExchange(conversationId,
+                            List.of(new UserMessage(question), new AssistantMessage(answer.toString())), request));
+        });
+    }
+
+    private List<Message> loadHistory(String conversationId, Observation parent) {
+        return memoryObservation("load", parent).observe(() -> chatMemory.get(conversationId));
+    }
+
+    private void saveExchange(String conversationId, List<Message> messages, Observation parent) {
+        memoryObservation("save", parent).observe(() -> chatMemory.add(conversationId, messages));
+    }
+
+    private Observation memoryObservation(String operation, Observation parent) {
+        Observation observation = Observation.createNotStarted("chat.memory", observationRegistry)
+                .contextualName("chat_memory " + operation)
+                .lowCardinalityKeyValue("chat.memory.operation", operation);
+        return parent != null ? observation.parentObservation(parent) : observation;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package se.lexicon.g54springai.service;
+
+import java.util.regex.Pattern;
+
+// Identifies a stateless chat request: two requests with the same key are expected to get the same answer.
+// The prompt is normalized (trimmed, whitespace collapsed) so questions that differ only in spacing share one key.
+// Case is kept: it can change the meaning (acronyms, code, identifiers).
+public record ChatRequestKey(
+        String prompt,
+        String system,
+        String model,
+        Double temperature
+) {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    public static ChatRequestKey of(String prompt, String system, String model, Double temperature) {
+        return new ChatRequestKey(normalize(prompt), system, model, temperature);
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(text.trim()).replaceAll(" ");
+    }
+}
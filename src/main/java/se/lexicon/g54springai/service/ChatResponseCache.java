@@ -0,0 +1,145 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Bounded in-process cache of chat responses, keyed by ChatRequestKey.
+// - LRU eviction once more than maxEntries responses are held
+// - every entry expires ttl after it was stored
+// - callers can bypass the lookup (the fresh response still replaces the cached one)
+// Hits, misses and evictions are published as Micrometer counters (chat.cache.*).
+@Component
+public class ChatResponseCache {
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    // access-ordered LinkedHashMap = LRU; guarded by synchronized (entries)
+    private final LinkedHashMap<ChatRequestKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypasses;
+    private final Counter sizeEvictions;
+    private final Counter expiredEvictions;
+
+    @Autowired
+    public ChatResponseCache(@Value("${app.chat.cache.enabled:true}") boolean enabled,
+                             @Value("${app.chat.cache.max-entries:1000}") int maxEntries,
+                             @Value("${app.chat.cache.ttl:10m}") Duration ttl,
+                             MeterRegistry meterRegistry) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache max entries must be positive");
+        }
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.hits = meterRegistry.counter("chat.cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("chat.cache.requests", "result", "miss");
+        this.bypasses = meterRegistry.counter("chat.cache.requests", "result", "bypass");
+        this.sizeEvictions = meterRegistry.counter("chat.cache.evictions", "cause", "size");
+        this.expiredEvictions = meterRegistry.counter("chat.cache.evictions", "cause", "expired");
+        meterRegistry.gauge("chat.cache.size", entries, map -> {
+            synchronized (map) {
+                return map.size();
+            }
+        });
+    }
+
+    // Returns the cached response for the key, or calls upstream and caches the result.
+    public ChatResponse getOrCall(ChatRequestKey key, boolean bypass, Supplier<ChatResponse> upstreamCall) {
+        if (!enabled) {
+            return upstreamCall.get();
+        }
+        if (bypass) {
+            bypasses.increment();
+        } else {
+            ChatResponse cached = lookup(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ChatResponse response = upstreamCall.get();
+        store(key, response);
+        return response;
+    }
+
+    // Counted lookup for callers that cannot hand over a blocking upstream call (e.g. reactive pipelines).
+    // Returns null on a miss or when the cache is disabled.
+    public ChatResponse lookup(ChatRequestKey key) {
+        if (!enabled) {
+            return null;
+        }
+        ChatResponse cached = get(key);
+        if (cached != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return cached;
+    }
+
+    // Stores a usable response; empty responses are never cached.
+    public void store(ChatRequestKey key, ChatResponse response) {
+        if (enabled && response != null && response.getResult() != null) {
+            put(key, response);
+        }
+    }
+
+    public ChatResponse get(ChatRequestKey key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired(System.nanoTime())) {
+                entries.remove(key);
+                expiredEvictions.increment();
+                return null;
+            }
+            return entry.response();
+        }
+    }
+
+    public void put(ChatRequestKey key, ChatResponse response) {
+        Entry entry = new Entry(response, System.nanoTime() + ttlNanos);
+        synchronized (entries) {
+            entries.put(key, entry);
+            Iterator<Map.Entry<ChatRequestKey, Entry>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                sizeEvictions.increment();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private record Entry(ChatResponse response, long expiresAtNanos) {
+        boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+}
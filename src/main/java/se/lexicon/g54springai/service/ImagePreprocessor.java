@@ -0,0 +1,345 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import se.lexicon.g54springai.exception.UpstreamOverloadedException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Prepares uploaded images for the vision model:
+// - the format is detected from the content (magic bytes), not taken from the client's content type
+// - PNG and JPEG images larger than maxDimension are scaled down (the model scales them down anyway);
+//   large images are subsampled while decoding, so a 24 MP photo never exists in memory at full size
+// - the result is re-encoded without metadata: JPEG at jpegQuality, or PNG when the image has transparency;
+//   the EXIF orientation is applied first, since it is lost with the metadata
+// - an image that needs no scaling keeps the smaller of the original and the re-encoded bytes
+// GIF and WebP are passed through with their real type (ImageIO cannot write WebP, and GIFs may be animated).
+// Decoding is CPU and memory heavy, so it runs on a bounded pool; beyond queueSize waiting images a request
+// is rejected with 503 instead of piling up. Bytes in/out per request: image.preprocess.bytes{stage=in|out}
+// and image.preprocess.saved.
+@Component
+public class ImagePreprocessor {
+
+    public record PreparedImage(byte[] data, MimeType mimeType, int originalSize) {
+
+        public int savedBytes() {
+            return originalSize - data.length;
+        }
+    }
+
+    private static final MimeType IMAGE_WEBP = MimeType.valueOf("image/webp");
+
+    private final boolean enabled;
+    private final int maxDimension;
+    private final float jpegQuality;
+    private final ThreadPoolExecutor executor;
+    private final DistributionSummary bytesIn;
+    private final DistributionSummary bytesOut;
+    private final DistributionSummary bytesSaved;
+    private final Timer duration;
+
+    @Autowired
+    public ImagePreprocessor(@Value("${app.images.preprocess.enabled:true}") boolean enabled,
+                             @Value("${app.images.preprocess.max-dimension:2048}") int maxDimension,
+                             @Value("${app.images.preprocess.jpeg-quality:0.85}") float jpegQuality,
+                             @Value("${app.images.preprocess.threads:2}") int threads,
+                             @Value("${app.images.preprocess.queue-size:32}") int queueSize,
+                             MeterRegistry meterRegistry) {
+        if (maxDimension <= 0 || jpegQuality <= 0 || jpegQuality > 1) {
+            throw new IllegalArgumentException("Invalid image preprocessing settings: max dimension " + maxDimension
+                    + ", JPEG quality " + jpegQuality);
+        }
+        this.enabled = enabled;
+        this.maxDimension = maxDimension;
+        this.jpegQuality = jpegQuality;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-preprocessor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.bytesIn = DistributionSummary.builder("image.preprocess.bytes").baseUnit("bytes").tag("stage", "in")
+                .register(meterRegistry);
+        this.bytesOut = DistributionSummary.builder("image.preprocess.bytes").baseUnit("bytes").tag("stage", "out")
+                .register(meterRegistry);
+        this.bytesSaved = DistributionSummary.builder("image.preprocess.saved").baseUnit("bytes")
+                .register(meterRegistry);
+        this.duration = Timer.builder("image.preprocess.duration").register(meterRegistry);
+    }
+
+    // Everything that changes the prepared bytes, for cache keys of results derived from them
+    public String settings() {
+        return enabled ? "max-dimension=" + maxDimension + ",jpeg-quality=" + jpegQuality : "original";
+    }
+
+    // Throws IllegalArgumentException when the bytes are not an image of a supported format.
+    public PreparedImage prepare(byte[] image) {
+        MimeType mimeType = detect(image);
+        if (mimeType == null) {
+            throw new IllegalArgumentException("Invalid file type. File must be a PNG, JPEG, GIF or WebP image");
+        }
+        PreparedImage prepared;
+        if (!enabled || !(mimeType.equals(MimeTypeUtils.IMAGE_PNG) || mimeType.equals(MimeTypeUtils.IMAGE_JPEG))) {
+            prepared = new PreparedImage(image, mimeType, image.length);
+        } else {
+            prepared = runOnPool(image, mimeType);
+        }
+        bytesIn.record(prepared.originalSize());
+        bytesOut.record(prepared.data().length);
+        bytesSaved.record(Math.max(0, prepared.savedBytes()));
+        return prepared;
+    }
+
+    private PreparedImage runOnPool(byte[] image, MimeType mimeType) {
+        Future<PreparedImage> task;
+        try {
+            task = executor.submit(() -> duration.record(() -> process(image, mimeType)));
+        } catch (RejectedExecutionException e) {
+            throw new UpstreamOverloadedException("Too many images are being processed, try again later", e);
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while preparing the image", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Could not prepare the image", e.getCause());
+        }
+    }
+
+    private PreparedImage process(byte[] image, MimeType mimeType) {
+        try {
+            Decoded decoded = decode(image);
+            if (decoded == null) {
+                // a format variant ImageIO cannot read (e.g. CMYK JPEG): the model gets the original
+                return new PreparedImage(image, mimeType, image.length);
+            }
+            int orientation = mimeType.equals(MimeTypeUtils.IMAGE_JPEG) ? exifOrientation(image) : 1;
+            boolean scaled = decoded.originalLongestSide() > maxDimension;
+            BufferedImage result = orient(scale(decoded.image()), orientation);
+            boolean transparent = result.getColorModel().hasAlpha();
+            byte[] encoded = transparent ? encodePng(result) : encodeJpeg(result);
+            // re-encoding a small, already compressed image may make it larger; only a rotation forces it
+            if (!scaled && orientation == 1 && encoded.length >= image.length) {
+                return new PreparedImage(image, mimeType, image.length);
+            }
+            return new PreparedImage(encoded, transparent ? MimeTypeUtils.IMAGE_PNG : MimeTypeUtils.IMAGE_JPEG,
+                    image.length);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid image: " + e.getMessage(), e);
+        }
+    }
+
+    // Decodes with subsampling when the image is at least twice maxDimension, so only about the pixels that
+    // are kept are ever allocated; null when no reader can decode it.
+    private Decoded decode(byte[] image) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true); // ignoreMetadata: it is dropped anyway
+                int longestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = longestSide / maxDimension;
+                if (subsampling >= 2) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return new Decoded(reader.read(0, param), longestSide);
+            } catch (IOException e) {
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private record Decoded(BufferedImage image, int originalLongestSide) {
+    }
+
+    // Halves the image while it is more than twice too large, then scales to the final size: a single large
+    // bilinear step would skip most source pixels and alias.
+    private BufferedImage scale(BufferedImage image) {
+        BufferedImage current = image;
+        while (Math.max(current.getWidth(), current.getHeight()) > maxDimension) {
+            int longestSide = Math.max(current.getWidth(), current.getHeight());
+            double factor = longestSide >= 2 * maxDimension ? 0.5 : (double) maxDimension / longestSide;
+            int width = Math.max(1, (int) Math.round(current.getWidth() * factor));
+            int height = Math.max(1, (int) Math.round(current.getHeight() * factor));
+            BufferedImage next = new BufferedImage(width, height, typeOf(current));
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    // EXIF orientations 2-8 (mirrored and rotated); 1 is upright
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation < 2 || orientation > 8) {
+            return image;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean swap = orientation >= 5;
+        AffineTransform transform = new AffineTransform();
+        switch (orientation) {
+            case 2 -> transform.scale(-1, 1);
+            case 3 -> transform.rotate(Math.PI);
+            case 4 -> transform.scale(1, -1);
+            case 5 -> { transform.rotate(Math.PI / 2); transform.scale(1, -1); }
+            case 6 -> transform.rotate(Math.PI / 2);
+            case 7 -> { transform.rotate(-Math.PI / 2); transform.scale(1, -1); }
+            default -> transform.rotate(-Math.PI / 2);
+        }
+        BufferedImage result = new BufferedImage(swap ? height : width, swap ? width : height, typeOf(image));
+        Graphics2D graphics = result.createGraphics();
+        try {
+            // rotate around the centre of the result, then draw the source centred
+            graphics.translate(result.getWidth() / 2.0, result.getHeight() / 2.0);
+            graphics.transform(transform);
+            graphics.drawImage(image, -width / 2, -height / 2, null);
+        } finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+
+    private static int typeOf(BufferedImage image) {
+        return image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            // no metadata argument: the written file carries none of the original's (EXIF, GPS, comments)
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "png", out)) {
+            throw new UncheckedIOException(new IOException("No PNG writer available"));
+        }
+        return out.toByteArray();
+    }
+
+    // Content type from the first bytes; null when it is none of the formats the vision model accepts.
+    static MimeType detect(byte[] data) {
+        if (startsWith(data, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return MimeTypeUtils.IMAGE_PNG;
+        }
+        if (startsWith(data, 0, 0xFF, 0xD8, 0xFF)) {
+            return MimeTypeUtils.IMAGE_JPEG;
+        }
+        if (startsWith(data, 0, 'G', 'I', 'F', '8')) {
+            return MimeTypeUtils.IMAGE_GIF;
+        }
+        if (startsWith(data, 0, 'R', 'I', 'F', 'F') && startsWith(data, 8, 'W', 'E', 'B', 'P')) {
+            return IMAGE_WEBP;
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... signature) {
+        if (data.length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((data[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The Orientation tag (0x0112) of IFD0 in the JPEG's EXIF segment; 1 when there is none or it is unreadable.
+    static int exifOrientation(byte[] jpeg) {
+        ByteBuffer data = ByteBuffer.wrap(jpeg);
+        try {
+            int position = 2; // after SOI
+            while (position + 4 <= jpeg.length && (jpeg[position] & 0xFF) == 0xFF) {
+                int marker = jpeg[position + 1] & 0xFF;
+                int length = data.order(ByteOrder.BIG_ENDIAN).getShort(position + 2) & 0xFFFF;
+                if (marker == 0xDA) {
+                    break; // start of the image data: no EXIF before it
+                }
+                if (marker == 0xE1 && startsWith(jpeg, position + 4, 'E', 'x', 'i', 'f', 0, 0)) {
+                    int tiff = position + 10;
+                    data.order(jpeg[tiff] == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+                    int ifd = tiff + data.getInt(tiff + 4);
+                    int entries = data.getShort(ifd) & 0xFFFF;
+                    for (int i = 0; i < entries; i++) {
+                        int entry = ifd + 2 + i * 12;
+                        if ((data.getShort(entry) & 0xFFFF) == 0x0112) {
+                            return data.getShort(entry + 8) & 0xFFFF;
+                        }
+                    }
+                    return 1;
+                }
+                position += 2 + length;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // truncated or malformed EXIF
+        }
+        return 1;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
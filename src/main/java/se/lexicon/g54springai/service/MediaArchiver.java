@@ -0,0 +1,268 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Writes generated media (speech, images) to the storage directory off the request path.
+// All writes run on one background thread fed by a bounded queue: when the disk cannot keep up, archive
+// tasks are dropped (counted in media.archive.dropped) instead of slowing down or blocking requests.
+// Remote media (generated image URLs) are downloaded by a separate bounded pool and stored content-addressed:
+// the file name is the SHA-256 of the content, so the same image is stored only once.
+@Component
+public class MediaArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaArchiver.class);
+    private static final long TRANSFER_CHUNK = 1 << 20;
+
+    private final Path storageDir;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor downloadExecutor;
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter failed;
+    private final Counter deduplicated;
+
+    @Autowired
+    public MediaArchiver(@Value("${app.media.storage-dir:generated-media}") String storageDir,
+                         @Value("${app.media.archive.queue-size:256}") int queueSize,
+                         @Value("${app.media.download-threads:2}") int downloadThreads,
+                         MeterRegistry meterRegistry) {
+        this.storageDir = Paths.get(storageDir).toAbsolutePath();
+        // a single writer keeps the chunks of one archive in order
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "media-archiver");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.downloadExecutor = new ThreadPoolExecutor(downloadThreads, downloadThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "media-downloader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.written = meterRegistry.counter("media.archive.written");
+        this.deduplicated = meterRegistry.counter("media.archive.deduplicated");
+        this.dropped = meterRegistry.counter("media.archive.dropped");
+        this.failed = meterRegistry.counter("media.archive.failed");
+    }
+
+    public Path getStorageDir() {
+        return storageDir;
+    }
+
+    // Schedules a complete file for writing and returns immediately.
+    public void archive(String fileName, byte[] data) {
+        Archive archive = open(fileName);
+        archive.append(data);
+        archive.complete();
+    }
+
+    // Opens an archive that is written chunk by chunk as the chunks are produced (e.g. streamed audio).
+    public Archive open(String fileName) {
+        return new Archive(storageDir.resolve(fileName));
+    }
+
+    // Downloads the media in the background and stores it as <sha-256>.<extension>; returns immediately.
+    public void archiveFromUrl(String url, String extension) {
+        submit(downloadExecutor, () -> {
+            try (InputStream in = URI.create(url).toURL().openStream()) {
+                storeContentAddressed(in, extension);
+            } catch (IOException | RuntimeException e) {
+                failed.increment();
+                log.warn("Could not archive {}", url, e);
+            }
+        });
+    }
+
+    // Stores media that is already in memory (e.g. a b64_json image) as <sha-256>.<extension>; returns immediately.
+    public void archiveContentAddressed(byte[] data, String extension) {
+        submit(executor, () -> {
+            try {
+                storeContentAddressed(new ByteArrayInputStream(data), extension);
+            } catch (IOException e) {
+                failed.increment();
+                log.warn("Could not archive media", e);
+            }
+        });
+    }
+
+    // Streams the content into a temp file through NIO channels while hashing it, then moves it to its
+    // content-addressed name (or drops it when that file already exists).
+    Path storeContentAddressed(InputStream content, String extension) throws IOException {
+        Files.createDirectories(storageDir);
+        MessageDigest digest = sha256();
+        Path temp = Files.createTempFile(storageDir, "download_", ".tmp");
+        try {
+            try (ReadableByteChannel source = Channels.newChannel(new DigestInputStream(content, digest));
+                 FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long position = 0;
+                long transferred;
+                while ((transferred = target.transferFrom(source, position, TRANSFER_CHUNK)) > 0) {
+                    position += transferred;
+                }
+            }
+            Path destination = storageDir.resolve(HexFormat.of().formatHex(digest.digest()) + "." + extension);
+            if (Files.exists(destination)) {
+                deduplicated.increment();
+                return destination;
+            }
+            Files.move(temp, destination, StandardCopyOption.ATOMIC_MOVE);
+            written.increment();
+            return destination;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Runs a task on the archiver thread; returns false when the queue is full.
+    boolean submit(Runnable task) {
+        return submit(executor, task);
+    }
+
+    private boolean submit(ThreadPoolExecutor target, Runnable task) {
+        try {
+            target.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            dropped.increment();
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        downloadExecutor.shutdown();
+        executor.shutdown();
+        downloadExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // One file being archived. Its tasks run in order on the archiver thread; if one of them cannot be
+    // queued the archive is abandoned and the partial file removed, so no truncated media is left behind.
+    // The cleanup may run on its own thread (see abort), so write, close and discard all hold the archive's
+    // monitor: the channel is never closed or deleted in the middle of a write.
+    public class Archive {
+
+        private final Path target;
+        private FileChannel channel; // guarded by this
+        private volatile boolean abandoned;
+
+        private Archive(Path target) {
+            this.target = target;
+        }
+
+        // The chunk is written later, so the caller must not modify it afterwards.
+        public void append(byte[] chunk) {
+            if (abandoned) {
+                return;
+            }
+            if (!submit(() -> write(chunk))) {
+                abort();
+            }
+        }
+
+        public void complete() {
+            if (abandoned || !submit(this::close)) {
+                abort();
+            }
+        }
+
+        public void abort() {
+            abandoned = true;
+            // cleanup must not be dropped, so it bypasses the queue limit when needed
+            if (!submit(this::discard)) {
+                Thread cleanup = new Thread(this::discard, "media-archiver-cleanup");
+                cleanup.setDaemon(true);
+                cleanup.start();
+            }
+        }
+
+        private synchronized void write(byte[] data) {
+            if (abandoned) {
+                return;
+            }
+            try {
+                if (channel == null) {
+                    Files.createDirectories(storageDir);
+                    channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                failed.increment();
+                log.warn("Could not archive {}", target, e);
+                abandoned = true;
+                discard();
+            }
+        }
+
+        private synchronized void close() {
+            if (abandoned) {
+                return;
+            }
+            try {
+                if (channel != null) {
+                    channel.close();
+                    written.increment();
+                }
+            } catch (IOException e) {
+                failed.increment();
+                discard();
+            }
+        }
+
+        private synchronized void discard() {
+            try {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+                Files.deleteIfExists(target);
+            } catch (IOException e) {
+                log.warn("Could not remove partial archive {}", target, e);
+            }
+        }
+    }
+}
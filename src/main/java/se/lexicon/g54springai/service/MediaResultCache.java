@@ -0,0 +1,416 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Results of the multimodal endpoints (image descriptions, transcriptions, synthesized speech), keyed by the
+// SHA-256 of the input bytes plus the operation and its model options: the same upload costs one model call.
+// - memory tier: LRU bounded by total bytes; values above maxMemoryEntry (e.g. speech audio) never go there
+// - disk tier: one file per key in the cache directory, LRU bounded by total bytes, survives restarts.
+//   Large values are served from the file itself (see file()), not copied onto the heap.
+// Files are written in the background by a single thread (temp file + atomic rename); when the queue is full
+// the value is only kept in memory. The least recently used files are deleted once the disk tier is over its
+// size, down to 90% of it. An evicted file leaves the cache at once but stays on disk for deleteDelay, so a
+// response that got it from file() just before (Tomcat opens it for sendfile after the handler returns) can
+// still be sent; files still waiting for that are deleted on shutdown. Only files named like a key are picked up on
+// startup, and a directory over its size (e.g. after a smaller max-size) is trimmed right away.
+// Lookups by tier: media.cache.requests{result=memory|disk|miss}.
+@Component
+public class MediaResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaResultCache.class);
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{64}");
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxMemoryBytes;
+    private final long maxMemoryEntry;
+    private final long maxDiskBytes;
+    private final long deleteDelayMillis;
+
+    // access-ordered LinkedHashMap = LRU; guarded by synchronized (memory), memoryBytes is only written under it
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong memoryBytes = new AtomicLong();
+
+    private final Map<String, DiskEntry> disk = new ConcurrentHashMap<>();
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final ThreadPoolExecutor writer;
+    private final ScheduledExecutorService deleter;
+    // evicted keys whose file is not deleted yet
+    private final Set<String> pendingDeletes = ConcurrentHashMap.newKeySet();
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    private final Counter memoryEvictions;
+    private final Counter diskEvictions;
+    private final Counter droppedWrites;
+
+    private static final class DiskEntry {
+        final long size;
+        volatile long lastAccess;
+
+        DiskEntry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    @Autowired
+    public MediaResultCache(@Value("${app.media-cache.enabled:true}") boolean enabled,
+                            @Value("${app.media-cache.directory:media-cache}") String directory,
+                            @Value("${app.media-cache.memory.max-size:32MB}") DataSize maxMemorySize,
+                            @Value("${app.media-cache.memory.max-entry-size:64KB}") DataSize maxMemoryEntry,
+                            @Value("${app.media-cache.disk.max-size:1GB}") DataSize maxDiskSize,
+                            @Value("${app.media-cache.disk.queue-size:64}") int queueSize,
+                            @Value("${app.media-cache.disk.delete-delay:1m}") Duration deleteDelay,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory).toAbsolutePath();
+        this.maxMemoryBytes = maxMemorySize.toBytes();
+        this.maxMemoryEntry = maxMemoryEntry.toBytes();
+        this.maxDiskBytes = maxDiskSize.toBytes();
+        this.deleteDelayMillis = deleteDelay.toMillis();
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "media-cache-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.deleter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "media-cache-deleter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.memoryHits = meterRegistry.counter("media.cache.requests", "result", "memory");
+        this.diskHits = meterRegistry.counter("media.cache.requests", "result", "disk");
+        this.misses = meterRegistry.counter("media.cache.requests", "result", "miss");
+        this.memoryEvictions = meterRegistry.counter("media.cache.evictions", "tier", "memory");
+        this.diskEvictions = meterRegistry.counter("media.cache.evictions", "tier", "disk");
+        this.droppedWrites = meterRegistry.counter("media.cache.dropped-writes");
+        meterRegistry.gauge("media.cache.size", Tags.of("tier", "disk"), diskBytes, AtomicLong::get);
+        meterRegistry.gauge("media.cache.size", Tags.of("tier", "memory"), memoryBytes, AtomicLong::get);
+        if (enabled) {
+            load();
+        }
+    }
+
+    // SHA-256 over the operation, its options and the content, as hex
+    public static String key(String operation, String options, byte[] content) {
+        MessageDigest digest = digest(operation, options);
+        digest.update(content);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Same key as key(operation, options, bytes) for the same content, read as a stream (large uploads).
+    public static String key(String operation, String options, InputStream content) throws IOException {
+        MessageDigest digest = digest(operation, options);
+        byte[] buffer = new byte[64 * 1024];
+        for (int read = content.read(buffer); read >= 0; read = content.read(buffer)) {
+            digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public String getOrComputeText(String key, Supplier<String> compute) {
+        byte[] value = getOrCompute(key, () -> compute.get().getBytes(StandardCharsets.UTF_8));
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    public byte[] getOrCompute(String key, Supplier<byte[]> compute) {
+        byte[] cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] value = compute.get();
+        put(key, value);
+        return value;
+    }
+
+    // The value from memory or disk (a disk hit small enough is promoted to memory); null on a miss.
+    public byte[] get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (memory) {
+            byte[] value = memory.get(key);
+            if (value != null) {
+                touch(key);
+                memoryHits.increment();
+                return value;
+            }
+        }
+        byte[] value = readFile(key);
+        if (value == null) {
+            misses.increment();
+            return null;
+        }
+        diskHits.increment();
+        putInMemory(key, value);
+        return value;
+    }
+
+    // The file holding the value, for callers that can send it without reading it (e.g. with sendfile); null
+    // when the value is not on disk. Counts as an access, so the file is the last one the LRU would delete, and
+    // it is not deleted for at least deleteDelay even if it is evicted right after.
+    public Path file(String key) {
+        if (!enabled) {
+            return null;
+        }
+        DiskEntry entry = disk.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        diskHits.increment();
+        return fileOf(key);
+    }
+
+    public void put(String key, byte[] value) {
+        if (!enabled || value == null) {
+            return;
+        }
+        putInMemory(key, value);
+        if (disk.containsKey(key)) {
+            return;
+        }
+        try {
+            writer.execute(() -> write(key, value));
+        } catch (RejectedExecutionException e) {
+            droppedWrites.increment();
+        }
+    }
+
+    private void putInMemory(String key, byte[] value) {
+        if (value.length > maxMemoryEntry) {
+            return;
+        }
+        synchronized (memory) {
+            byte[] previous = memory.put(key, value);
+            memoryBytes.addAndGet(value.length - (previous != null ? previous.length : 0));
+            Iterator<Map.Entry<String, byte[]>> eldest = memory.entrySet().iterator();
+            while (memoryBytes.get() > maxMemoryBytes && eldest.hasNext()) {
+                Map.Entry<String, byte[]> entry = eldest.next();
+                memoryBytes.addAndGet(-entry.getValue().length);
+                eldest.remove();
+                memoryEvictions.increment();
+            }
+        }
+    }
+
+    // Reads through a read-only mapping: the bytes come straight from the page cache, without a read buffer.
+    private byte[] readFile(String key) {
+        DiskEntry entry = disk.get(key);
+        if (entry == null) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(fileOf(key), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] value = new byte[mapped.remaining()];
+            mapped.get(value);
+            entry.lastAccess = System.currentTimeMillis();
+            return value;
+        } catch (NoSuchFileException e) {
+            disk.remove(key, entry); // deleted behind our back
+            return null;
+        } catch (IOException e) {
+            log.warn("Could not read cached result {}", key, e);
+            return null;
+        }
+    }
+
+    // Runs on the writer thread only
+    private void write(String key, byte[] value) {
+        if (disk.containsKey(key)) {
+            return;
+        }
+        Path file = fileOf(key);
+        Path temp = file.resolveSibling(key + TEMP_SUFFIX);
+        try {
+            Files.createDirectories(directory);
+            Files.write(temp, value);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            disk.put(key, new DiskEntry(value.length, System.currentTimeMillis()));
+            if (diskBytes.addAndGet(value.length) > maxDiskBytes) {
+                evict(false);
+            }
+        } catch (IOException e) {
+            log.warn("Could not cache result {}", key, e);
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // best effort
+            }
+        }
+    }
+
+    // Evicts the least recently used files down to 90% of the disk budget; the files are deleted after deleteDelay,
+    // or at once when no response can be sending them (on startup)
+    private void evict(boolean deleteNow) {
+        List<Map.Entry<String, DiskEntry>> entries = new ArrayList<>(disk.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        long target = maxDiskBytes / 10 * 9;
+        for (Map.Entry<String, DiskEntry> entry : entries) {
+            if (diskBytes.get() <= target) {
+                break;
+            }
+            if (disk.remove(entry.getKey(), entry.getValue())) {
+                diskBytes.addAndGet(-entry.getValue().size);
+                diskEvictions.increment();
+                if (deleteNow) {
+                    deleteUnlessCached(entry.getKey());
+                } else {
+                    scheduleDelete(entry.getKey());
+                }
+            }
+        }
+    }
+
+    private void scheduleDelete(String key) {
+        pendingDeletes.add(key);
+        try {
+            deleter.schedule(() -> deleteEvicted(key), deleteDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            deleteEvicted(key); // shutting down
+        }
+    }
+
+    // Runs on the writer thread, like write(): a value cached again in the meantime keeps its (new) file.
+    private void deleteEvicted(String key) {
+        if (!pendingDeletes.remove(key)) {
+            return; // already deleted by shutdown()
+        }
+        try {
+            writer.execute(() -> deleteUnlessCached(key));
+        } catch (RejectedExecutionException e) {
+            deleteUnlessCached(key); // queue full or shutting down
+        }
+    }
+
+    private void deleteUnlessCached(String key) {
+        if (disk.containsKey(key)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(fileOf(key));
+        } catch (IOException e) {
+            log.warn("Could not delete cached result {}", key, e);
+        }
+    }
+
+    // Picks up the files of a previous run; the modification time stands in for the last access. Other files in the
+    // directory are left alone.
+    private void load() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file); // interrupted write
+                    continue;
+                }
+                if (!KEY.matcher(name).matches() || !Files.isRegularFile(file)) {
+                    continue;
+                }
+                long size = Files.size(file);
+                disk.put(name, new DiskEntry(size, Files.getLastModifiedTime(file).toMillis()));
+                diskBytes.addAndGet(size);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the media cache in " + directory, e);
+        }
+        if (diskBytes.get() > maxDiskBytes) {
+            evict(true);
+        }
+    }
+
+    // a memory hit keeps the file of the same value from being the next to go
+    private void touch(String key) {
+        DiskEntry entry = disk.get(key);
+        if (entry != null) {
+            entry.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    private Path fileOf(String key) {
+        return directory.resolve(key);
+    }
+
+    private static MessageDigest digest(String operation, String options) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((operation + '\0' + options + '\0').getBytes(StandardCharsets.UTF_8));
+            return digest;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // Waits until the writes queued so far are on disk
+    void flush() throws InterruptedException, ExecutionException {
+        writer.submit(() -> {
+        }).get();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        deleter.shutdownNow();
+        // queued writes are only a cache: wait briefly, then let them go
+        writer.shutdown();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+        // evicted files no response can be sending any more are deleted now
+        for (String key : pendingDeletes) {
+            if (pendingDeletes.remove(key)) {
+                deleteUnlessCached(key);
+            }
+        }
+    }
+}
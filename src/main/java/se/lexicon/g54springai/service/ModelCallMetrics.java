@@ -0,0 +1,178 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Records every model round trip (operation = what the service does, model = the requested model):
+// - model.call.duration{operation,model,outcome}        latency histogram (success, error, cancelled)
+// - model.call.errors{operation,model,exception}        failures by exception type
+// - model.call.tokens{operation,model,type}             prompt/completion/cached tokens from the ChatResponse usage
+// - model.call.cached-token-share{operation,model}      share of the prompt tokens the provider served from its
+//                                                       prompt cache (0..1), when the usage reports cached tokens
+// - model.stream.time-to-first-token{operation,model}   streaming only (first text chunk or audio bytes)
+// - model.stream.tokens-per-second{operation,model}     streaming only, completion tokens after the first one
+// Streamed chunks are counted as one token each when the stream carries no usage metadata.
+@Component
+public class ModelCallMetrics {
+
+    private static final String UNKNOWN_MODEL = "unknown";
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public ModelCallMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Times a blocking model call; usage is recorded when the call returns a ChatResponse.
+    public <T> T record(String operation, String model, Supplier<T> call) {
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            String modelTag = modelTag(model, null);
+            timer(operation, modelTag, "error").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            error(operation, modelTag, e);
+            throw e;
+        }
+        ChatResponse chatResponse = result instanceof ChatResponse response ? response : null;
+        String modelTag = modelTag(model, chatResponse);
+        timer(operation, modelTag, "success").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (chatResponse != null) {
+            recordUsage(operation, modelTag, chatResponse.getMetadata().getUsage());
+        }
+        return result;
+    }
+
+    // Instruments a streamed answer; measured per subscription, from subscribe to the terminal signal.
+    public <T> Flux<T> stream(String operation, String model, Flux<T> upstream) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicLong firstTokenAt = new AtomicLong();
+            AtomicInteger chunks = new AtomicInteger();
+            AtomicReference<Usage> usage = new AtomicReference<>();
+            AtomicReference<String> responseModel = new AtomicReference<>();
+            AtomicBoolean text = new AtomicBoolean();
+            return upstream
+                    .doOnNext(element -> {
+                        if (chunks.getAndIncrement() == 0) {
+                            firstTokenAt.set(System.nanoTime());
+                            // tokens/sec only makes sense for text, not for streamed audio bytes
+                            text.set(element instanceof String || element instanceof ChatResponse);
+                        }
+                        if (element instanceof ChatResponse response) {
+                            Usage chunkUsage = response.getMetadata().getUsage();
+                            if (chunkUsage != null && chunkUsage.getTotalTokens() != null && chunkUsage.getTotalTokens() > 0) {
+                                usage.set(chunkUsage);
+                            }
+                            if (response.getMetadata().getModel() != null && !response.getMetadata().getModel().isEmpty()) {
+                                responseModel.set(response.getMetadata().getModel());
+                            }
+                        }
+                    })
+                    .doOnError(error -> error(operation, model != null ? model : UNKNOWN_MODEL, error))
+                    .doFinally(signal -> {
+                        long end = System.nanoTime();
+                        String modelTag = model != null ? model : responseModel.get() != null ? responseModel.get() : UNKNOWN_MODEL;
+                        String outcome = signal == SignalType.ON_COMPLETE ? "success"
+                                : signal == SignalType.ON_ERROR ? "error" : "cancelled";
+                        timer(operation, modelTag, outcome).record(end - start, TimeUnit.NANOSECONDS);
+                        if (chunks.get() == 0) {
+                            return;
+                        }
+                        Timer.builder("model.stream.time-to-first-token")
+                                .tags("operation", operation, "model", modelTag)
+                                .publishPercentileHistogram()
+                                .register(meterRegistry)
+                                .record(firstTokenAt.get() - start, TimeUnit.NANOSECONDS);
+                        Usage streamUsage = usage.get();
+                        int completionTokens = chunks.get();
+                        if (streamUsage != null) {
+                            recordUsage(operation, modelTag, streamUsage);
+                            if (streamUsage.getCompletionTokens() != null) {
+                                completionTokens = streamUsage.getCompletionTokens();
+                            }
+                        }
+                        double generationSeconds = (end - firstTokenAt.get()) / 1e9;
+                        if (text.get() && signal == SignalType.ON_COMPLETE && completionTokens > 1 && generationSeconds > 0) {
+                            DistributionSummary.builder("model.stream.tokens-per-second")
+                                    .tags("operation", operation, "model", modelTag)
+                                    .register(meterRegistry)
+                                    .record((completionTokens - 1) / generationSeconds);
+                        }
+                    });
+        });
+    }
+
+    private void recordUsage(String operation, String model, Usage usage) {
+        if (usage == null) {
+            return;
+        }
+        if (usage.getPromptTokens() != null && usage.getPromptTokens() > 0) {
+            tokens(operation, model, "prompt").record(usage.getPromptTokens());
+        }
+        if (usage.getCompletionTokens() != null && usage.getCompletionTokens() > 0) {
+            tokens(operation, model, "completion").record(usage.getCompletionTokens());
+        }
+        // OpenAI reports the prompt tokens that matched a cached prompt prefix
+        if (usage.getNativeUsage() instanceof OpenAiApi.Usage openAiUsage && openAiUsage.promptTokensDetails() != null
+                && openAiUsage.promptTokensDetails().cachedTokens() != null
+                && usage.getPromptTokens() != null && usage.getPromptTokens() > 0) {
+            int cachedTokens = openAiUsage.promptTokensDetails().cachedTokens();
+            if (cachedTokens > 0) {
+                tokens(operation, model, "cached").record(cachedTokens);
+            }
+            DistributionSummary.builder("model.call.cached-token-share")
+                    .tags("operation", operation, "model", model)
+                    .register(meterRegistry)
+                    .record((double) cachedTokens / usage.getPromptTokens());
+        }
+    }
+
+    private Timer timer(String operation, String model, String outcome) {
+        return Timer.builder("model.call.duration")
+                .tags("operation", operation, "model", model, "outcome", outcome)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofMinutes(2))
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary tokens(String operation, String model, String type) {
+        return DistributionSummary.builder("model.call.tokens")
+                .baseUnit("tokens")
+                .tags("operation", operation, "model", model, "type", type)
+                .register(meterRegistry);
+    }
+
+    private void error(String operation, String model, Throwable error) {
+        meterRegistry.counter("model.call.errors",
+                "operation", operation, "model", model, "exception", error.getClass().getSimpleName()).increment();
+    }
+
+    private static String modelTag(String model, ChatResponse response) {
+        if (model != null) {
+            return model;
+        }
+        if (response != null && response.getMetadata().getModel() != null && !response.getMetadata().getModel().isEmpty()) {
+            return response.getMetadata().getModel();
+        }
+        return UNKNOWN_MODEL;
+    }
+}
@@ -1,25 +1,47 @@
 package se.lexicon.g54springai.service;
 
+import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
 
 public interface OpenAIService {
 
-    String processSimpleChatQuery(String query);
+    default String processSimpleChatQuery(String query) {
+        return processSimpleChatQuery(query, false);
+    }
+
+    // bypassCache = true skips the response cache lookup and always asks the model
+    String processSimpleChatQuery(String query, boolean bypassCache);
 
     Flux<String> processSimpleChatQueryWithStream(String query);
 
-    String processSimpleChatQueryWithContext(String query);
+    default String processSimpleChatQueryWithContext(String query) {
+        return processSimpleChatQueryWithContext(query, false);
+    }
+
+    String processSimpleChatQueryWithContext(String query, boolean bypassCache);
 
     String processImage(MultipartFile file);
 
     String generateImageAndReturnUrl(String query);
 
+    // Returns the PNG bytes directly (b64_json response format), saving the extra download of the image URL
+    byte[] generateImage(String query);
+
     String speechToText(MultipartFile file);
 
     byte[] textToSpeech(String text);
 
+    // The MP3 audio as a file when it is in the disk cache (so it can be sent without reading it), else in memory
+    Resource textToSpeechAudio(String text);
+
+    // Streams the MP3 audio chunk by chunk as it is synthesized
+    Flux<byte[]> textToSpeechStream(String text);
+
     String chatMemory(String query, String conversationId);
 
+    // Streams the answer token by token; the exchange is stored in the chat memory only once the answer is complete
+    Flux<String> chatMemoryStream(String query, String conversationId);
+
     void resetChatMemory(String conversationId);
 }
\ No newline at end of file
@@ -1,75 +1,148 @@
 package se.lexicon.g54springai.service;
 
-import org.springframework.ai.audio.transcription.AudioTranscriptionPrompt;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.content.Media;
 import org.springframework.ai.image.ImageGeneration;
-import org.springframework.ai.image.ImageOptions;
 import org.springframework.ai.image.ImagePrompt;
 import org.springframework.ai.image.ImageResponse;
 import org.springframework.ai.openai.*;
 import org.springframework.ai.openai.api.OpenAiAudioApi;
+import org.springframework.ai.openai.audio.speech.SpeechPrompt;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
-import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
+import se.lexicon.g54springai.exception.UpstreamOverloadedException;
+import se.lexicon.g54springai.prompt.ChatPromptTemplate;
+import se.lexicon.g54springai.prompt.ImagePromptTemplate;
+import se.lexicon.g54springai.prompt.PromptRegistry;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.Locale;
 
 
 @Service
 public class OpenAIServiceImpl implements OpenAIService {
 
-    private final OpenAiChatModel openAiChatModel;
+    private final ChatModel openAiChatModel;
     // It represents a chat model from OpenAI that can be used to process chat queries.
+    // (typed as the ChatModel interface so that a local stub model can be plugged in for tests)
     // It supports both synchronous and asynchronous operations.
     // .call() method is used to send a chat message and receive a response.
     // .stream() method is used to stream responses in real-time.
 
     private final OpenAiImageModel openAiImageModel;
 
-    // OpenAiAudioTranscriptionModel is used for audio transcription tasks
+    // OpenAiAudioTranscriptionModel is used for audio transcription tasks (wrapped by SpeechTranscriptionPipeline)
     // OpenAiAudioSpeechModel is used for speech synthesis tasks
-    private OpenAiAudioTranscriptionModel openaiAudioTranscriptionModel;
+    private final SpeechTranscriptionPipeline speechTranscriptionPipeline;
     private OpenAiAudioSpeechModel openaiAudioSpeechModel;
 
+    // Configure speech options
+    private final OpenAiAudioSpeechOptions speechOptions = OpenAiAudioSpeechOptions.builder()
+            .model("tts-1") // or "tts-1-hd" for higher quality
+            .voice(OpenAiAudioApi.SpeechRequest.Voice.ALLOY) // Available voices: alloy, echo, fable, onyx, nova, shimmer
+            .responseFormat(OpenAiAudioApi.SpeechRequest.AudioResponseFormat.MP3) // Response format can be MP3 or WAV
+            .speed(1.0f) // Speech speed (0.25 to 4.0)
+            .build();
+    // OpenAI accepts up to 4096 characters per speech request; smaller chunks start playing sooner
+    static final int MAX_SPEECH_CHUNK_CHARS = 1000;
+
     private final ChatMemory chatMemory;
 
+    // Cache of stateless chat answers, see ChatResponseCache
+    private final ChatResponseCache responseCache;
+    // Collapses concurrent identical requests into one upstream call, see RequestCoalescer
+    private final RequestCoalescer requestCoalescer;
+    // Bounds the number of concurrent blocking calls to the models, see UpstreamCallGuard
+    private final UpstreamCallGuard upstreamCallGuard;
+    // Latency, token and error metrics of every model call, see ModelCallMetrics
+    private final ModelCallMetrics modelCallMetrics;
+    // Preloaded prompt texts and options, see PromptRegistry
+    private final PromptRegistry promptRegistry;
+    private final MediaArchiver mediaArchiver;
+    // Format detection, downscaling and metadata stripping of uploaded images, see ImagePreprocessor
+    private final ImagePreprocessor imagePreprocessor;
+    // Image descriptions, transcriptions and speech by content hash, in memory and on disk, see MediaResultCache
+    private final MediaResultCache mediaResultCache;
+    private final boolean archiveSpeech;
+    private final boolean archiveImages;
+    private final int speechPipelineDepth;
+    private final String defaultModel;
+    private final Double defaultTemperature;
+
     @Autowired
-    public OpenAIServiceImpl(OpenAiChatModel openAiChatModel, OpenAiImageModel openAiImageModel,
-                             OpenAiAudioTranscriptionModel openaiAudioTranscriptionModel,
+    public OpenAIServiceImpl(ChatModel openAiChatModel, OpenAiImageModel openAiImageModel,
+                             SpeechTranscriptionPipeline speechTranscriptionPipeline,
                              OpenAiAudioSpeechModel openaiAudioSpeechModel,
-                             ChatMemory chatMemory
+                             ChatMemory chatMemory,
+                             ChatResponseCache responseCache,
+                             RequestCoalescer requestCoalescer,
+                             UpstreamCallGuard upstreamCallGuard,
+                             ModelCallMetrics modelCallMetrics,
+                             PromptRegistry promptRegistry,
+                             MediaArchiver mediaArchiver,
+                             ImagePreprocessor imagePreprocessor,
+                             MediaResultCache mediaResultCache,
+                             @Value("${app.speech.archive.enabled:false}") boolean archiveSpeech,
+                             @Value("${app.images.archive.enabled:true}") boolean archiveImages,
+                             @Value("${app.speech.pipeline-depth:2}") int speechPipelineDepth
     ) {
         this.openAiChatModel = openAiChatModel;
         this.openAiImageModel = openAiImageModel;
-        this.openaiAudioTranscriptionModel = openaiAudioTranscriptionModel;
+        this.speechTranscriptionPipeline = speechTranscriptionPipeline;
         this.openaiAudioSpeechModel = openaiAudioSpeechModel;
         this.chatMemory = chatMemory;
+        this.responseCache = responseCache;
+        this.requestCoalescer = requestCoalescer;
+        this.upstreamCallGuard = upstreamCallGuard;
+        this.modelCallMetrics = modelCallMetrics;
+        this.promptRegistry = promptRegistry;
+        this.mediaArchiver = mediaArchiver;
+        this.imagePreprocessor = imagePreprocessor;
+        this.mediaResultCache = mediaResultCache;
+        this.archiveSpeech = archiveSpeech;
+        this.archiveImages = archiveImages;
+        this.speechPipelineDepth = speechPipelineDepth;
+        // default options are fixed at startup, so the parts of the cache key derived from them are too
+        ChatOptions defaultOptions = openAiChatModel.getDefaultOptions();
+        this.defaultModel = defaultOptions.getModel();
+        this.defaultTemperature = defaultOptions.getTemperature();
     }
 
     @Override
-    public String processSimpleChatQuery(final String query) {
+    public String processSimpleChatQuery(final String query, final boolean bypassCache) {
 
         if (query == null || query.isEmpty()) {
             throw new IllegalArgumentException("Query cannot be null or empty");
         }
         try {
-            return openAiChatModel.call(query);
+            ChatRequestKey key = ChatRequestKey.of(query, null, defaultModel, defaultTemperature);
+            ChatResponse chatResponse = responseCache.getOrCall(key, bypassCache,
+                    () -> requestCoalescer.execute(key, () -> upstreamCallGuard.call("chat", defaultModel,
+                            () -> modelCallMetrics.record("chat", defaultModel, () -> openAiChatModel.call(new Prompt(query))))));
+            return chatResponse.getResult() != null ? chatResponse.getResult().getOutput().getText() : "No response generated";
+        } catch (UpstreamOverloadedException e) {
+            throw e; // answered with 503 by MyExceptionHandler
         } catch (RuntimeException e) {
             // Handle the exception, log it, or rethrow it as needed
             throw new RuntimeException("Error processing chat query: " + e.getMessage(), e);
@@ -83,7 +156,9 @@ public class OpenAIServiceImpl implements OpenAIService {
             throw new IllegalArgumentException("Query cannot be null or empty");
         }
         try {
-            return openAiChatModel.stream(query);
+            ChatRequestKey key = ChatRequestKey.of(query, null, defaultModel, defaultTemperature);
+            return requestCoalescer.stream(key, () -> upstreamCallGuard.stream("chat.stream", defaultModel,
+                    modelCallMetrics.stream("chat.stream", defaultModel, openAiChatModel.stream(query))));
         } catch (RuntimeException e) {
             // Handle the exception, log it, or rethrow it as needed
             throw new RuntimeException("Error processing chat query: " + e.getMessage(), e);
@@ -91,26 +166,22 @@ public class OpenAIServiceImpl implements OpenAIService {
     }
 
     @Override
-    public String processSimpleChatQueryWithContext(String query) {
+    public String processSimpleChatQueryWithContext(String query, boolean bypassCache) {
         if (query == null || query.isEmpty()) {
             throw new IllegalArgumentException("Query cannot be null or empty");
         }
 
-        // system message sets the context(behavior/personality/instruction/tone) for the AI models
-        SystemMessage systemMessage = SystemMessage.builder().text("You are ans AI Assistant named LEXBOT").build();
-        // user message is the actual query from the user
+        // system message sets the context(behavior/personality/instruction/tone) for the AI models,
+        // the template puts it before the user message (the actual query from the user)
+        ChatPromptTemplate template = promptRegistry.chat(PromptRegistry.LEXBOT);
         UserMessage userMessage = UserMessage.builder().text(query).build();
         // prompt represents the entire chat interaction, including system and user messages (full input to llm)
-        Prompt prompt = Prompt.builder()
-                .messages(systemMessage, userMessage)
-                .chatOptions(
-                        ChatOptions.builder()
-                                .model("gpt-4.1-mini")
-                                .temperature(0.3)
-                                .build()
-                )
-                .build();
-        ChatResponse chatResponse = openAiChatModel.call(prompt);
+        Prompt prompt = template.prompt(userMessage);
+        ChatOptions chatOptions = template.options();
+        ChatRequestKey key = ChatRequestKey.of(query, template.systemText(), chatOptions.getModel(), chatOptions.getTemperature());
+        ChatResponse chatResponse = responseCache.getOrCall(key, bypassCache,
+                () -> requestCoalescer.execute(key, () -> upstreamCallGuard.call("chat.lexbot", chatOptions.getModel(),
+                        () -> modelCallMetrics.record("chat.lexbot", chatOptions.getModel(), () -> openAiChatModel.call(prompt)))));
         return chatResponse.getResult() != null ? chatResponse.getResult().getOutput().getText() : "No response generated";
     }
 
@@ -119,132 +190,197 @@ public class OpenAIServiceImpl implements OpenAIService {
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("File cannot be null or empty");
         }
-        if (file.getContentType() == null || !file.getContentType().startsWith("image/")) {
-            throw new IllegalArgumentException("Invalid file type. File must be an image");
+        byte[] upload;
+        try {
+            upload = file.getBytes();
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading image file: " + e.getMessage(), e);
         }
+        ChatPromptTemplate template = promptRegistry.chat(PromptRegistry.VISION);
+        // the same image with the same prompt and preprocessing gets the same description
+        String key = MediaResultCache.key("vision", optionsKey(template) + "|" + imagePreprocessor.settings(), upload);
+        return mediaResultCache.getOrComputeText(key, () -> describeImage(upload, template));
+    }
 
+    private String describeImage(byte[] upload, ChatPromptTemplate template) {
+        // the type is detected from the content; large images are scaled down before they are uploaded
+        ImagePreprocessor.PreparedImage image = imagePreprocessor.prepare(upload);
         Media media = Media.builder()
-                .data(file.getResource())
-                .mimeType(MimeTypeUtils.IMAGE_PNG)
+                .data(new ByteArrayResource(image.data()))
+                .mimeType(image.mimeType())
                 .build();
         UserMessage userMessage = UserMessage.builder()
-                .text("Explain what do you see on this picture?")
+                .text(template.userText())
                 .media(media)
                 .build();
-        SystemMessage systemMessage = SystemMessage.builder()
-                .text("You are a helpful assistant that describes the contents of an image.")
-                .build();
-        Prompt prompt = Prompt.builder()
-                .messages(systemMessage, userMessage)
-                .chatOptions(
-                        ChatOptions.builder()
-                                .model("gpt-4.1-mini")
-                                .temperature(0.3)
-                                .build()
-                )
-                .build();
-        ChatResponse chatResponse = openAiChatModel.call(prompt);
+        Prompt prompt = template.prompt(userMessage);
+        ChatResponse chatResponse = upstreamCallGuard.call("vision", prompt.getOptions().getModel(),
+                () -> modelCallMetrics.record("vision", prompt.getOptions().getModel(), () -> openAiChatModel.call(prompt)));
         return chatResponse.getResult() != null ? chatResponse.getResult().getOutput().getText() : "No description generated";
     }
 
+    private static String optionsKey(ChatPromptTemplate template) {
+        return template.systemText() + "|" + template.userText() + "|" + template.options().getModel()
+                + "|" + template.options().getTemperature() + "|" + template.options().getMaxTokens();
+    }
+
     @Override
     public String generateImageAndReturnUrl(String query) {
         if (query == null || query.isEmpty()) {
             throw new IllegalArgumentException("Query cannot be null or empty");
         }
-        System.out.println("query = " + query);
-        String systemInstructionTemplate = String.format("""
-                    Create a highly detailed, professional image following these specifications:
-                    Subject: %s
-                    Technical Guidelines:
-                    - Avoid text or writing in the image
-                    - Ensure family-friendly content
-                    - Focus on clear, sharp details
-                    - Use balanced color composition
-                """, query);
-
-        ImageOptions imageOptions = OpenAiImageOptions.builder()
-                .model("dall-e-3") // Using DALL-E 3 for better quality
-                .quality("hd")      // Set image quality to high definition
-                .N(1)               // Generate 1 image
-                .responseFormat("url")  // Get URL
-                .build();
+        String strURL = generateImage(query, "url").getOutput().getUrl();
 
-        ImagePrompt imagePrompt = new ImagePrompt(systemInstructionTemplate, imageOptions);
-        ImageResponse imageResponse = openAiImageModel.call(imagePrompt);
-        List<ImageGeneration> images = imageResponse.getResults();
-        ImageGeneration firstImage = images.get(0);
+        // the copy is downloaded in the background: the URL is returned as soon as the model has responded
+        if (archiveImages) {
+            mediaArchiver.archiveFromUrl(strURL, "png");
+        }
+        return strURL;
 
-        String strURL = firstImage.getOutput().getUrl();
+    }
 
-        // download and save the image to the local file system
-        try (InputStream in = URI.create(strURL).toURL().openStream()) {
-            Files.copy(in, Paths.get("generated_image_" + System.currentTimeMillis() + ".png"), StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    @Override
+    public byte[] generateImage(String query) {
+        if (query == null || query.isEmpty()) {
+            throw new IllegalArgumentException("Query cannot be null or empty");
         }
-        return strURL;
+        // b64_json: the image comes back inside the model response, no second HTTP request to fetch it
+        byte[] image = Base64.getDecoder().decode(generateImage(query, "b64_json").getOutput().getB64Json());
+        if (archiveImages) {
+            mediaArchiver.archiveContentAddressed(image, "png");
+        }
+        return image;
+    }
 
+    private ImageGeneration generateImage(String query, String responseFormat) {
+        // instructions, model (dall-e-3), quality and the options per response format come from the template
+        ImagePromptTemplate template = promptRegistry.image(PromptRegistry.IMAGE);
+        ImagePrompt imagePrompt = template.prompt(query, responseFormat);
+        ImageResponse imageResponse = upstreamCallGuard.call("image", template.model(),
+                () -> modelCallMetrics.record("image", template.model(), () -> openAiImageModel.call(imagePrompt)));
+        List<ImageGeneration> images = imageResponse.getResults();
+        return images.get(0);
     }
 
     public String speechToText(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("File cannot be null or empty");
+        }
         try {
-            Path tempFile = null;
-            try {
-                tempFile = Files.createTempFile("audio_", "_upload");
-                // createTempFile() method creates a temporary file in the default temporary-file directory.
-                file.transferTo(tempFile.toFile());
-                // transferTo() method copies the contents of the MultipartFile to the specified file.
-
-                // Configure audio transcription options
-                OpenAiAudioTranscriptionOptions options = OpenAiAudioTranscriptionOptions
-                        .builder()
-                        .language("en")
-                        .responseFormat(OpenAiAudioApi.TranscriptResponseFormat.VTT)
-                        .build();
-
-                AudioTranscriptionPrompt transcriptionPrompt = new AudioTranscriptionPrompt(
-                        new FileSystemResource(tempFile.toFile()),
-                        options);
-
-                return openaiAudioTranscriptionModel.call(transcriptionPrompt).getResult().getOutput();
-            } finally {
-                // Clean up the temporary file
-                if (tempFile != null) {
-                    Files.deleteIfExists(tempFile);
-                }
+            // hashing reads the upload once more, which is far cheaper than transcribing it again
+            String key;
+            try (InputStream content = file.getInputStream()) {
+                key = MediaResultCache.key("transcription", speechTranscriptionPipeline.optionsKey(), content);
             }
-
-        } catch (IOException e) {
+            return mediaResultCache.getOrComputeText(key, () -> {
+                try {
+                    // the upload is read as a stream (no temp-file copy); long recordings are transcribed in parallel segments
+                    return speechTranscriptionPipeline.transcribe(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
             throw new RuntimeException("Error processing audio file: " + e.getMessage(), e);
         }
     }
 
     public byte[] textToSpeech(String text) {
-        try {
-            if (text == null || text.trim().isEmpty()) {
-                throw new IllegalArgumentException("Text cannot be null or empty");
+        if (text == null || text.trim().isEmpty()) {
+            throw new IllegalArgumentException("Text cannot be null or empty");
+        }
+        return mediaResultCache.getOrCompute(speechKey(text), () -> synthesize(text));
+    }
+
+    @Override
+    public Resource textToSpeechAudio(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            throw new IllegalArgumentException("Text cannot be null or empty");
+        }
+        // audio on disk is sent from the file, without reading it onto the heap
+        Path cached = mediaResultCache.file(speechKey(text));
+        if (cached != null) {
+            return new FileSystemResource(cached);
+        }
+        return new ByteArrayResource(textToSpeech(text));
+    }
+
+    private String speechKey(String text) {
+        String options = speechOptions.getModel() + "|" + speechOptions.getVoice() + "|"
+                + speechOptions.getResponseFormat() + "|" + speechOptions.getSpeed();
+        return MediaResultCache.key("speech", options, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private byte[] synthesize(String text) {
+        SpeechPrompt speechPrompt = new SpeechPrompt(text, speechOptions);
+        byte[] audioData = upstreamCallGuard.call("speech", speechOptions.getModel(),
+                () -> modelCallMetrics.record("speech", speechOptions.getModel(), () -> openaiAudioSpeechModel.call(speechPrompt)))
+                .getResult().getOutput();
+
+        // Saving a copy is optional and happens in the background, not on the request path
+        if (archiveSpeech) {
+            mediaArchiver.archive("generated_speech_" + System.currentTimeMillis() + ".mp3", audioData);
+        }
+        return audioData;
+    }
+
+    @Override
+    public Flux<byte[]> textToSpeechStream(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            throw new IllegalArgumentException("Text cannot be null or empty");
+        }
+        return Flux.defer(() -> {
+            MediaArchiver.Archive archive = archiveSpeech
+                    ? mediaArchiver.open("generated_speech_" + System.currentTimeMillis() + ".mp3")
+                    : null;
+            // Sentence chunks are synthesized up to speechPipelineDepth at a time, but emitted strictly in order,
+            // so the next chunk is usually ready when the previous one finished playing.
+            Flux<byte[]> audio = Flux.fromIterable(splitIntoSpeechChunks(text, MAX_SPEECH_CHUNK_CHARS))
+                    .flatMapSequential(chunk -> openaiAudioSpeechModel.stream(new SpeechPrompt(chunk, speechOptions))
+                                    .filter(speechResponse -> speechResponse.getResult() != null)
+                                    .map(speechResponse -> speechResponse.getResult().getOutput()),
+                            speechPipelineDepth);
+            // Admitted once for the whole answer, on subscription, before the first byte: a chunk rejected later
+            // would cut the audio off after the response has started.
+            audio = upstreamCallGuard.stream("speech.stream", speechOptions.getModel(),
+                    modelCallMetrics.stream("speech.stream", speechOptions.getModel(), audio));
+            if (archive == null) {
+                return audio;
             }
-            byte[] audioData = openaiAudioSpeechModel.call(text);
-            // Configure speech options
-            OpenAiAudioApi.SpeechRequest request = OpenAiAudioApi.SpeechRequest.builder()
-                    .input(text)
-                    .model("tts-1") // or "tts-1-hd" for higher quality
-                    .voice("alloy") // Available voices: alloy, echo, fable, onyx, nova, shimmer
-                    .responseFormat(OpenAiAudioApi.SpeechRequest.AudioResponseFormat.MP3) // Response format can be MP3 or WAV
-                    .speed(1.0f) // Speech speed (0.25 to 4.0)
-                    .build();// Get the audio data
-
-            // Save to local file
-            String fileName = "generated_speech_" + System.currentTimeMillis() + ".mp3";
-            Path filePath = Paths.get(fileName);
-            Files.write(filePath, audioData);
-            System.out.println("Audio saved to: " + filePath.toAbsolutePath());
-
-            return audioData;
-        } catch (IOException e) {
-            throw new RuntimeException("Error generating speech: " + e.getMessage(), e);
+            return audio
+                    .doOnNext(archive::append)
+                    .doOnComplete(archive::complete)
+                    .doOnError(error -> archive.abort())
+                    .doOnCancel(archive::abort);
+        });
+    }
+
+    // Splits text on sentence boundaries into chunks of at most maxChars characters.
+    // The first sentence is sent on its own so the first audio bytes arrive as early as possible.
+    static List<String> splitIntoSpeechChunks(String text, int maxChars) {
+        BreakIterator sentences = BreakIterator.getSentenceInstance(Locale.ENGLISH);
+        sentences.setText(text);
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int start = sentences.first();
+        for (int end = sentences.next(); end != BreakIterator.DONE; start = end, end = sentences.next()) {
+            String sentence = text.substring(start, end);
+            if (!current.isEmpty() && (chunks.isEmpty() || current.length() + sentence.length() > maxChars)) {
+                chunks.add(current.toString().trim());
+                current.setLength(0);
+            }
+            // a single sentence longer than the limit is hard-split
+            while (sentence.length() > maxChars) {
+                chunks.add(sentence.substring(0, maxChars).trim());
+                sentence = sentence.substring(maxChars);
+            }
+            current.append(sentence);
         }
+        if (!current.toString().isBlank()) {
+            chunks.add(current.toString().trim());
+        }
+        chunks.removeIf(String::isEmpty);
+        return chunks;
     }
 
     @Override
@@ -259,24 +395,43 @@ public class OpenAIServiceImpl implements OpenAIService {
                 .text(query)
                 .build();
         chatMemory.add(conversationId, userMessage);
-        Prompt prompt = Prompt.builder()
-                .messages(chatMemory.get(conversationId))  // fetch the previous 10 messages from the chat memory
-                .chatOptions(OpenAiChatOptions.builder()
-                        .model("gpt-4.1-mini")
-                        .temperature(0.2)
-                        .maxTokens(500)
-                        .build())
-                .build();
-        ChatResponse chatResponse = openAiChatModel.call(prompt);
+        // the newest messages that fit in the token budget (plus the summary), after the template's system message
+        Prompt prompt = promptRegistry.chat(PromptRegistry.CHAT_MEMORY).prompt(chatMemory.get(conversationId));
+        ChatResponse chatResponse = upstreamCallGuard.call("chat.memory", prompt.getOptions().getModel(),
+                () -> modelCallMetrics.record("chat.memory", prompt.getOptions().getModel(), () -> openAiChatModel.call(prompt)));
         chatMemory.add(conversationId, chatResponse.getResult().getOutput());
 
-        System.out.println("Current memory size: " + chatMemory.get(conversationId).size());
-        System.out.println("Message in Memory: ");
-        chatMemory.get(conversationId).forEach(msg -> System.out.println(msg.getText()));
-
         return chatResponse.getResult().getOutput().getText();
     }
 
+    @Override
+    public Flux<String> chatMemoryStream(final String query, final String conversationId) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("Query cannot be null or empty");
+        }
+        if (conversationId == null || conversationId.trim().isEmpty()) {
+            throw new IllegalArgumentException("Conversation ID cannot be null or empty");
+        }
+        return Flux.defer(() -> {
+            UserMessage userMessage = UserMessage.builder()
+                    .text(query)
+                    .build();
+            // the user message is not added to the memory yet: if the client cancels, nothing is stored
+            List<Message> messages = new ArrayList<>(chatMemory.get(conversationId));
+            messages.add(userMessage);
+            Prompt prompt = promptRegistry.chat(PromptRegistry.CHAT_MEMORY).prompt(messages);
+            StringBuilder answer = new StringBuilder();
+            String model = prompt.getOptions().getModel();
+            return upstreamCallGuard.stream("chat.memory.stream", model, modelCallMetrics.stream("chat.memory.stream", model, openAiChatModel.stream(prompt)))
+                    .filter(chatResponse -> chatResponse.getResult() != null && chatResponse.getResult().getOutput().getText() != null)
+                    .map(chatResponse -> chatResponse.getResult().getOutput().getText())
+                    .doOnNext(answer::append)
+                    // written once, on completion only (not on error or cancel)
+                    .doOnComplete(() -> chatMemory.add(conversationId,
+                            List.of(userMessage, new AssistantMessage(answer.toString()))));
+        });
+    }
+
     // Utility method to reset a chat
     public void resetChatMemory(String conversationId) {
         if (conversationId == null || conversationId.trim().isEmpty()) {
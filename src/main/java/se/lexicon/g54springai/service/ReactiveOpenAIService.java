@@ -0,0 +1,27 @@
+package se.lexicon.g54springai.service;
+
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Non-blocking counterpart of OpenAIService: every operation returns a Mono/Flux instead of blocking the caller.
+public interface ReactiveOpenAIService {
+
+    Mono<String> processSimpleChatQuery(String query);
+
+    Flux<String> processSimpleChatQueryWithStream(String query);
+
+    Mono<String> processSimpleChatQueryWithContext(String query);
+
+    Mono<String> processImage(MultipartFile file);
+
+    Mono<String> generateImageAndReturnUrl(String query);
+
+    Mono<String> speechToText(MultipartFile file);
+
+    Mono<byte[]> textToSpeech(String text);
+
+    Mono<String> chatMemory(String query, String conversationId);
+
+    Mono<Void> resetChatMemory(String conversationId);
+}
@@ -0,0 +1,152 @@
+package se.lexicon.g54springai.service;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import se.lexicon.g54springai.prompt.ChatPromptTemplate;
+import se.lexicon.g54springai.prompt.PromptRegistry;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// Chat operations use the model's streaming API (non-blocking HTTP on the event loop) and aggregate the tokens,
+// so thousands of slow completions can be in flight without holding a thread each.
+// Operations that only have a blocking API (multipart uploads, image generation, audio) are delegated to
+// OpenAIService on the bounded modelIoScheduler.
+@Service
+public class ReactiveOpenAIServiceImpl implements ReactiveOpenAIService {
+
+    private final OpenAIService openAIService;
+    private final ChatModel chatModel;
+    private final ChatResponseCache responseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final Scheduler modelIoScheduler;
+    private final ModelCallMetrics modelCallMetrics;
+    private final PromptRegistry promptRegistry;
+    private final UpstreamCallGuard upstreamCallGuard;
+
+    private final String defaultModel;
+    private final Double defaultTemperature;
+
+    @Autowired
+    public ReactiveOpenAIServiceImpl(OpenAIService openAIService, ChatModel chatModel,
+                                     ChatResponseCache responseCache, RequestCoalescer requestCoalescer,
+                                     Scheduler modelIoScheduler, ModelCallMetrics modelCallMetrics,
+                                     PromptRegistry promptRegistry, UpstreamCallGuard upstreamCallGuard) {
+        this.openAIService = openAIService;
+        this.chatModel = chatModel;
+        this.responseCache = responseCache;
+        this.requestCoalescer = requestCoalescer;
+        this.modelIoScheduler = modelIoScheduler;
+        this.modelCallMetrics = modelCallMetrics;
+        this.promptRegistry = promptRegistry;
+        this.upstreamCallGuard = upstreamCallGuard;
+        ChatOptions defaultOptions = chatModel.getDefaultOptions();
+        this.defaultModel = defaultOptions.getModel();
+        this.defaultTemperature = defaultOptions.getTemperature();
+    }
+
+    @Override
+    public Mono<String> processSimpleChatQuery(String query) {
+        if (query == null || query.isEmpty()) {
+            return Mono.error(new IllegalArgumentException("Query cannot be null or empty"));
+        }
+        ChatRequestKey key = ChatRequestKey.of(query, null, defaultModel, defaultTemperature);
+        return cachedOrStreamed(key, () -> upstreamCallGuard.stream("chat.stream", defaultModel,
+                modelCallMetrics.stream("chat.stream", defaultModel, chatModel.stream(query))));
+    }
+
+    @Override
+    public Flux<String> processSimpleChatQueryWithStream(String query) {
+        return Flux.defer(() -> openAIService.processSimpleChatQueryWithStream(query));
+    }
+
+    @Override
+    public Mono<String> processSimpleChatQueryWithContext(String query) {
+        if (query == null || query.isEmpty()) {
+            return Mono.error(new IllegalArgumentException("Query cannot be null or empty"));
+        }
+        ChatPromptTemplate template = promptRegistry.chat(PromptRegistry.LEXBOT);
+        Prompt prompt = template.prompt(UserMessage.builder().text(query).build());
+        ChatOptions chatOptions = template.options();
+        ChatRequestKey key = ChatRequestKey.of(query, template.systemText(), chatOptions.getModel(), chatOptions.getTemperature());
+        return cachedOrStreamed(key, () -> upstreamCallGuard.stream("chat.lexbot.stream", chatOptions.getModel(),
+                        modelCallMetrics.stream("chat.lexbot.stream", chatOptions.getModel(), chatModel.stream(prompt)))
+                .map(ReactiveOpenAIServiceImpl::textOf));
+    }
+
+    @Override
+    public Mono<String> processImage(MultipartFile file) {
+        // reading the upload and the vision call are blocking
+        return Mono.fromCallable(() -> openAIService.processImage(file))
+                .subscribeOn(modelIoScheduler);
+    }
+
+    @Override
+    public Mono<String> generateImageAndReturnUrl(String query) {
+        return Mono.fromCallable(() -> openAIService.generateImageAndReturnUrl(query))
+                .subscribeOn(modelIoScheduler);
+    }
+
+    @Override
+    public Mono<String> speechToText(MultipartFile file) {
+        return Mono.fromCallable(() -> openAIService.speechToText(file))
+                .subscribeOn(modelIoScheduler);
+    }
+
+    @Override
+    public Mono<byte[]> textToSpeech(String text) {
+        return Mono.fromCallable(() -> openAIService.textToSpeech(text))
+                .subscribeOn(modelIoScheduler);
+    }
+
+    @Override
+    public Mono<String> chatMemory(String query, String conversationId) {
+        if (query == null || query.trim().isEmpty()) {
+            return Mono.error(new IllegalArgumentException("Query cannot be null or empty"));
+        }
+        if (conversationId == null || conversationId.trim().isEmpty()) {
+            return Mono.error(new IllegalArgumentException("Conversation ID cannot be null or empty"));
+        }
+        return openAIService.chatMemoryStream(query, conversationId)
+                .collect(Collectors.joining());
+    }
+
+    @Override
+    public Mono<Void> resetChatMemory(String conversationId) {
+        return Mono.fromRunnable(() -> openAIService.resetChatMemory(conversationId));
+    }
+
+    // Answers from the response cache, otherwise aggregates the streamed tokens and caches the full answer.
+    private Mono<String> cachedOrStreamed(ChatRequestKey key, Supplier<Flux<String>> upstream) {
+        return Mono.defer(() -> {
+            ChatResponse cached = responseCache.lookup(key);
+            if (cached != null) {
+                return Mono.just(textOf(cached));
+            }
+            return requestCoalescer.stream(key, upstream)
+                    .collect(Collectors.joining())
+                    .doOnNext(answer -> responseCache.store(key,
+                            new ChatResponse(List.of(new Generation(new AssistantMessage(answer))))));
+        });
+    }
+
+    private static String textOf(ChatResponse chatResponse) {
+        if (chatResponse == null || chatResponse.getResult() == null) {
+            return "";
+        }
+        String text = chatResponse.getResult().getOutput().getText();
+        return text != null ? text : "";
+    }
+}
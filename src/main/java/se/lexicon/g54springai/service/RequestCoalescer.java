@@ -0,0 +1,107 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Single-flight coalescing of identical in-flight model requests.
+// The first caller for a key (the leader) performs the upstream call; callers arriving with the same key
+// while it is still running wait for and share the leader's result (or error) instead of calling upstream again.
+// Metrics: chat.coalescing.requests{role=leader|collapsed}, chat.coalescing.in-flight.
+@Component
+public class RequestCoalescer {
+
+    private final Map<Object, CompletableFuture<Object>> inFlightCalls = new ConcurrentHashMap<>();
+    private final Map<Object, Flux<?>> inFlightStreams = new ConcurrentHashMap<>();
+
+    private final Counter leaders;
+    private final Counter collapsed;
+
+    @Autowired
+    public RequestCoalescer(MeterRegistry meterRegistry) {
+        this.leaders = meterRegistry.counter("chat.coalescing.requests", "role", "leader");
+        this.collapsed = meterRegistry.counter("chat.coalescing.requests", "role", "collapsed");
+        Map<Object, Flux<?>> streams = inFlightStreams;
+        meterRegistry.gauge("chat.coalescing.in-flight", inFlightCalls, calls -> calls.size() + streams.size());
+    }
+
+    // Blocking variant: runs the call once per key and hands its result to every concurrent caller.
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object key, Supplier<T> call) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlightCalls.putIfAbsent(key, mine);
+        if (existing != null) {
+            collapsed.increment();
+            return (T) await(existing);
+        }
+
+        leaders.increment();
+        try {
+            T result = call.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            // followers that arrive after this point start a new flight
+            inFlightCalls.remove(key, mine);
+        }
+    }
+
+    // Streaming variant: concurrent subscribers for the same key share one upstream Flux.
+    // Tokens are replayed to late joiners so every subscriber sees the complete answer.
+    // The upstream subscription is cancelled once the last subscriber cancels.
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> stream(Object key, Supplier<Flux<T>> upstream) {
+        return Flux.defer(() -> {
+            AtomicReference<Flux<T>> created = new AtomicReference<>();
+            Flux<T> shared = (Flux<T>) inFlightStreams.computeIfAbsent(key, k -> {
+                AtomicReference<Flux<T>> self = new AtomicReference<>();
+                Flux<T> flux = Flux.defer(upstream)
+                        .doFinally(signal -> inFlightStreams.remove(k, self.get()))
+                        .replay()
+                        .refCount();
+                self.set(flux);
+                created.set(flux);
+                return flux;
+            });
+            if (created.get() != null) {
+                leaders.increment();
+            } else {
+                collapsed.increment();
+            }
+            return shared;
+        });
+    }
+
+    // Waits for the leader's outcome and rethrows its error unchanged on the follower's thread.
+    private static Object await(CompletableFuture<Object> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // the follower gave up waiting; the leader keeps running for everyone else
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a coalesced request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package se.lexicon.g54springai.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.audio.transcription.AudioTranscriptionPrompt;
+import org.springframework.ai.openai.OpenAiAudioTranscriptionModel;
+import org.springframework.ai.openai.OpenAiAudioTranscriptionOptions;
+import org.springframework.ai.openai.api.OpenAiAudioApi;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+// Transcribes uploads straight from the multipart stream (no temp-file copy).
+// Long PCM recordings (WAV/AIFF/AU) are cut into overlapping segments while they are read; the segments are
+// transcribed concurrently (at most `parallelism` per request, which also bounds the memory held) and their
+// VTT output is stitched back together with corrected timestamps.
+// Formats javax.sound cannot split (mp3, m4a, ...) and short recordings are sent in one call.
+@Component
+public class SpeechTranscriptionPipeline {
+
+    private final OpenAiAudioTranscriptionModel transcriptionModel;
+    private final UpstreamCallGuard upstreamCallGuard;
+    private final ModelCallMetrics modelCallMetrics;
+    private final double segmentSeconds;
+    private final double overlapSeconds;
+    private final int parallelism;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Configure audio transcription options
+    private final OpenAiAudioTranscriptionOptions options = OpenAiAudioTranscriptionOptions
+            .builder()
+            .model("whisper-1")
+            .language("en")
+            .responseFormat(OpenAiAudioApi.TranscriptResponseFormat.VTT)
+            .build();
+
+    @Autowired
+    public SpeechTranscriptionPipeline(OpenAiAudioTranscriptionModel transcriptionModel,
+                                       UpstreamCallGuard upstreamCallGuard,
+                                       ModelCallMetrics modelCallMetrics,
+                                       @Value("${app.transcription.segment-seconds:120}") double segmentSeconds,
+                                       @Value("${app.transcription.overlap-seconds:2}") double overlapSeconds,
+                                       @Value("${app.transcription.parallelism:4}") int parallelism) {
+        if (overlapSeconds < 0 || overlapSeconds >= segmentSeconds) {
+            throw new IllegalArgumentException("Overlap must be between 0 and the segment length");
+        }
+        this.transcriptionModel = transcriptionModel;
+        this.upstreamCallGuard = upstreamCallGuard;
+        this.modelCallMetrics = modelCallMetrics;
+        this.segmentSeconds = segmentSeconds;
+        this.overlapSeconds = overlapSeconds;
+        this.parallelism = parallelism;
+    }
+
+    // Everything that changes the transcript of the same audio, for cache keys
+    public String optionsKey() {
+        return options.getModel() + "|" + options.getLanguage() + "|" + options.getResponseFormat() + "|"
+                + options.getTemperature() + "|" + segmentSeconds + "|" + overlapSeconds;
+    }
+
+    public String transcribe(MultipartFile file) throws IOException {
+        InputStream raw = file.getInputStream();
+        AudioInputStream audio;
+        try {
+            audio = AudioSystem.getAudioInputStream(new BufferedInputStream(raw));
+        } catch (UnsupportedAudioFileException e) {
+            // mp3, m4a, webm, ...: most uploads end up here, the probed stream must not stay open
+            raw.close();
+            return transcribe(file.getResource());
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+
+        try (audio) {
+            AudioFormat format = audio.getFormat();
+            long segmentFrames = (long) (segmentSeconds * format.getFrameRate());
+            long frameLength = audio.getFrameLength();
+            if (frameLength != AudioSystem.NOT_SPECIFIED && frameLength <= segmentFrames) {
+                return transcribe(file.getResource());
+            }
+            return transcribeInSegments(audio, format, segmentFrames);
+        }
+    }
+
+    private String transcribeInSegments(AudioInputStream audio, AudioFormat format, long segmentFrames) throws IOException {
+        int frameSize = format.getFrameSize();
+        long overlapFrames = (long) (overlapSeconds * format.getFrameRate());
+        long stepFrames = segmentFrames - overlapFrames;
+        int segmentBytes = Math.toIntExact(segmentFrames * frameSize);
+        int overlapBytes = Math.toIntExact(overlapFrames * frameSize);
+
+        Semaphore inFlight = new Semaphore(parallelism);
+        List<Future<VttStitcher.Segment>> results = new ArrayList<>();
+        byte[] carry = new byte[0]; // the tail of the previous segment, repeated at the start of the next one
+        boolean stitched = false;
+        try {
+            for (int index = 0; ; index++) {
+                byte[] fresh = readFully(audio, segmentBytes - carry.length);
+                if (fresh.length == 0 && index > 0) {
+                    break;
+                }
+                byte[] pcm = new byte[carry.length + fresh.length];
+                System.arraycopy(carry, 0, pcm, 0, carry.length);
+                System.arraycopy(fresh, 0, pcm, carry.length, fresh.length);
+
+                double startSeconds = index * stepFrames / format.getFrameRate();
+                int segmentIndex = index;
+                // waits here while `parallelism` segments are being transcribed, so reading never runs far ahead
+                inFlight.acquire();
+                results.add(executor.submit(() -> {
+                    try {
+                        String vtt = transcribe(toWav(pcm, format, segmentIndex));
+                        return new VttStitcher.Segment(segmentIndex, startSeconds, vtt);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+
+                if (pcm.length < segmentBytes) {
+                    break; // end of the recording
+                }
+                carry = new byte[Math.min(overlapBytes, pcm.length)];
+                System.arraycopy(pcm, pcm.length - carry.length, carry, 0, carry.length);
+            }
+
+            List<VttStitcher.Segment> segments = new ArrayList<>();
+            for (Future<VttStitcher.Segment> result : results) {
+                segments.add(result.get());
+            }
+            String transcript = VttStitcher.stitch(segments, overlapSeconds);
+            stitched = true;
+            return transcript;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while transcribing audio", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Error transcribing audio segment", e.getCause());
+        } finally {
+            if (!stitched) {
+                // whatever failed (reading the upload, a segment, an interrupt), no segment keeps the model busy
+                results.forEach(result -> result.cancel(true));
+            }
+        }
+    }
+
+    private String transcribe(Resource audio) {
+        AudioTranscriptionPrompt transcriptionPrompt = new AudioTranscriptionPrompt(audio, options);
+        return upstreamCallGuard.call("transcription", options.getModel(), () -> modelCallMetrics.record("transcription", options.getModel(),
+                () -> transcriptionModel.call(transcriptionPrompt))).getResult().getOutput();
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        return in.readNBytes(Math.max(length, 0));
+    }
+
+    private static Resource toWav(byte[] pcm, AudioFormat format, int index) throws IOException {
+        ByteArrayOutputStream wav = new ByteArrayOutputStream(pcm.length + 64);
+        try (AudioInputStream segment = new AudioInputStream(new ByteArrayInputStream(pcm), format,
+                pcm.length / format.getFrameSize())) {
+            AudioSystem.write(segment, AudioFileFormat.Type.WAVE, wav);
+        }
+        // the upload needs a file name so the API can tell the format
+        return new ByteArrayResource(wav.toByteArray()) {
+            @Override
+            public String getFilename() {
+                return "segment_" + index + ".wav";
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
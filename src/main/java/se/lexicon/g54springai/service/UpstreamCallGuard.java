@@ -0,0 +1,222 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import se.lexicon.g54springai.exception.UpstreamOverloadedException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Admission control in front of the OpenAI models.
+// - Every operation (chat, speech, ...) on every model gets an AdaptiveConcurrencyLimit: its limit follows the
+//   observed latency and the upstream's 429/503 answers, so a burst is queued or rejected here instead of turning into
+//   upstream rate-limit errors. Operations are kept apart because their latencies differ by orders of magnitude
+//   (a short chat answer vs. a long speech); the upstream rate-limits per model, so a 429/503 backs off every
+//   operation of that model.
+// - A call waits for a slot until its deadline (acquireTimeout after it arrived); when the model's queue is full it
+//   is rejected at once. A stream subscribed on a non-blocking (event loop) thread cannot wait: it is admitted only
+//   when a slot is free.
+// - maxConcurrentCalls stays a hard ceiling over all models for the blocking calls: with virtual threads the request
+//   concurrency is no longer limited by the Tomcat pool.
+// Rejections and upstream rate limits surface as UpstreamOverloadedException (503 with Retry-After).
+// Metrics: upstream.admission.limit/in-flight/queued{operation,model}, upstream.admission.rejected{operation,model,reason}.
+@Component
+public class UpstreamCallGuard {
+
+    private static final String DEFAULT_MODEL = "default";
+
+    private final Semaphore permits;
+    private final long acquireTimeoutNanos;
+    private final AdaptiveConcurrencyLimit.Settings settings;
+    private final MeterRegistry meterRegistry;
+    private final Map<Key, AdaptiveConcurrencyLimit> limits = new ConcurrentHashMap<>();
+
+    private record Key(String operation, String model) {
+    }
+
+    @Autowired
+    public UpstreamCallGuard(@Value("${app.upstream.max-concurrent-calls:32}") int maxConcurrentCalls,
+                             @Value("${app.upstream.acquire-timeout:5s}") Duration acquireTimeout,
+                             @Value("${app.upstream.admission.initial-limit:8}") int initialLimit,
+                             @Value("${app.upstream.admission.min-limit:1}") int minLimit,
+                             @Value("${app.upstream.admission.max-limit:32}") int maxLimit,
+                             @Value("${app.upstream.admission.queue-size:64}") int queueSize,
+                             @Value("${app.upstream.admission.backoff-ratio:0.7}") double backoffRatio,
+                             @Value("${app.upstream.admission.latency-tolerance:3.0}") double latencyTolerance,
+                             MeterRegistry meterRegistry) {
+        this(maxConcurrentCalls, acquireTimeout,
+                new AdaptiveConcurrencyLimit.Settings(initialLimit, minLimit, maxLimit, queueSize, backoffRatio, latencyTolerance),
+                meterRegistry);
+    }
+
+    public UpstreamCallGuard(int maxConcurrentCalls, Duration acquireTimeout, AdaptiveConcurrencyLimit.Settings settings,
+                             MeterRegistry meterRegistry) {
+        if (maxConcurrentCalls <= 0) {
+            throw new IllegalArgumentException("Max concurrent calls must be positive");
+        }
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // operation = the ModelCallMetrics operation; model = the model the call goes to, null when it comes from the
+    // default options
+    public <T> T call(String operation, String model, Supplier<T> upstreamCall) {
+        long deadline = System.nanoTime() + acquireTimeoutNanos;
+        Key key = key(operation, model);
+        AdaptiveConcurrencyLimit limit = limitFor(key);
+        admit(limit, key, deadline);
+        long start;
+        try {
+            if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                limit.release(AdaptiveConcurrencyLimit.Outcome.DROPPED, 0);
+                throw rejected(key, "timeout");
+            }
+            start = System.nanoTime();
+        } catch (InterruptedException e) {
+            limit.release(AdaptiveConcurrencyLimit.Outcome.DROPPED, 0);
+            Thread.currentThread().interrupt();
+            throw new UpstreamOverloadedException("Interrupted while waiting for the model");
+        }
+        AdaptiveConcurrencyLimit.Outcome outcome = AdaptiveConcurrencyLimit.Outcome.FAILED;
+        try {
+            T result = upstreamCall.get();
+            outcome = AdaptiveConcurrencyLimit.Outcome.SUCCESS;
+            return result;
+        } catch (RuntimeException e) {
+            if (isOverloaded(e)) {
+                outcome = AdaptiveConcurrencyLimit.Outcome.OVERLOADED;
+                backOffOtherOperations(key);
+                throw new UpstreamOverloadedException("The model is overloaded, please retry later", e);
+            }
+            throw e;
+        } finally {
+            permits.release();
+            limit.release(outcome, System.nanoTime() - start);
+        }
+    }
+
+    // Admits a stream on subscription; the slot is held until the stream terminates or is cancelled.
+    // The latency sample is the time to the first element, which does not depend on the length of the answer.
+    public <T> Flux<T> stream(String operation, String model, Flux<T> upstream) {
+        Key key = key(operation, model);
+        return Flux.defer(() -> {
+            AdaptiveConcurrencyLimit limit = limitFor(key);
+            if (Schedulers.isInNonBlockingThread()) {
+                if (!limit.tryAcquire()) {
+                    return Flux.error(rejected(key, "queue-full"));
+                }
+            } else {
+                admit(limit, key, System.nanoTime() + acquireTimeoutNanos);
+            }
+            long start = System.nanoTime();
+            AtomicLong firstElementNanos = new AtomicLong();
+            AtomicReference<AdaptiveConcurrencyLimit.Outcome> outcome =
+                    new AtomicReference<>(AdaptiveConcurrencyLimit.Outcome.DROPPED);
+            return upstream
+                    .doOnNext(element -> firstElementNanos.compareAndSet(0, System.nanoTime() - start))
+                    .doOnComplete(() -> outcome.set(AdaptiveConcurrencyLimit.Outcome.SUCCESS))
+                    .doOnError(error -> {
+                        if (isOverloaded(error)) {
+                            outcome.set(AdaptiveConcurrencyLimit.Outcome.OVERLOADED);
+                            backOffOtherOperations(key);
+                        } else {
+                            outcome.set(AdaptiveConcurrencyLimit.Outcome.FAILED);
+                        }
+                    })
+                    .onErrorMap(UpstreamCallGuard::isOverloaded,
+                            error -> new UpstreamOverloadedException("The model is overloaded, please retry later", error))
+                    .doFinally(signal -> limit.release(outcome.get(),
+                            firstElementNanos.get() != 0 ? firstElementNanos.get() : System.nanoTime() - start));
+        });
+    }
+
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    // current adaptive limit of an operation on a model (the initial limit before its first call)
+    public double limit(String operation, String model) {
+        return limitFor(key(operation, model)).limit();
+    }
+
+    private void admit(AdaptiveConcurrencyLimit limit, Key key, long deadline) {
+        AdaptiveConcurrencyLimit.Admission admission;
+        try {
+            admission = limit.acquire(deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UpstreamOverloadedException("Interrupted while waiting for the model");
+        }
+        switch (admission) {
+            case ADMITTED -> {
+            }
+            case QUEUE_FULL -> throw rejected(key, "queue-full");
+            case TIMED_OUT -> throw rejected(key, "timeout");
+        }
+    }
+
+    private UpstreamOverloadedException rejected(Key key, String reason) {
+        meterRegistry.counter("upstream.admission.rejected",
+                "operation", key.operation(), "model", key.model(), "reason", reason).increment();
+        return new UpstreamOverloadedException("Too many concurrent requests to the model, please retry later");
+    }
+
+    private static Key key(String operation, String model) {
+        return new Key(operation, model != null ? model : DEFAULT_MODEL);
+    }
+
+    private AdaptiveConcurrencyLimit limitFor(Key key) {
+        return limits.computeIfAbsent(key, k -> {
+            AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(settings);
+            Tags tags = Tags.of("operation", k.operation(), "model", k.model());
+            Gauge.builder("upstream.admission.limit", limit, AdaptiveConcurrencyLimit::limit).tags(tags).register(meterRegistry);
+            Gauge.builder("upstream.admission.in-flight", limit, AdaptiveConcurrencyLimit::inFlight).tags(tags).register(meterRegistry);
+            Gauge.builder("upstream.admission.queued", limit, AdaptiveConcurrencyLimit::waiting).tags(tags).register(meterRegistry);
+            return limit;
+        });
+    }
+
+    // the call's own limit backs off when it is released
+    private void backOffOtherOperations(Key key) {
+        limits.forEach((other, limit) -> {
+            if (other.model().equals(key.model()) && !other.equals(key)) {
+                limit.backOff();
+            }
+        });
+    }
+
+    // 429 (rate limited) or 503 (overloaded) from the upstream, as a client exception or as Spring AI's
+    // "<status> - <body>" error message
+    static boolean isOverloaded(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UpstreamOverloadedException) {
+                return false; // our own rejection, not an upstream answer
+            }
+            int status = cause instanceof RestClientResponseException restError ? restError.getStatusCode().value()
+                    : cause instanceof WebClientResponseException webError ? webError.getStatusCode().value()
+                    : 0;
+            String message = cause.getMessage();
+            if (status == 429 || status == 503
+                    || (message != null && (message.startsWith("429 ") || message.startsWith("503 ")))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
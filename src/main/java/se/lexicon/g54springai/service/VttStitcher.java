@@ -0,0 +1,87 @@
+package se.lexicon.g54springai.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Joins the WebVTT transcripts of overlapping audio segments into one transcript.
+// Cue timestamps of each segment are shifted by the segment's start time. Where two segments overlap, the
+// cues are split at the middle of the overlap so each spoken passage is kept exactly once.
+public final class VttStitcher {
+
+    private static final Pattern TIMING = Pattern.compile(
+            "((?:\\d+:)?\\d{1,2}:\\d{2}\\.\\d{3})\\s+-->\\s+((?:\\d+:)?\\d{1,2}:\\d{2}\\.\\d{3})(.*)");
+
+    private VttStitcher() {
+    }
+
+    public record Segment(int index, double startSeconds, String vtt) {
+    }
+
+    private record Cue(double start, double end, String settings, String text) {
+    }
+
+    // segments must be ordered by index; overlapSeconds is the overlap between neighbouring segments
+    public static String stitch(List<Segment> segments, double overlapSeconds) {
+        StringBuilder out = new StringBuilder("WEBVTT\n");
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            double lowerCut = i == 0 ? Double.NEGATIVE_INFINITY : segment.startSeconds() + overlapSeconds / 2;
+            double upperCut = i == segments.size() - 1
+                    ? Double.POSITIVE_INFINITY
+                    : segments.get(i + 1).startSeconds() + overlapSeconds / 2;
+            for (Cue cue : parse(segment.vtt())) {
+                double start = cue.start() + segment.startSeconds();
+                if (start < lowerCut || start >= upperCut) {
+                    continue;
+                }
+                double end = cue.end() + segment.startSeconds();
+                out.append('\n')
+                        .append(format(start)).append(" --> ").append(format(end)).append(cue.settings()).append('\n')
+                        .append(cue.text()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private static List<Cue> parse(String vtt) {
+        List<Cue> cues = new ArrayList<>();
+        if (vtt == null) {
+            return cues;
+        }
+        String[] lines = vtt.replace("\r\n", "\n").split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            Matcher matcher = TIMING.matcher(lines[i].trim());
+            if (!matcher.matches()) {
+                continue;
+            }
+            StringBuilder text = new StringBuilder();
+            int j = i + 1;
+            for (; j < lines.length && !lines[j].isBlank(); j++) {
+                if (!text.isEmpty()) {
+                    text.append('\n');
+                }
+                text.append(lines[j]);
+            }
+            cues.add(new Cue(parseTime(matcher.group(1)), parseTime(matcher.group(2)), matcher.group(3), text.toString()));
+            i = j;
+        }
+        return cues;
+    }
+
+    private static double parseTime(String time) {
+        String[] parts = time.split(":");
+        double seconds = Double.parseDouble(parts[parts.length - 1]);
+        int minutes = Integer.parseInt(parts[parts.length - 2]);
+        int hours = parts.length == 3 ? Integer.parseInt(parts[0]) : 0;
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+
+    private static String format(double seconds) {
+        long millis = Math.round(seconds * 1000);
+        return String.format(Locale.ROOT, "%02d:%02d:%02d.%03d",
+                millis / 3_600_000, (millis / 60_000) % 60, (millis / 1000) % 60, millis % 1000);
+    }
+}
@@ -0,0 +1,270 @@
+package se.lexicon.g54springai.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// In-memory NameStore with an n-gram index for case-insensitive substring search.
+// - Names get ascending ids; every 1-, 2- and 3-gram of the lower-cased name points to the ids containing it.
+// - A search intersects the posting lists of the query's n-grams (smallest first) and verifies the few
+//   candidates, instead of lower-casing and scanning every name.
+// - Writers are serialized by a lock; readers never lock. Names and posting lists are append-only arrays
+//   whose size is published through a volatile write after the element, so a reader sees a consistent prefix.
+public class IndexedNameStore implements NameStore {
+
+    private static final int MAX_GRAM = 3;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AppendOnlyList<String> names = new AppendOnlyList<>(new String[16]);
+    private final AppendOnlyList<String> lowerCaseNames = new AppendOnlyList<>(new String[16]);
+    private final Map<String, IntList> index = new ConcurrentHashMap<>();
+    // names that are fully indexed; size() and findAll() never run ahead of findContaining()
+    private volatile int count;
+
+    public IndexedNameStore() {
+    }
+
+    public IndexedNameStore(Collection<String> initialNames) {
+        for (String name : initialNames) {
+            addName(name);
+        }
+    }
+
+    @Override
+    public void add(String name) {
+        addName(name);
+    }
+
+    private void addName(String name) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Name cannot be null or empty");
+        }
+        String lowerCase = name.toLowerCase(Locale.ROOT);
+        writeLock.lock();
+        try {
+            int id = names.size();
+            // the name must be readable before any posting list points to it
+            lowerCaseNames.add(lowerCase);
+            names.add(name);
+            for (String gram : grams(lowerCase)) {
+                index.computeIfAbsent(gram, key -> new IntList()).add(id);
+            }
+            count = id + 1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<String> findAll() {
+        return names.snapshot(count);
+    }
+
+    @Override
+    public List<String> findContaining(String fragment) {
+        if (fragment == null || fragment.isEmpty()) {
+            return findAll();
+        }
+        String query = fragment.toLowerCase(Locale.ROOT);
+        Postings[] postings = postingsOf(query);
+        if (postings == null) {
+            return List.of();
+        }
+        // smallest posting list first: it bounds the number of candidates
+        Arrays.sort(postings, Comparator.comparingInt(Postings::size));
+        List<String> found = new ArrayList<>();
+        candidates:
+        for (int c = 0; c < postings[0].size(); c++) {
+            int id = postings[0].ids()[c];
+            for (int i = 1; i < postings.length; i++) {
+                if (Arrays.binarySearch(postings[i].ids(), 0, postings[i].size(), id) < 0) {
+                    continue candidates;
+                }
+            }
+            // n-grams all match but not necessarily in a row (only for queries longer than MAX_GRAM)
+            if (query.length() <= MAX_GRAM || lowerCaseNames.get(id).contains(query)) {
+                found.add(names.get(id));
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public NamePage findPage(String fragment, int cursor, int limit, int maxChars) {
+        if (cursor < 0 || limit <= 0) {
+            throw new IllegalArgumentException("Invalid page: cursor " + cursor + ", limit " + limit);
+        }
+        int total = count;
+        PageBuilder page = new PageBuilder(limit, maxChars);
+        if (fragment == null || fragment.isEmpty()) {
+            for (int id = cursor; id < total && page.offer(id, names.get(id)); id++) {
+                // fills the page
+            }
+            return page.build(total);
+        }
+        String query = fragment.toLowerCase(Locale.ROOT);
+        Postings[] postings = postingsOf(query);
+        if (postings == null) {
+            return page.build(0);
+        }
+        Arrays.sort(postings, Comparator.comparingInt(Postings::size));
+        // the total needs every match; only the ones from the cursor on are read into the page
+        int matches = 0;
+        candidates:
+        for (int c = 0; c < postings[0].size(); c++) {
+            int id = postings[0].ids()[c];
+            if (id >= total) {
+                break; // added after this search started
+            }
+            for (int i = 1; i < postings.length; i++) {
+                if (Arrays.binarySearch(postings[i].ids(), 0, postings[i].size(), id) < 0) {
+                    continue candidates;
+                }
+            }
+            if (query.length() <= MAX_GRAM || lowerCaseNames.get(id).contains(query)) {
+                matches++;
+                if (id >= cursor) {
+                    page.offer(id, names.get(id));
+                }
+            }
+        }
+        return page.build(matches);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    // Posting lists of the query's n-grams, or null when one of them has no names.
+    private Postings[] postingsOf(String query) {
+        Set<String> grams = query.length() <= MAX_GRAM ? Set.of(query) : grams(query, MAX_GRAM);
+        Postings[] postings = new Postings[grams.size()];
+        int i = 0;
+        for (String gram : grams) {
+            IntList list = index.get(gram);
+            if (list == null) {
+                return null;
+            }
+            postings[i++] = list.snapshot();
+        }
+        return postings;
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int n = 1; n <= MAX_GRAM; n++) {
+            grams.addAll(grams(text, n));
+        }
+        return grams;
+    }
+
+    private static Set<String> grams(String text, int n) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + n <= text.length(); i++) {
+            grams.add(text.substring(i, i + n));
+        }
+        return grams;
+    }
+
+    private static final class PageBuilder {
+
+        private final int limit;
+        private final int maxChars;
+        private final List<String> names = new ArrayList<>();
+        private int chars;
+        private Integer next;
+
+        PageBuilder(int limit, int maxChars) {
+            this.limit = limit;
+            this.maxChars = maxChars;
+        }
+
+        // false once the page is full; the id that did not fit is where the next page starts
+        boolean offer(int id, String name) {
+            if (next != null) {
+                return false;
+            }
+            if (names.size() == limit || (!names.isEmpty() && chars + name.length() > maxChars)) {
+                next = id;
+                return false;
+            }
+            names.add(name);
+            chars += name.length();
+            return true;
+        }
+
+        NamePage build(int total) {
+            return new NamePage(List.copyOf(names), total, next);
+        }
+    }
+
+    // Append-only array list for one writer (under the write lock) and lock-free readers.
+    private static final class AppendOnlyList<T> {
+
+        private volatile T[] elements;
+        private volatile int size;
+
+        AppendOnlyList(T[] initial) {
+            this.elements = initial;
+        }
+
+        void add(T element) {
+            T[] current = elements;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[size] = element;
+            elements = current;
+            size = size + 1; // publishes the element
+        }
+
+        T get(int index) {
+            return elements[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        // count must not exceed a size read before: the array read afterwards holds at least that many
+        List<T> snapshot(int count) {
+            return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(elements, count)));
+        }
+    }
+
+    // Ascending ids, same publication scheme as AppendOnlyList.
+    private static final class IntList {
+
+        private volatile int[] ids = new int[4];
+        private volatile int size;
+
+        void add(int id) {
+            int[] current = ids;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[size] = id;
+            ids = current;
+            size = size + 1;
+        }
+
+        // no copy: ids[0..size) never change once published
+        Postings snapshot() {
+            int count = size;
+            return new Postings(ids, count);
+        }
+    }
+
+    private record Postings(int[] ids, int size) {
+    }
+}
@@ -0,0 +1,407 @@
+package se.lexicon.g54springai.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Durable NameStore: an append-only log plus periodic snapshots, queried through an in-memory IndexedNameStore.
+//
+// Group commit: add() queues the name and waits; a single committer thread takes everything queued, writes it
+// with one write and one fsync, then makes the names visible and wakes the callers. Concurrent adds therefore
+// share an fsync instead of paying one each, and a name is only visible once it is on disk.
+//
+// Files: names-<generation>.log holds [length int][crc32 int][utf-8 name] records; names.snapshot holds all
+// names up to the start of a log generation. Every snapshotEvery names the committer starts a new generation,
+// writes a snapshot (temp file + atomic rename) and deletes the older logs. Startup loads the snapshot and
+// replays the logs after it; a torn record at the end of a log (crash mid-write) is cut off.
+//
+// A failed write or fsync fails its batch and cuts the log back to the end of the last committed batch (reopening
+// it if need be), so nothing written after it sits behind a partial record that would end the replay. A failed
+// snapshot does not fail the batch, whose names are already durable: it is logged and retried after the next batch,
+// into the log generation it already started (a retry never starts another one).
+public class LoggedNameStore implements NameStore, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggedNameStore.class);
+
+    private static final String LOG_PREFIX = "names-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SNAPSHOT = "names.snapshot";
+    private static final int MAX_BATCH = 1024;
+
+    private final Path directory;
+    private final int snapshotEvery;
+    private final boolean syncWrites;
+    private final LogWriter logWriter;
+    private final IndexedNameStore index = new IndexedNameStore();
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+
+    private long generation;
+    private FileChannel log;
+    private long logEnd;         // end of the last committed batch in the current log
+    private boolean needsRepair; // a failed write may have left a partial batch after logEnd
+    private int sinceSnapshot;
+    private boolean snapshotPending; // the current generation was started for a snapshot that is not written yet
+    private int snapshotNames;       // names before the current generation: the content of that snapshot
+    private volatile boolean closed;
+
+    private record PendingWrite(List<String> names, CompletableFuture<Void> done) {
+    }
+
+    // Writes (and syncs) one batch of records; replaced in tests to inject I/O failures.
+    interface LogWriter {
+        void write(FileChannel log, ByteBuffer records, boolean sync) throws IOException;
+    }
+
+    public LoggedNameStore(Path directory, int snapshotEvery, boolean syncWrites, Collection<String> initialNames) {
+        this(directory, snapshotEvery, syncWrites, initialNames, LoggedNameStore::writeFully);
+    }
+
+    LoggedNameStore(Path directory, int snapshotEvery, boolean syncWrites, Collection<String> initialNames,
+                    LogWriter logWriter) {
+        if (snapshotEvery <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be positive");
+        }
+        this.directory = directory;
+        this.snapshotEvery = snapshotEvery;
+        this.syncWrites = syncWrites;
+        this.logWriter = logWriter;
+        try {
+            Files.createDirectories(directory);
+            boolean fresh = recover();
+            if (fresh) {
+                append(List.copyOf(initialNames));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open name store in " + directory, e);
+        }
+        this.committer = Thread.ofPlatform().name("name-store-committer").daemon(true).start(this::commitLoop);
+    }
+
+    @Override
+    public void add(String name) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Name cannot be null or empty");
+        }
+        commit(List.of(name));
+    }
+
+    // one queued write: the names share a log write and an fsync, and become visible together
+    @Override
+    public void addAll(Collection<String> names) {
+        for (String name : names) {
+            if (name == null || name.isBlank()) {
+                throw new IllegalArgumentException("Name cannot be null or empty");
+            }
+        }
+        if (!names.isEmpty()) {
+            commit(List.copyOf(names));
+        }
+    }
+
+    @Override
+    public List<String> findAll() {
+        return index.findAll();
+    }
+
+    @Override
+    public List<String> findContaining(String fragment) {
+        return index.findContaining(fragment);
+    }
+
+    @Override
+    public NamePage findPage(String fragment, int cursor, int limit, int maxChars) {
+        return index.findPage(fragment, cursor, limit, maxChars);
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    // Queues the names for the committer and waits until they are on disk.
+    private void commit(List<String> names) {
+        if (closed) {
+            throw new IllegalStateException("Name store is closed");
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        queue.add(new PendingWrite(names, done));
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while storing " + names, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not store " + names, e.getCause());
+        }
+    }
+
+    private void commitLoop() {
+        List<PendingWrite> batch = new ArrayList<>();
+        // polled rather than interrupted on close: an interrupt during a write would close the log channel
+        while (!closed || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            // everything that queued up during the previous fsync goes into this one
+            queue.drainTo(batch, MAX_BATCH - 1);
+            List<String> names = new ArrayList<>();
+            batch.forEach(write -> names.addAll(write.names()));
+            try {
+                append(names);
+                batch.forEach(write -> write.done().complete(null));
+            } catch (IOException | RuntimeException e) {
+                batch.forEach(write -> write.done().completeExceptionally(e));
+            }
+            batch.clear();
+        }
+    }
+
+    // Writes and syncs the names, then makes them visible; only called by the committer (or before it starts).
+    private void append(List<String> names) throws IOException {
+        if (names.isEmpty()) {
+            return;
+        }
+        if (needsRepair) {
+            repair();
+        }
+        List<byte[]> encoded = new ArrayList<>(names.size());
+        int bytes = 0;
+        for (String name : names) {
+            byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+            encoded.add(utf8);
+            bytes += 8 + utf8.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        for (byte[] utf8 : encoded) {
+            CRC32 crc = new CRC32();
+            crc.update(utf8);
+            buffer.putInt(utf8.length).putInt((int) crc.getValue()).put(utf8);
+        }
+        buffer.flip();
+        try {
+            logWriter.write(log, buffer, syncWrites);
+        } catch (IOException | RuntimeException e) {
+            needsRepair = true;
+            try {
+                repair();
+            } catch (IOException repairError) {
+                e.addSuppressed(repairError); // retried before the next batch is written
+            }
+            throw e;
+        }
+        logEnd += bytes;
+        names.forEach(index::add);
+        sinceSnapshot += names.size();
+        if (sinceSnapshot >= snapshotEvery) {
+            try {
+                snapshot();
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Could not snapshot the name store in {}, retrying after the next batch", directory, e);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel log, ByteBuffer records, boolean sync) throws IOException {
+        while (records.hasRemaining()) {
+            log.write(records);
+        }
+        if (sync) {
+            log.force(false);
+        }
+    }
+
+    // Cuts the log back to the last committed batch; the channel is reopened when the failure closed it.
+    private void repair() throws IOException {
+        if (!log.isOpen()) {
+            log = FileChannel.open(logFile(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        if (log.size() > logEnd) {
+            log.truncate(logEnd);
+        }
+        log.force(true);
+        needsRepair = false;
+    }
+
+    // Starts a new log generation and snapshots everything before it; older logs are deleted afterwards.
+    private void snapshot() throws IOException {
+        if (!snapshotPending) {
+            openLog(generation + 1);
+            snapshotNames = index.size();
+            snapshotPending = true;
+        }
+        Path temp = directory.resolve(SNAPSHOT + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            // not the names added to the new log since a failed attempt: replaying it restores those
+            List<String> names = index.findAll().subList(0, snapshotNames);
+            out.writeLong(generation);
+            out.writeInt(names.size());
+            for (String name : names) {
+                byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // the snapshot now covers the older logs
+        for (long old : logGenerations()) {
+            if (old < generation) {
+                Files.deleteIfExists(logFile(old));
+            }
+        }
+        snapshotPending = false;
+        sinceSnapshot = index.size() - snapshotNames;
+    }
+
+    // Loads the snapshot and replays the logs after it; returns true when there was nothing to load.
+    private boolean recover() throws IOException {
+        long firstGeneration = 0;
+        Path snapshot = directory.resolve(SNAPSHOT);
+        boolean fresh = true;
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                firstGeneration = in.readLong();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    index.add(new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8));
+                }
+            }
+            fresh = false;
+        }
+        long last = firstGeneration;
+        for (long logGeneration : logGenerations()) {
+            if (logGeneration < firstGeneration) {
+                Files.deleteIfExists(logFile(logGeneration)); // already in the snapshot
+                continue;
+            }
+            fresh &= replay(logFile(logGeneration)) == 0;
+            last = logGeneration;
+        }
+        openLog(last);
+        return fresh;
+    }
+
+    // Replays one log into the index and cuts off a torn tail; returns the number of names read.
+    private int replay(Path file) throws IOException {
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer data = ByteBuffer.allocate((int) channel.size());
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // read the whole log
+            }
+            data.flip();
+            int goodEnd = 0;
+            while (data.remaining() >= 8) {
+                int length = data.getInt();
+                int crc = data.getInt();
+                if (length < 0 || length > data.remaining()) {
+                    break;
+                }
+                byte[] utf8 = new byte[length];
+                data.get(utf8);
+                CRC32 check = new CRC32();
+                check.update(utf8);
+                if ((int) check.getValue() != crc) {
+                    break;
+                }
+                index.add(new String(utf8, StandardCharsets.UTF_8));
+                count++;
+                goodEnd = data.position();
+            }
+            if (goodEnd < channel.size()) {
+                channel.truncate(goodEnd);
+                channel.force(true);
+            }
+        }
+        sinceSnapshot += count;
+        return count;
+    }
+
+    private List<Long> logGenerations() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    // The new log is opened before the current one is closed, so a failure leaves the current one in use.
+    private void openLog(long newGeneration) throws IOException {
+        FileChannel next = FileChannel.open(logFile(newGeneration), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (log != null) {
+            try {
+                log.force(true);
+                log.close();
+            } catch (IOException e) {
+                next.close();
+                throw e;
+            }
+        }
+        generation = newGeneration;
+        log = next;
+        logEnd = next.size();
+    }
+
+    private Path logFile(long logGeneration) {
+        return directory.resolve(LOG_PREFIX + String.format("%08d", logGeneration) + LOG_SUFFIX);
+    }
+
+    // Waits for the committer to write what is queued; an interrupt does not cut that short, it is kept for the caller.
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        boolean interrupted = false;
+        while (committer.isAlive()) {
+            try {
+                committer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        // adds that raced with close() and missed the last batch
+        List<PendingWrite> late = new ArrayList<>();
+        queue.drainTo(late);
+        late.forEach(write -> write.done().completeExceptionally(new IllegalStateException("Name store is closed")));
+        log.force(true);
+        log.close();
+    }
+}
@@ -0,0 +1,8 @@
+package se.lexicon.g54springai.store;
+
+import java.util.List;
+
+// One page of names. total counts every matching name, not only this page; nextCursor is where the next page
+// starts (pass it back as the cursor), null when this is the last page.
+public record NamePage(List<String> names, int total, Integer nextCursor) {
+}
@@ -0,0 +1,33 @@
+package se.lexicon.g54springai.store;
+
+import java.util.Collection;
+import java.util.List;
+
+// The names managed by the AppToolCalling tools. Implementations must be safe for concurrent use.
+public interface NameStore {
+
+    void add(String name);
+
+    // adds all names or, when one is invalid, none of them
+    default void addAll(Collection<String> names) {
+        names.forEach(name -> {
+            if (name == null || name.isBlank()) {
+                throw new IllegalArgumentException("Name cannot be null or empty");
+            }
+        });
+        names.forEach(this::add);
+    }
+
+    // all names, in the order they were added
+    List<String> findAll();
+
+    // names containing the fragment, ignoring case, in the order they were added
+    List<String> findContaining(String fragment);
+
+    // Names containing the fragment (all names when it is null or empty) from cursor on, in the order they were
+    // added. The page ends after limit names or before the names would exceed maxChars characters, but holds at
+    // least one name so paging always moves forward.
+    NamePage findPage(String fragment, int cursor, int limit, int maxChars);
+
+    int size();
+}
@@ -0,0 +1,285 @@
+package se.lexicon.g54springai.tools;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import se.lexicon.g54springai.tracing.TracedToolCallback;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+// ToolCallingManager that runs the tool calls of one model turn concurrently, so a turn with several calls
+// costs about the slowest call instead of the sum of all of them.
+// - the results go back to the model in the order of the calls, whatever order they finish in
+// - every call has a timeout (ToolExecutionProperties), counted from when it starts running; a call that runs over
+//   is cancelled (interrupted) and the model gets "timed out" as its result, like it gets the message of a failed
+//   tool
+// - serial tools (the ones that write) run one after another in a single task per turn, in the order the model
+//   asked for them, each under a lock shared by all serial tools of all requests, so they never overlap. They are
+//   not timed out: a write cut off by a timeout may still have happened, and the model would repeat it.
+// - calls run on virtual threads; a semaphore bounds how many parallel calls run at once (over all requests).
+//   Serial calls do not take a permit, so a serial call waiting for the lock never holds one.
+// Tool definitions are resolved by the delegate (Spring AI's DefaultToolCallingManager). A turn with a single
+// call takes the same path, so timeouts and serial tools apply to it too.
+// Metrics: tool.calls{tool,outcome=success|error|timeout}.
+public class ParallelToolCallingManager implements ToolCallingManager, AutoCloseable {
+
+    private final ToolCallingManager delegate;
+    private final ToolCallbackResolver toolCallbackResolver;
+    private final ToolExecutionExceptionProcessor exceptionProcessor;
+    private final ObservationRegistry observationRegistry;
+    private final MeterRegistry meterRegistry;
+    private final ToolExecutionProperties properties;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+    private final ReentrantLock serialLock = new ReentrantLock(true);
+
+    public ParallelToolCallingManager(ToolCallingManager delegate, ToolCallbackResolver toolCallbackResolver,
+                                      ToolExecutionExceptionProcessor exceptionProcessor,
+                                      ObservationRegistry observationRegistry, MeterRegistry meterRegistry,
+                                      ToolExecutionProperties properties) {
+        this.delegate = delegate;
+        this.toolCallbackResolver = toolCallbackResolver;
+        this.exceptionProcessor = exceptionProcessor;
+        this.observationRegistry = observationRegistry;
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+        this.permits = new Semaphore(properties.parallelism());
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return delegate.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        AssistantMessage assistantMessage = chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(AssistantMessage::hasToolCalls)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No tool call requested by the chat model"));
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        ToolContext toolContext = toolContext(prompt, assistantMessage);
+        // the request's span: the tool spans run on other threads and are attached to it explicitly
+        Observation parent = observationRegistry.getCurrentObservation();
+
+        // all tools are resolved before any runs: an unknown tool fails the turn without side effects
+        List<ToolCallback> callbacks = new ArrayList<>(toolCalls.size());
+        boolean returnDirect = true;
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            ToolCallback callback = resolve(prompt, toolCall.name());
+            callbacks.add(callback);
+            returnDirect &= callback.getToolMetadata().returnDirect();
+        }
+
+        List<PendingCall> calls = new ArrayList<>(toolCalls.size());
+        List<PendingCall> serialCalls = new ArrayList<>();
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < toolCalls.size(); i++) {
+            PendingCall call = new PendingCall(toolCalls.get(i), callbacks.get(i),
+                    properties.serial().contains(toolCalls.get(i).name()));
+            calls.add(call);
+            if (call.serial) {
+                serialCalls.add(call);
+            } else {
+                call.task = executor.submit(() -> runParallel(call, toolContext, parent));
+                tasks.add(call.task);
+            }
+        }
+        if (!serialCalls.isEmpty()) {
+            tasks.add(executor.submit(() -> runSerial(serialCalls, toolContext, parent)));
+        }
+
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(toolCalls.size());
+        try {
+            for (PendingCall call : calls) {
+                responses.add(new ToolResponseMessage.ToolResponse(call.toolCall.id(), call.toolCall.name(), await(call)));
+            }
+        } finally {
+            // a failed turn leaves nothing running behind it
+            tasks.forEach(task -> task.cancel(true));
+        }
+
+        List<Message> conversationHistory = new ArrayList<>(prompt.copy().getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(responses, Map.of()));
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    // One tool call of the turn; started and result are completed by the task that runs it.
+    private static final class PendingCall {
+        final AssistantMessage.ToolCall toolCall;
+        final ToolCallback callback;
+        final boolean serial;
+        final CompletableFuture<Long> started = new CompletableFuture<>();
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        Future<?> task; // parallel calls only: cancelled when the call times out
+
+        PendingCall(AssistantMessage.ToolCall toolCall, ToolCallback callback, boolean serial) {
+            this.toolCall = toolCall;
+            this.callback = callback;
+            this.serial = serial;
+        }
+
+        void fail(Throwable error) {
+            started.completeExceptionally(error);
+            result.completeExceptionally(error);
+        }
+    }
+
+    private void runParallel(PendingCall call, ToolContext toolContext, Observation parent) {
+        try {
+            permits.acquire();
+            try {
+                call.started.complete(System.nanoTime());
+                call.result.complete(observe(call, toolContext, parent));
+            } finally {
+                permits.release();
+            }
+        } catch (InterruptedException e) {
+            call.fail(e);
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e) {
+            call.fail(e);
+        }
+    }
+
+    // Runs the serial calls of a turn in order; a call that fails the turn keeps the later ones from running.
+    private void runSerial(List<PendingCall> calls, ToolContext toolContext, Observation parent) {
+        for (int i = 0; i < calls.size(); i++) {
+            PendingCall call = calls.get(i);
+            try {
+                serialLock.lockInterruptibly();
+                try {
+                    call.started.complete(System.nanoTime());
+                    call.result.complete(observe(call, toolContext, parent));
+                } finally {
+                    serialLock.unlock();
+                }
+            } catch (InterruptedException | RuntimeException | Error e) {
+                for (PendingCall notRun : calls.subList(i, calls.size())) {
+                    notRun.fail(e);
+                }
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+        }
+    }
+
+    private String observe(PendingCall call, ToolContext toolContext, Observation parent) {
+        AssistantMessage.ToolCall toolCall = call.toolCall;
+        Observation observation = Observation.createNotStarted(TracedToolCallback.OBSERVATION_NAME, observationRegistry)
+                .parentObservation(parent)
+                .contextualName("tool_call " + toolCall.name())
+                .lowCardinalityKeyValue("spring.ai.kind", "tool_call")
+                .lowCardinalityKeyValue("tool.name", toolCall.name())
+                .lowCardinalityKeyValue("tool.execution", call.serial ? "serial" : "parallel");
+        return observation.observe(() -> call(toolCall, call.callback, toolContext));
+    }
+
+    private String call(AssistantMessage.ToolCall toolCall, ToolCallback callback, ToolContext toolContext) {
+        try {
+            String result = callback.call(toolCall.arguments(), toolContext);
+            count(toolCall.name(), "success");
+            return result;
+        } catch (ToolExecutionException e) {
+            // the model gets the error message and can correct its call, as with the default manager
+            count(toolCall.name(), "error");
+            return exceptionProcessor.process(e);
+        }
+    }
+
+    // A parallel call's deadline is counted from when it got its permit, so time spent waiting for one is not
+    // taken from it; the wait itself ends when running calls finish or time out. Serial calls are waited for.
+    private String await(PendingCall call) {
+        String toolName = call.toolCall.name();
+        try {
+            if (call.serial) {
+                return call.result.get();
+            }
+            long deadline = call.started.get() + properties.timeoutOf(toolName).toNanos();
+            return call.result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            call.task.cancel(true);
+            count(toolName, "timeout");
+            return "Tool '" + toolName + "' timed out after " + properties.timeoutOf(toolName).toMillis() + " ms";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tool " + toolName, e);
+        } catch (ExecutionException e) {
+            count(toolName, "error");
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Tool " + toolName + " failed", e.getCause());
+        }
+    }
+
+    private ToolCallback resolve(Prompt prompt, String toolName) {
+        if (prompt.getOptions() instanceof ToolCallingChatOptions options) {
+            for (ToolCallback callback : options.getToolCallbacks()) {
+                if (callback.getToolDefinition().name().equals(toolName)) {
+                    return callback;
+                }
+            }
+        }
+        ToolCallback callback = toolCallbackResolver.resolve(toolName);
+        if (callback == null) {
+            throw new IllegalStateException("No ToolCallback found for tool name: " + toolName);
+        }
+        return callback;
+    }
+
+    // Same context as the default manager: the options' tool context plus the conversation up to this turn
+    private static ToolContext toolContext(Prompt prompt, AssistantMessage assistantMessage) {
+        if (!(prompt.getOptions() instanceof ToolCallingChatOptions options) || options.getToolContext().isEmpty()) {
+            return new ToolContext(Map.of());
+        }
+        Map<String, Object> context = new HashMap<>(options.getToolContext());
+        List<Message> history = new ArrayList<>(prompt.copy().getInstructions());
+        history.add(assistantMessage);
+        context.put(ToolContext.TOOL_CALL_HISTORY, history);
+        return new ToolContext(context);
+    }
+
+    private void count(String toolName, String outcome) {
+        meterRegistry.counter("tool.calls", "tool", toolName, "outcome", outcome).increment();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
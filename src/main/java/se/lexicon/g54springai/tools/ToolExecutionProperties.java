@@ -0,0 +1,33 @@
+package se.lexicon.g54springai.tools;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+// app.tools.*: how the tool calls of one model turn are executed, see ParallelToolCallingManager.
+// - parallelism: parallel tool calls running at once, over all requests
+// - timeout: per parallel tool call, unless timeouts has an entry for the tool name
+// - serial: tools that must not run concurrently (with themselves or with each other), e.g. tools that modify
+//   state; they run in the model's order and are not timed out
+@ConfigurationProperties("app.tools")
+public record ToolExecutionProperties(
+        @DefaultValue("16") int parallelism,
+        @DefaultValue("30s") Duration timeout,
+        Map<String, Duration> timeouts,
+        Set<String> serial) {
+
+    public ToolExecutionProperties {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Tool parallelism must be positive");
+        }
+        timeouts = timeouts == null ? Map.of() : Map.copyOf(timeouts);
+        serial = serial == null ? Set.of() : Set.copyOf(serial);
+    }
+
+    public Duration timeoutOf(String toolName) {
+        return timeouts.getOrDefault(toolName, timeout);
+    }
+}
@@ -0,0 +1,34 @@
+package se.lexicon.g54springai.tracing;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import java.util.Collection;
+
+// OpenTelemetry exporter that keeps the finished spans in the TraceStore instead of sending them anywhere,
+// so the timelines are available without a collector.
+public class InMemorySpanExporter implements SpanExporter {
+
+    private final TraceStore store;
+
+    public InMemorySpanExporter(TraceStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        spans.forEach(store::add);
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return CompletableResultCode.ofSuccess();
+    }
+}
@@ -0,0 +1,38 @@
+package se.lexicon.g54springai.tracing;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// Tells the client the trace id of its request (X-Trace-Id), to look the timeline up at /api/traces/{traceId}.
+// Runs after Spring's observation filter, so the request span is already current.
+@Component
+public class TraceIdFilter extends OncePerRequestFilter {
+
+    public static final String TRACE_ID_HEADER = "X-Trace-Id";
+
+    private final Tracer tracer;
+
+    @Autowired
+    public TraceIdFilter(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Span span = tracer.currentSpan();
+        if (span != null) {
+            response.setHeader(TRACE_ID_HEADER, span.context().traceId());
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,8 @@
+package se.lexicon.g54springai.tracing;
+
+import java.util.Map;
+
+// One span of a TraceTimeline; times are milliseconds from the start of the trace. parentSpanId is null for the root.
+public record TraceSpan(String spanId, String parentSpanId, String name, double startMillis, double durationMillis,
+                        String status, Map<String, String> attributes) {
+}
@@ -0,0 +1,136 @@
+package se.lexicon.g54springai.tracing;
+
+import io.opentelemetry.api.trace.SpanId;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// The spans of the most recent traces, in memory, fed by InMemorySpanExporter.
+// - at most maxTraces traces; the one that least recently received a span is dropped first
+// - at most maxSpansPerTrace spans (plus the root) per trace, so a runaway tool loop cannot fill the heap
+//   (dropped spans are still counted)
+// Spring AI reports every model round trip as a "gen_ai.operation.name=chat" span and every tool invocation as a
+// "spring.ai.kind=tool_call" span; both are counted per trace.
+@Component
+public class TraceStore {
+
+    private static final String OPERATION = "gen_ai.operation.name";
+    private static final String KIND = "spring.ai.kind";
+
+    private final int maxTraces;
+    private final int maxSpansPerTrace;
+
+    // insertion-ordered; add() moves its trace to the end, so the order is by last span received and reading a
+    // trace does not change it; guarded by synchronized (traces)
+    private final LinkedHashMap<String, Trace> traces;
+
+    private static final class Trace {
+        final List<SpanData> spans = new ArrayList<>();
+        int dropped;
+    }
+
+    @Autowired
+    public TraceStore(@Value("${app.tracing.max-traces:200}") int maxTraces,
+                      @Value("${app.tracing.max-spans-per-trace:500}") int maxSpansPerTrace) {
+        if (maxTraces <= 0 || maxSpansPerTrace <= 0) {
+            throw new IllegalArgumentException("Trace store limits must be positive");
+        }
+        this.maxTraces = maxTraces;
+        this.maxSpansPerTrace = maxSpansPerTrace;
+        this.traces = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Trace> eldest) {
+                return size() > TraceStore.this.maxTraces;
+            }
+        };
+    }
+
+    public void add(SpanData span) {
+        synchronized (traces) {
+            Trace trace = traces.remove(span.getTraceId());
+            if (trace == null) {
+                trace = new Trace();
+            }
+            traces.put(span.getTraceId(), trace);
+            // the root span ends last and names the trace: it is kept even when the trace is full
+            if (trace.spans.size() < maxSpansPerTrace || !SpanId.isValid(span.getParentSpanId())) {
+                trace.spans.add(span);
+            } else {
+                trace.dropped++;
+            }
+        }
+    }
+
+    // Most recent first, without the spans
+    public List<TraceTimeline> recent(int limit) {
+        List<Map.Entry<String, Trace>> entries;
+        synchronized (traces) {
+            entries = new ArrayList<>(traces.entrySet());
+        }
+        List<TraceTimeline> recent = new ArrayList<>();
+        for (int i = entries.size() - 1; i >= 0 && recent.size() < limit; i--) {
+            recent.add(timeline(entries.get(i).getKey(), entries.get(i).getValue()).withoutSpans());
+        }
+        return recent;
+    }
+
+    // null when the trace is unknown (or already dropped)
+    public TraceTimeline get(String traceId) {
+        Trace trace;
+        synchronized (traces) {
+            trace = traces.get(traceId);
+        }
+        return trace != null ? timeline(traceId, trace) : null;
+    }
+
+    private TraceTimeline timeline(String traceId, Trace trace) {
+        List<SpanData> spans;
+        int dropped;
+        synchronized (traces) {
+            spans = new ArrayList<>(trace.spans);
+            dropped = trace.dropped;
+        }
+        spans.sort(Comparator.comparingLong(SpanData::getStartEpochNanos));
+        long start = spans.get(0).getStartEpochNanos();
+        long end = start;
+        String name = spans.get(0).getName();
+        int modelCalls = 0;
+        int toolCalls = 0;
+        List<TraceSpan> timeline = new ArrayList<>(spans.size());
+        for (SpanData span : spans) {
+            end = Math.max(end, span.getEndEpochNanos());
+            if (!SpanId.isValid(span.getParentSpanId())) {
+                name = span.getName();
+            }
+            Map<String, String> attributes = new TreeMap<>();
+            span.getAttributes().forEach((key, value) -> attributes.put(key.getKey(), String.valueOf(value)));
+            if ("chat".equals(attributes.get(OPERATION))) {
+                modelCalls++;
+            }
+            if ("tool_call".equals(attributes.get(KIND))) {
+                toolCalls++;
+            }
+            timeline.add(new TraceSpan(span.getSpanId(),
+                    SpanId.isValid(span.getParentSpanId()) ? span.getParentSpanId() : null,
+                    span.getName(),
+                    millis(span.getStartEpochNanos() - start),
+                    millis(span.getEndEpochNanos() - span.getStartEpochNanos()),
+                    span.getStatus().getStatusCode().name(),
+                    attributes));
+        }
+        return new TraceTimeline(traceId, name, start / 1_000_000, millis(end - start), modelCalls, toolCalls,
+                spans.size() + dropped, timeline);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
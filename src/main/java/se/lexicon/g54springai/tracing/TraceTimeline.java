@@ -0,0 +1,16 @@
+package se.lexicon.g54springai.tracing;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+// The spans of one request in start order, with the counts that show a runaway tool loop at a glance.
+// spans is null in the list of recent traces.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TraceTimeline(String traceId, String name, long startEpochMillis, double durationMillis,
+                            int modelCalls, int toolCalls, int spanCount, List<TraceSpan> spans) {
+
+    public TraceTimeline withoutSpans() {
+        return new TraceTimeline(traceId, name, startEpochMillis, durationMillis, modelCalls, toolCalls, spanCount, null);
+    }
+}
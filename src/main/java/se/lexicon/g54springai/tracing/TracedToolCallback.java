@@ -0,0 +1,75 @@
+package se.lexicon.g54springai.tracing;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import org.springframework.ai.tool.observation.ToolCallingObservationContext;
+
+import java.nio.charset.StandardCharsets;
+
+// Adds the size of the arguments and of the result (UTF-8 bytes) to the span of a tool invocation. Spring AI
+// already opens a "tool_call" observation around every call, and so does ParallelToolCallingManager (named
+// OBSERVATION_NAME); without one this callback opens its own.
+public class TracedToolCallback implements ToolCallback {
+
+    public static final String OBSERVATION_NAME = "chat.tool";
+
+    private final ToolCallback delegate;
+    private final ObservationRegistry observationRegistry;
+
+    public TracedToolCallback(ToolCallback delegate, ObservationRegistry observationRegistry) {
+        this.delegate = delegate;
+        this.observationRegistry = observationRegistry;
+    }
+
+    public static ToolCallback[] wrap(ToolCallback[] callbacks, ObservationRegistry observationRegistry) {
+        ToolCallback[] traced = new ToolCallback[callbacks.length];
+        for (int i = 0; i < callbacks.length; i++) {
+            traced[i] = new TracedToolCallback(callbacks[i], observationRegistry);
+        }
+        return traced;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        Observation current = observationRegistry.getCurrentObservation();
+        if (current != null && (current.getContext() instanceof ToolCallingObservationContext
+                || OBSERVATION_NAME.equals(current.getContext().getName()))) {
+            return callAndTag(current, toolInput, toolContext);
+        }
+        Observation observation = Observation.createNotStarted(OBSERVATION_NAME, observationRegistry)
+                .contextualName("tool_call " + delegate.getToolDefinition().name())
+                .lowCardinalityKeyValue("spring.ai.kind", "tool_call")
+                .lowCardinalityKeyValue("tool.name", delegate.getToolDefinition().name());
+        return observation.observe(() -> callAndTag(observation, toolInput, toolContext));
+    }
+
+    private String callAndTag(Observation observation, String toolInput, ToolContext toolContext) {
+        observation.highCardinalityKeyValue("tool.arguments.size", String.valueOf(size(toolInput)));
+        String result = toolContext != null ? delegate.call(toolInput, toolContext) : delegate.call(toolInput);
+        observation.highCardinalityKeyValue("tool.result.size", String.valueOf(size(result)));
+        return result;
+    }
+
+    private static int size(String text) {
+        return text == null ? 0 : text.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,99 @@
+package se.lexicon.g54springai.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import se.lexicon.g54springai.memory.ShardedChatMemoryRepository;
+import se.lexicon.g54springai.memory.TokenBudgetChatMemory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// ChatMemory get/add from 8 threads. conversations=1 puts every thread on the same conversation (worst case),
+// 1024 spreads them like independent users do.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ChatMemoryBenchmark {
+
+    @Param({"in-memory", "sharded"})
+    public String store;
+
+    @Param({"1", "1024"})
+    public int conversations;
+
+    private ChatMemoryRepository repository;
+    private TokenBudgetChatMemory chatMemory;
+
+    @Setup
+    public void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        repository = switch (store) {
+            case "in-memory" -> new InMemoryChatMemoryRepository();
+            case "sharded" -> new ShardedChatMemoryRepository(64, Duration.ofMinutes(30), 100_000,
+                    256L * 1024 * 1024, Duration.ofMinutes(1), meterRegistry);
+            default -> throw new IllegalArgumentException("Unknown store: " + store);
+        };
+        chatMemory = new TokenBudgetChatMemory(repository, new JTokkitTokenCountEstimator(), 3000, 3000, null, null, 1,
+                null, meterRegistry);
+        for (int i = 0; i < conversations; i++) {
+            for (int turn = 0; turn < 5; turn++) {
+                chatMemory.add(conversationId(i), exchange(turn));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        chatMemory.close();
+        if (repository instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Benchmark
+    public List<Message> get() {
+        return chatMemory.get(randomConversation());
+    }
+
+    @Benchmark
+    public void add() {
+        chatMemory.add(randomConversation(), exchange(ThreadLocalRandom.current().nextInt(100)));
+    }
+
+    private String randomConversation() {
+        return conversationId(ThreadLocalRandom.current().nextInt(conversations));
+    }
+
+    private static String conversationId(int index) {
+        return "conversation-" + index;
+    }
+
+    private static List<Message> exchange(int turn) {
+        return List.of(new UserMessage("Question number " + turn + ": which names are stored?"),
+                new AssistantMessage("The stored names are Mehrdad, Elnaz, Simon and Marcus."));
+    }
+}
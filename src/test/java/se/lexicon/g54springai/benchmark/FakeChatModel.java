@@ -0,0 +1,49 @@
+package se.lexicon.g54springai.benchmark;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.Arrays;
+import java.util.List;
+
+// In-process ChatModel that answers instantly with a canned response, so a benchmark measures only our own code.
+class FakeChatModel implements ChatModel {
+
+    static final String ANSWER = "Lexicon is a school in Sweden that offers courses in programming and IT.";
+
+    private static final ChatOptions DEFAULT_OPTIONS = ChatOptions.builder()
+            .model("fake-model")
+            .temperature(0.2)
+            .build();
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return response(ANSWER, 50, 20);
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.fromIterable(Arrays.asList(ANSWER.split("(?<= )")))
+                .map(token -> response(token, 0, 0));
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return DEFAULT_OPTIONS;
+    }
+
+    private static ChatResponse response(String text, int promptTokens, int completionTokens) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))),
+                ChatResponseMetadata.builder()
+                        .model("fake-model")
+                        .usage(new DefaultUsage(promptTokens, completionTokens))
+                        .build());
+    }
+}
@@ -0,0 +1,78 @@
+package se.lexicon.g54springai.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.lexicon.g54springai.store.IndexedNameStore;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Substring search in a store of `names` random names, alone and while another thread keeps adding names.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class NameStoreBenchmark {
+
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz";
+
+    @Param({"1000000"})
+    public int names;
+
+    private IndexedNameStore store;
+    private List<String> queries;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        store = new IndexedNameStore();
+        for (int i = 0; i < names; i++) {
+            store.add(randomName(random));
+        }
+        queries = List.of("mar", "elna", "sim", "xqz", "anders", "lo");
+    }
+
+    @Benchmark
+    public List<String> findContaining() {
+        return store.findContaining(queries.get(ThreadLocalRandom.current().nextInt(queries.size())));
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public List<String> search() {
+        return findContaining();
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public void add() {
+        store.add(randomName(ThreadLocalRandom.current()));
+    }
+
+    private static String randomName(Random random) {
+        int length = 4 + random.nextInt(7);
+        StringBuilder name = new StringBuilder(length);
+        name.append(Character.toUpperCase(LETTERS.charAt(random.nextInt(LETTERS.length()))));
+        for (int i = 1; i < length; i++) {
+            name.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+        return name.toString();
+    }
+}
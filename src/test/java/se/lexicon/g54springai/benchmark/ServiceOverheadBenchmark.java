@@ -0,0 +1,140 @@
+package se.lexicon.g54springai.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.core.io.ClassPathResource;
+import se.lexicon.g54springai.memory.TokenBudgetChatMemory;
+import se.lexicon.g54springai.prompt.ChatPromptTemplate;
+import se.lexicon.g54springai.prompt.PromptRegistry;
+import se.lexicon.g54springai.service.AdaptiveConcurrencyLimit;
+import se.lexicon.g54springai.service.AppToolCalling;
+import se.lexicon.g54springai.service.ChatClientServiceImpl;
+import se.lexicon.g54springai.service.ChatRequestKey;
+import se.lexicon.g54springai.service.ChatResponseCache;
+import se.lexicon.g54springai.service.MediaArchiver;
+import se.lexicon.g54springai.service.ModelCallMetrics;
+import se.lexicon.g54springai.service.OpenAIServiceImpl;
+import se.lexicon.g54springai.service.RequestCoalescer;
+import se.lexicon.g54springai.service.UpstreamCallGuard;
+import se.lexicon.g54springai.store.IndexedNameStore;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Per-request overhead of the service layer in front of an instant in-process model: whatever these
+// benchmarks measure is spent in our code (cache, coalescer, guard, metrics, memory, advisors).
+// Run with: mvn -P jmh test-compile exec:exec   (allocation per request is reported by the gc profiler)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceOverheadBenchmark {
+
+    private static final String QUESTION = "What is Lexicon?";
+    private static final List<String> NAMES = List.of("Mehrdad", "Elnaz", "Simon", "Marcus");
+
+    private OpenAIServiceImpl openAIService;
+    private ChatClientServiceImpl chatClientService;
+    private TokenBudgetChatMemory chatMemory;
+    private MediaArchiver mediaArchiver;
+    private PromptRegistry promptRegistry;
+
+    @Setup
+    public void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        FakeChatModel chatModel = new FakeChatModel();
+        chatMemory = new TokenBudgetChatMemory(new InMemoryChatMemoryRepository(), new JTokkitTokenCountEstimator(),
+                3000, 3000, null, null, 1, null, meterRegistry);
+        UpstreamCallGuard upstreamCallGuard = new UpstreamCallGuard(1024, Duration.ofSeconds(30),
+                AdaptiveConcurrencyLimit.Settings.fixed(1024, 1024), meterRegistry);
+        ModelCallMetrics modelCallMetrics = new ModelCallMetrics(meterRegistry);
+        promptRegistry = new PromptRegistry(new ClassPathResource("prompts.yml"), Duration.ZERO);
+        mediaArchiver = new MediaArchiver("target/generated-media", 16, 1, meterRegistry);
+        openAIService = new OpenAIServiceImpl(chatModel, null, null, null, chatMemory,
+                new ChatResponseCache(true, 1000, Duration.ofMinutes(10), meterRegistry),
+                new RequestCoalescer(meterRegistry),
+                upstreamCallGuard,
+                modelCallMetrics,
+                promptRegistry,
+                mediaArchiver, null, null, false, false, 2);
+        chatClientService = new ChatClientServiceImpl(ChatClient.builder(chatModel), chatMemory,
+                new AppToolCalling(new IndexedNameStore(NAMES), 25, 2000, 100), promptRegistry, upstreamCallGuard,
+                modelCallMetrics, ObservationRegistry.NOOP);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        mediaArchiver.shutdown();
+        chatMemory.close();
+    }
+
+    // Prompt and cache key as the lexbot endpoint built them before the templates were preloaded
+    @Benchmark
+    public Object promptBuilding() {
+        SystemMessage systemMessage = SystemMessage.builder().text("You are ans AI Assistant named LEXBOT").build();
+        UserMessage userMessage = UserMessage.builder().text(QUESTION).build();
+        ChatOptions chatOptions = ChatOptions.builder().model("gpt-4.1-mini").temperature(0.3).build();
+        Prompt prompt = Prompt.builder().messages(systemMessage, userMessage).chatOptions(chatOptions).build();
+        return ChatRequestKey.of(QUESTION, systemMessage.getText(), chatOptions.getModel(), chatOptions.getTemperature())
+                .hashCode() + prompt.getInstructions().size();
+    }
+
+    // The same from the preloaded lexbot template
+    @Benchmark
+    public Object promptFromTemplate() {
+        ChatPromptTemplate template = promptRegistry.chat(PromptRegistry.LEXBOT);
+        Prompt prompt = template.prompt(UserMessage.builder().text(QUESTION).build());
+        ChatOptions chatOptions = template.options();
+        return ChatRequestKey.of(QUESTION, template.systemText(), chatOptions.getModel(), chatOptions.getTemperature())
+                .hashCode() + prompt.getInstructions().size();
+    }
+
+    // cache bypassed: coalescer, upstream guard and metrics on every call
+    @Benchmark
+    public String simpleChatUncached() {
+        return openAIService.processSimpleChatQuery(QUESTION, true);
+    }
+
+    @Benchmark
+    public String simpleChatCached() {
+        return openAIService.processSimpleChatQuery(QUESTION, false);
+    }
+
+    @Benchmark
+    public String lexbotUncached() {
+        return openAIService.processSimpleChatQueryWithContext(QUESTION, true);
+    }
+
+    // memory get + add around the call (OpenAIServiceImpl builds the prompt itself)
+    @Benchmark
+    public String chatMemory() {
+        return openAIService.chatMemory(QUESTION, "benchmark-service");
+    }
+
+    // ChatClient with the chat memory and the tool definitions of AppToolCalling
+    @Benchmark
+    public String chatClientAdvisorChain() {
+        return chatClientService.chatMemory(QUESTION, "benchmark-client");
+    }
+}
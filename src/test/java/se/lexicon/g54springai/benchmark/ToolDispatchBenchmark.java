@@ -0,0 +1,73 @@
+package se.lexicon.g54springai.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.method.MethodToolCallbackProvider;
+import se.lexicon.g54springai.service.AppToolCalling;
+import se.lexicon.g54springai.store.IndexedNameStore;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Dispatch of a model-requested tool call into AppToolCalling: argument JSON parsing, reflective invocation,
+// result serialization and the follow-up conversation history, as the ToolCallingManager does it per round trip.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ToolDispatchBenchmark {
+
+    private ToolCallingManager toolCallingManager;
+    private Prompt prompt;
+    private ChatResponse searchCall;
+    private ChatResponse fetchCall;
+
+    @Setup
+    public void setUp() {
+        toolCallingManager = ToolCallingManager.builder().build();
+        ToolCallback[] toolCallbacks = MethodToolCallbackProvider.builder()
+                .toolObjects(new AppToolCalling(new IndexedNameStore(List.of("Mehrdad", "Elnaz", "Simon", "Marcus")), 25, 2000, 100))
+                .build()
+                .getToolCallbacks();
+        prompt = new Prompt(List.of(new UserMessage("Which names contain 'ma'?")),
+                ToolCallingChatOptions.builder().toolCallbacks(toolCallbacks).build());
+        searchCall = toolCall("searchNames", "{\"text\":\"ma\"}");
+        fetchCall = toolCall("fetchNames", "{}");
+    }
+
+    @Benchmark
+    public ToolExecutionResult searchNames() {
+        return toolCallingManager.executeToolCalls(prompt, searchCall);
+    }
+
+    @Benchmark
+    public ToolExecutionResult fetchNames() {
+        return toolCallingManager.executeToolCalls(prompt, fetchCall);
+    }
+
+    private static ChatResponse toolCall(String name, String arguments) {
+        AssistantMessage assistantMessage = new AssistantMessage("", Map.of(),
+                List.of(new AssistantMessage.ToolCall("call_1", "function", name, arguments)));
+        return new ChatResponse(List.of(new Generation(assistantMessage)));
+    }
+}
@@ -0,0 +1,42 @@
+package se.lexicon.g54springai.load;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Latency distribution of a stubbed upstream call.
+public interface Latency {
+
+    Duration sample();
+
+    static Latency none() {
+        return () -> Duration.ZERO;
+    }
+
+    static Latency fixed(long millis) {
+        Duration duration = Duration.ofMillis(millis);
+        return () -> duration;
+    }
+
+    static Latency uniform(long minMillis, long maxMillis) {
+        return () -> Duration.ofMillis(ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1));
+    }
+
+    // Long-tailed like real model latencies: half the samples are below medianMillis, 1% above p99Millis.
+    static Latency logNormal(long medianMillis, long p99Millis) {
+        double mu = Math.log(medianMillis);
+        double sigma = Math.log((double) p99Millis / medianMillis) / 2.326; // z-score of the 99th percentile
+        return () -> Duration.ofMillis(Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian())));
+    }
+
+    // "fixed:200", "uniform:100-300", "lognormal:400-2500" (median-p99) or "none"
+    static Latency parse(String spec) {
+        String[] parts = spec.trim().split("[:\\-]");
+        return switch (parts[0]) {
+            case "none" -> none();
+            case "fixed" -> fixed(Long.parseLong(parts[1]));
+            case "uniform" -> uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            case "lognormal" -> logNormal(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            default -> throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+        };
+    }
+}
@@ -0,0 +1,108 @@
+package se.lexicon.g54springai.load;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+// Sends `requests` requests with `concurrency` requests in flight (closed loop, one virtual thread per worker)
+// and records latency, time to first byte and failures (transport errors and non-2xx statuses).
+public final class LoadDriver {
+
+    private LoadDriver() {
+    }
+
+    public record Result(String scenario, int requests, int errors, long elapsedNanos, long[] latencyNanos,
+                         long[] firstByteNanos) {
+
+        public double throughput() {
+            return requests * 1e9 / elapsedNanos;
+        }
+
+        public double errorRate() {
+            return (double) errors / requests;
+        }
+
+        public double latencyMillis(double percentile) {
+            return percentile(latencyNanos, percentile) / 1e6;
+        }
+
+        public double firstByteMillis(double percentile) {
+            return percentile(firstByteNanos, percentile) / 1e6;
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+    }
+
+    public static Result run(String scenario, HttpClient client, IntFunction<HttpRequest> request,
+                             int concurrency, int requests) throws InterruptedException {
+        long[] latencies = new long[requests];
+        long[] firstBytes = new long[requests];
+        boolean[] failed = new boolean[requests];
+        AtomicInteger next = new AtomicInteger();
+
+        long start = System.nanoTime();
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int w = 0; w < concurrency; w++) {
+                workers.execute(() -> {
+                    for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                        long sent = System.nanoTime();
+                        try {
+                            HttpResponse<InputStream> response = client.send(request.apply(i),
+                                    HttpResponse.BodyHandlers.ofInputStream());
+                            try (InputStream body = response.body()) {
+                                int first = body.read();
+                                firstBytes[i] = System.nanoTime() - sent;
+                                if (first != -1) {
+                                    body.transferTo(OutputStream.nullOutputStream());
+                                }
+                            }
+                            failed[i] = response.statusCode() / 100 != 2;
+                        } catch (Exception e) {
+                            failed[i] = true;
+                            firstBytes[i] = System.nanoTime() - sent;
+                        }
+                        latencies[i] = System.nanoTime() - sent;
+                    }
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int errors = 0;
+        for (boolean f : failed) {
+            errors += f ? 1 : 0;
+        }
+        Arrays.sort(latencies);
+        Arrays.sort(firstBytes);
+        return new Result(scenario, requests, errors, elapsed, latencies, firstBytes);
+    }
+
+    public static String report(List<Result> results) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "%-28s %8s %8s %10s %10s %10s %10s %10s",
+                "scenario", "requests", "errors", "req/s", "p50 ms", "p99 ms", "ttfb p50", "ttfb p99"));
+        for (Result result : results) {
+            lines.add(String.format(Locale.ROOT, "%-28s %8d %7.1f%% %10.1f %10.1f %10.1f %10.1f %10.1f",
+                    result.scenario(), result.requests(), result.errorRate() * 100, result.throughput(),
+                    result.latencyMillis(50), result.latencyMillis(99),
+                    result.firstByteMillis(50), result.firstByteMillis(99)));
+        }
+        return String.join(System.lineSeparator(), lines);
+    }
+}
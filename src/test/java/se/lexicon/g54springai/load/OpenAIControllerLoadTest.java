@@ -0,0 +1,155 @@
+package se.lexicon.g54springai.load;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Drives every OpenAIController endpoint against the local OpenAI stub and prints throughput, latency
+// percentiles, time to first byte and error rate per endpoint. Not part of the regular build:
+//   mvn -P load test -Dload.concurrency=64 -Dload.requests=500 -Dload.scenarios='chat.*'
+//   stub behaviour: -Dload.stub.chat-latency=lognormal:400-2500 -Dload.stub.chunk-interval-ms=20 ... (see StubProfile)
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class OpenAIControllerLoadTest {
+
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 32);
+    private static final int REQUESTS = Integer.getInteger("load.requests", 200);
+    private static final Pattern SCENARIOS = Pattern.compile(System.getProperty("load.scenarios", ".*"));
+    private static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("load.max-error-rate", "0.01"));
+    private static final String BOUNDARY = "load-test-boundary";
+
+    private static final OpenAiStubServer stub = OpenAiStubServer.start(StubProfile.fromSystemProperties());
+
+    @LocalServerPort
+    private int port;
+
+    @DynamicPropertySource
+    static void pointToStub(DynamicPropertyRegistry registry) {
+        registry.add("spring.ai.openai.base-url", stub::baseUrl);
+        registry.add("spring.ai.openai.api-key", () -> "stub-key");
+        registry.add("app.media.storage-dir", () -> "target/load-media");
+        // every request uploads the same image and audio: cached results would hide the load
+        registry.add("app.media-cache.enabled", () -> false);
+        // the stub never rate limits: admission starts where it would settle instead of ramping up during the run
+        registry.add("app.upstream.admission.initial-limit", () -> CONCURRENCY);
+        registry.add("app.upstream.admission.max-limit", () -> Math.max(CONCURRENCY, 32));
+        registry.add("app.upstream.max-concurrent-calls", () -> Math.max(CONCURRENCY, 32));
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    void loadEveryEndpoint() throws Exception {
+        byte[] image = Base64.getDecoder().decode(
+                "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNk+M9QDwADhgGAWjR9awAAAABJRU5ErkJggg==");
+        byte[] audio = silentWav(Duration.ofSeconds(3));
+
+        // the index makes questions (and conversations) differ, so the cache and the coalescer do not hide the load
+        Map<String, IntFunction<HttpRequest>> scenarios = new LinkedHashMap<>();
+        scenarios.put("chat", i -> get("/messages?question=" + q("What is Lexicon? " + i), true));
+        scenarios.put("chat.stream", i -> get("/messages/stream?question=" + q("What is Lexicon? " + i), false));
+        scenarios.put("chat.lexbot", i -> get("/messages/lexbot?question=" + q("Who are you? " + i), true));
+        scenarios.put("chat.memory", i -> get("/messages/chat-memory?conversationId=load-" + (i % 100)
+                + "&question=" + q("Tell me more " + i), false));
+        scenarios.put("chat.memory.stream", i -> get("/messages/chat-memory/stream?conversationId=load-stream-"
+                + (i % 100) + "&question=" + q("Tell me more " + i), false));
+        scenarios.put("chat.tools", i -> get("/messages/new-chat-memory?conversationId=tools-" + (i % 100)
+                + "&question=" + q("List all names " + i), false));
+        scenarios.put("chat.tools.stream", i -> get("/messages/new-chat-memory/stream?conversationId=tools-stream-"
+                + (i % 100) + "&question=" + q("List all names " + i), false));
+        scenarios.put("reset-chat", i -> get("/reset-chat?conversationId=load-" + (i % 100), false));
+        scenarios.put("image.describe", i -> multipart("/images/describe", "image.png", "image/png", image));
+        scenarios.put("image.generate.url", i -> get("/images/generate/url?query=" + q("A lighthouse " + i), false));
+        scenarios.put("image.generate", i -> get("/images/generate?query=" + q("A lighthouse " + i), false));
+        scenarios.put("speech-to-text", i -> multipart("/speech-to-text", "speech.wav", "audio/wav", audio));
+        scenarios.put("text-to-speech", i -> get("/text-to-speech?text=" + q("Hello number " + i + "."), false));
+        scenarios.put("text-to-speech.stream", i -> get("/text-to-speech/stream?text="
+                + q("Hello number " + i + ". This is the second sentence."), false));
+
+        List<LoadDriver.Result> results = new ArrayList<>();
+        try (HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build()) {
+            for (Map.Entry<String, IntFunction<HttpRequest>> scenario : scenarios.entrySet()) {
+                if (SCENARIOS.matcher(scenario.getKey()).matches()) {
+                    results.add(LoadDriver.run(scenario.getKey(), client, scenario.getValue(), CONCURRENCY, REQUESTS));
+                }
+            }
+        }
+
+        System.out.printf("%nconcurrency %d, %d requests per endpoint%n%s%n%n",
+                CONCURRENCY, REQUESTS, LoadDriver.report(results));
+        for (LoadDriver.Result result : results) {
+            assertTrue(result.errorRate() <= MAX_ERROR_RATE,
+                    result.scenario() + " error rate " + result.errorRate() + " exceeds " + MAX_ERROR_RATE);
+        }
+    }
+
+    private HttpRequest get(String path, boolean bypassCache) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri(path)).timeout(Duration.ofMinutes(2)).GET();
+        if (bypassCache) {
+            request.header("Cache-Control", "no-cache");
+        }
+        return request.build();
+    }
+
+    private HttpRequest multipart(String path, String fileName, String contentType, byte[] content) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 256);
+        body.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: " + contentType + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(content);
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(uri(path))
+                .timeout(Duration.ofMinutes(2))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + "/api/chat" + path);
+    }
+
+    private static String q(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] silentWav(Duration length) throws IOException {
+        AudioFormat format = new AudioFormat(16_000, 16, 1, true, false);
+        byte[] pcm = new byte[(int) (length.toSeconds() * 16_000 * 2)];
+        ByteArrayOutputStream wav = new ByteArrayOutputStream(pcm.length + 64);
+        try (AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(pcm), format, pcm.length / 2)) {
+            AudioSystem.write(stream, AudioFileFormat.Type.WAVE, wav);
+        }
+        return wav.toByteArray();
+    }
+}
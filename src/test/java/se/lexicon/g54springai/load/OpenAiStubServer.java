@@ -0,0 +1,278 @@
+package se.lexicon.g54springai.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Local OpenAI-compatible server for load tests: point spring.ai.openai.base-url at baseUrl().
+// Implements the endpoints the application calls: chat completions (plain, streamed as SSE, tool calls),
+// image generations (url and b64_json), speech and transcriptions. Latencies and payloads come from a StubProfile;
+// failStatus() makes every request fail with the given HTTP status.
+public class OpenAiStubServer implements AutoCloseable {
+
+    // 1x1 transparent PNG
+    private static final byte[] PNG = Base64.getDecoder().decode(
+            "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNk+M9QDwADhgGAWjR9awAAAABJRU5ErkJggg==");
+    private static final String[] WORDS = {"Lexicon", "offers", "courses", "in", "Java", "and", "Spring", "for",
+            "developers", "who", "want", "to", "build", "applications", "with", "AI"};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private volatile StubProfile profile;
+    private volatile int failStatus;
+
+    private OpenAiStubServer(StubProfile profile) throws IOException {
+        this.profile = profile;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/v1/chat/completions", exchange -> handle(exchange, this::chatCompletions));
+        server.createContext("/v1/images/generations", exchange -> handle(exchange, this::imageGenerations));
+        server.createContext("/v1/audio/speech", exchange -> handle(exchange, this::speech));
+        server.createContext("/v1/audio/transcriptions", exchange -> handle(exchange, this::transcriptions));
+        server.createContext("/files/", exchange -> handle(exchange, ex -> send(ex, 200, "image/png", PNG)));
+    }
+
+    public static OpenAiStubServer start(StubProfile profile) {
+        try {
+            OpenAiStubServer stub = new OpenAiStubServer(profile);
+            stub.server.start();
+            return stub;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start the OpenAI stub", e);
+        }
+    }
+
+    public String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public void profile(StubProfile profile) {
+        this.profile = profile;
+    }
+
+    // 0 = answer normally
+    public void failStatus(int status) {
+        this.failStatus = status;
+    }
+
+    public int requestCount(String path) {
+        AtomicInteger count = requestCounts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException, InterruptedException;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try (exchange) {
+            requestCounts.computeIfAbsent(exchange.getRequestURI().getPath(), path -> new AtomicInteger()).incrementAndGet();
+            if (failStatus != 0) {
+                exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+                send(exchange, failStatus, "application/json",
+                        "{\"error\":{\"message\":\"stubbed failure\",\"type\":\"server_error\"}}".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            handler.handle(exchange);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+    private void chatCompletions(HttpExchange exchange) throws IOException, InterruptedException {
+        JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+        StubProfile current = profile;
+        String model = request.path("model").asText("gpt-4o");
+        boolean stream = request.path("stream").asBoolean(false);
+        boolean toolCall = wantsToolCall(request, current);
+        int promptTokens = request.path("messages").toString().length() / 4;
+
+        sleep(current.chatLatency().sample());
+        if (!stream) {
+            ObjectNode message = objectMapper.createObjectNode().put("role", "assistant");
+            if (toolCall) {
+                message.putNull("content");
+                message.set("tool_calls", toolCalls(current, false));
+            } else {
+                message.put("content", answer(current.completionTokens()));
+            }
+            ObjectNode response = completion(model, "chat.completion");
+            response.putArray("choices").addObject()
+                    .put("index", 0)
+                    .put("finish_reason", toolCall ? "tool_calls" : "stop")
+                    .set("message", message);
+            response.set("usage", usage(promptTokens, toolCall ? 10 : current.completionTokens()));
+            send(exchange, 200, "application/json", objectMapper.writeValueAsBytes(response));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        if (toolCall) {
+            ObjectNode delta = objectMapper.createObjectNode().put("role", "assistant");
+            delta.set("tool_calls", toolCalls(current, true));
+            writeChunk(out, model, delta, "tool_calls");
+        } else {
+            for (int i = 0; i < current.completionTokens(); i++) {
+                if (i > 0) {
+                    sleep(current.chunkInterval());
+                }
+                ObjectNode delta = objectMapper.createObjectNode().put("content", (i > 0 ? " " : "") + word(i));
+                if (i == 0) {
+                    delta.put("role", "assistant");
+                }
+                writeChunk(out, model, delta, null);
+            }
+            writeChunk(out, model, objectMapper.createObjectNode(), "stop");
+        }
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    // A tool call is answered only to the first request of a turn, never to the follow-up carrying the tool result.
+    private boolean wantsToolCall(JsonNode request, StubProfile current) {
+        JsonNode tools = request.path("tools");
+        if (!tools.isArray() || tools.isEmpty() || current.toolCallRate() <= 0) {
+            return false;
+        }
+        JsonNode messages = request.path("messages");
+        if (messages.isArray() && !messages.isEmpty()
+                && "tool".equals(messages.get(messages.size() - 1).path("role").asText())) {
+            return false;
+        }
+        boolean offered = false;
+        for (JsonNode tool : tools) {
+            offered |= current.toolName().equals(tool.path("function").path("name").asText());
+        }
+        return offered && ThreadLocalRandom.current().nextDouble() < current.toolCallRate();
+    }
+
+    private ArrayNode toolCalls(StubProfile current, boolean streamed) {
+        ArrayNode toolCalls = objectMapper.createArrayNode();
+        ObjectNode toolCall = toolCalls.addObject();
+        if (streamed) {
+            toolCall.put("index", 0);
+        }
+        toolCall.put("id", "call_" + ids.incrementAndGet()).put("type", "function");
+        toolCall.putObject("function").put("name", current.toolName()).put("arguments", current.toolArguments());
+        return toolCalls;
+    }
+
+    private void writeChunk(OutputStream out, String model, ObjectNode delta, String finishReason) throws IOException {
+        ObjectNode chunk = completion(model, "chat.completion.chunk");
+        ObjectNode choice = chunk.putArray("choices").addObject().put("index", 0);
+        choice.set("delta", delta);
+        if (finishReason == null) {
+            choice.putNull("finish_reason");
+        } else {
+            choice.put("finish_reason", finishReason);
+        }
+        out.write(("data: " + objectMapper.writeValueAsString(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void imageGenerations(HttpExchange exchange) throws IOException, InterruptedException {
+        JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+        sleep(profile.imageLatency().sample());
+        ObjectNode response = objectMapper.createObjectNode().put("created", System.currentTimeMillis() / 1000);
+        ObjectNode image = response.putArray("data").addObject();
+        if ("b64_json".equals(request.path("response_format").asText())) {
+            image.put("b64_json", Base64.getEncoder().encodeToString(PNG));
+        } else {
+            image.put("url", baseUrl() + "/files/image-" + ids.incrementAndGet() + ".png");
+        }
+        image.put("revised_prompt", request.path("prompt").asText());
+        send(exchange, 200, "application/json", objectMapper.writeValueAsBytes(response));
+    }
+
+    private void speech(HttpExchange exchange) throws IOException, InterruptedException {
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+        sleep(profile.speechLatency().sample());
+        byte[] audio = new byte[profile.speechBytes()];
+        ThreadLocalRandom.current().nextBytes(audio);
+        send(exchange, 200, "audio/mpeg", audio);
+    }
+
+    private void transcriptions(HttpExchange exchange) throws IOException, InterruptedException {
+        try (InputStream body = exchange.getRequestBody()) {
+            body.transferTo(OutputStream.nullOutputStream());
+        }
+        sleep(profile.transcriptionLatency().sample());
+        String vtt = "WEBVTT\n\n00:00:00.000 --> 00:00:02.000\n" + answer(8) + "\n";
+        send(exchange, 200, "text/plain", vtt.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ObjectNode completion(String model, String object) {
+        return objectMapper.createObjectNode()
+                .put("id", "chatcmpl-" + ids.incrementAndGet())
+                .put("object", object)
+                .put("created", System.currentTimeMillis() / 1000)
+                .put("model", model);
+    }
+
+    private ObjectNode usage(int promptTokens, int completionTokens) {
+        return objectMapper.createObjectNode()
+                .put("prompt_tokens", promptTokens)
+                .put("completion_tokens", completionTokens)
+                .put("total_tokens", promptTokens + completionTokens);
+    }
+
+    private static String answer(int words) {
+        StringBuilder answer = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                answer.append(' ');
+            }
+            answer.append(word(i));
+        }
+        return answer.toString();
+    }
+
+    private static String word(int index) {
+        return WORDS[index % WORDS.length];
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sleep(Duration duration) throws InterruptedException {
+        if (!duration.isZero() && !duration.isNegative()) {
+            Thread.sleep(duration);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
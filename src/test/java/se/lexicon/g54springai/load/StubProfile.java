@@ -0,0 +1,48 @@
+package se.lexicon.g54springai.load;
+
+import java.time.Duration;
+
+// How the OpenAI stub behaves. Every value can be overridden with a system property (-Dload.stub.<name>=...).
+public record StubProfile(
+        Latency chatLatency,        // until the complete answer, or until the first chunk when streaming
+        Duration chunkInterval,     // pause between streamed chunks
+        int completionTokens,       // words in an answer (one streamed chunk each)
+        double toolCallRate,        // share of requests offering tools that get a tool call back
+        String toolName,            // tool requested when a tool call is answered
+        String toolArguments,
+        Latency imageLatency,
+        Latency speechLatency,
+        Latency transcriptionLatency,
+        int speechBytes) {
+
+    public static StubProfile defaults() {
+        return new StubProfile(Latency.logNormal(400, 2500), Duration.ofMillis(20), 60, 0.5,
+                "fetchNames", "{}", Latency.logNormal(3000, 8000), Latency.logNormal(700, 2000),
+                Latency.logNormal(1500, 4000), 48 * 1024);
+    }
+
+    public static StubProfile instant() {
+        return new StubProfile(Latency.none(), Duration.ZERO, 20, 0.0, "fetchNames", "{}",
+                Latency.none(), Latency.none(), Latency.none(), 1024);
+    }
+
+    public static StubProfile fromSystemProperties() {
+        StubProfile defaults = defaults();
+        return new StubProfile(
+                latency("chat-latency", defaults.chatLatency()),
+                Duration.ofMillis(Long.getLong("load.stub.chunk-interval-ms", defaults.chunkInterval().toMillis())),
+                Integer.getInteger("load.stub.completion-tokens", defaults.completionTokens()),
+                Double.parseDouble(System.getProperty("load.stub.tool-call-rate", String.valueOf(defaults.toolCallRate()))),
+                System.getProperty("load.stub.tool-name", defaults.toolName()),
+                System.getProperty("load.stub.tool-arguments", defaults.toolArguments()),
+                latency("image-latency", defaults.imageLatency()),
+                latency("speech-latency", defaults.speechLatency()),
+                latency("transcription-latency", defaults.transcriptionLatency()),
+                Integer.getInteger("load.stub.speech-bytes", defaults.speechBytes()));
+    }
+
+    private static Latency latency(String name, Latency fallback) {
+        String spec = System.getProperty("load.stub." + name);
+        return spec == null ? fallback : Latency.parse(spec);
+    }
+}
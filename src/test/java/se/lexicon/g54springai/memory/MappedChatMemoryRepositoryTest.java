@@ -0,0 +1,179 @@
+package se.lexicon.g54springai.memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.content.Media;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedChatMemoryRepositoryTest {
+
+    private static final int MAGIC = 0x43484D31;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void aTornLastRecordIsDroppedAndEarlierOnesSurvive() throws Exception {
+        try (MappedChatMemoryRepository repository = open(64 * 1024)) {
+            repository.saveAll("a", List.of(new UserMessage("first")));
+            repository.saveAll("b", List.of(new UserMessage("second")));
+        }
+        // flip a payload byte of the last record: a crash in the middle of writing it
+        Path segment = segmentFiles().getFirst();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int offset = 0;
+            int last = -1;
+            while (buffer.getInt(offset) == MAGIC) {
+                last = offset;
+                offset += 12 + buffer.getInt(offset + 4);
+            }
+            buffer.put(last + 14, (byte) (buffer.get(last + 14) ^ 0xFF));
+            buffer.force();
+        }
+
+        try (MappedChatMemoryRepository repository = open(64 * 1024)) {
+            assertEquals(List.of("a"), repository.findConversationIds());
+            assertEquals("first", repository.findByConversationId("a").getFirst().getText());
+            assertTrue(repository.findByConversationId("b").isEmpty());
+            repository.saveAll("c", List.of(new UserMessage("third")));
+        }
+        try (MappedChatMemoryRepository repository = open(64 * 1024)) {
+            assertEquals(2, repository.conversationCount());
+            assertEquals("third", repository.findByConversationId("c").getFirst().getText());
+        }
+    }
+
+    @Test
+    void compactionDeletesSegmentsThatOnlyHoldOverwrittenRecords() throws Exception {
+        String padding = "x".repeat(500);
+        try (MappedChatMemoryRepository repository = open(4096)) {
+            for (int i = 0; i < 40; i++) {
+                repository.saveAll("a", List.of(new UserMessage(i + padding)));
+            }
+            // compaction runs in the background after every roll
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (segmentFiles().size() > 2 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue(segmentFiles().size() <= 2, "segments left: " + segmentFiles().size());
+            assertEquals("39" + padding, repository.findByConversationId("a").getFirst().getText());
+        }
+        try (MappedChatMemoryRepository repository = open(4096)) {
+            assertEquals(List.of("a"), repository.findConversationIds());
+            assertEquals("39" + padding, repository.findByConversationId("a").getFirst().getText());
+        }
+    }
+
+    @Test
+    void aDeletedConversationStaysDeletedAfterCompaction() throws Exception {
+        String padding = "x".repeat(500);
+        try (MappedChatMemoryRepository repository = open(4096)) {
+            repository.saveAll("gone", List.of(new UserMessage("delete me")));
+            for (int i = 0; i < 20; i++) {
+                repository.saveAll("a", List.of(new UserMessage(i + padding)));
+            }
+            repository.deleteByConversationId("gone");
+            for (int i = 20; i < 40; i++) {
+                repository.saveAll("a", List.of(new UserMessage(i + padding)));
+            }
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (segmentFiles().size() > 2 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+        }
+        try (MappedChatMemoryRepository repository = open(4096)) {
+            assertEquals(List.of("a"), repository.findConversationIds());
+            assertTrue(repository.findByConversationId("gone").isEmpty());
+        }
+    }
+
+    @Test
+    void metadataAndMediaSurviveARoundTripAndARestart() throws Exception {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("tokenCount", 12);
+        metadata.put("createdAt", 1_700_000_000_000L);
+        metadata.put("score", 0.5);
+        metadata.put("summary", true);
+        metadata.put("tags", List.of("a", "b"));
+        metadata.put("nested", Map.of("key", List.of(1, 2)));
+        Media image = Media.builder()
+                .mimeType(MimeTypeUtils.IMAGE_PNG)
+                .data(new byte[]{1, 2, 3})
+                .name("pixel")
+                .build();
+        UserMessage user = UserMessage.builder().text("look").media(List.of(image)).metadata(metadata).build();
+        AssistantMessage assistant = new AssistantMessage("calling", Map.of("finishReason", "TOOL_CALLS"),
+                List.of(new AssistantMessage.ToolCall("call-1", "function", "getNames", "{}")));
+        ToolResponseMessage tool = new ToolResponseMessage(
+                List.of(new ToolResponseMessage.ToolResponse("call-1", "getNames", "[\"Simon\"]")), Map.of("ms", 3L));
+        SystemMessage system = SystemMessage.builder().text("be brief").metadata(Map.of("source", "registry")).build();
+        List<Message> messages = List.of(system, user, assistant, tool);
+
+        try (MappedChatMemoryRepository repository = open(64 * 1024)) {
+            repository.saveAll("c", messages);
+            assertSameMessages(messages, repository.findByConversationId("c"));
+        }
+        try (MappedChatMemoryRepository repository = open(64 * 1024)) {
+            assertSameMessages(messages, repository.findByConversationId("c"));
+        }
+    }
+
+    @Test
+    void aClosedRepositoryRefusesToTouchItsUnmappedSegments() {
+        MappedChatMemoryRepository repository = open(4096);
+        repository.saveAll("a", List.of(new UserMessage("hi")));
+        repository.close();
+        assertThrows(IllegalStateException.class, () -> repository.findByConversationId("a"));
+        assertThrows(IllegalStateException.class, () -> repository.saveAll("a", List.of()));
+    }
+
+    private static void assertSameMessages(List<Message> expected, List<Message> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Message want = expected.get(i);
+            Message got = actual.get(i);
+            assertEquals(want.getMessageType(), got.getMessageType());
+            assertEquals(want.getText(), got.getText());
+            assertEquals(want.getMetadata(), got.getMetadata());
+        }
+        Media want = ((UserMessage) expected.get(1)).getMedia().getFirst();
+        Media got = ((UserMessage) actual.get(1)).getMedia().getFirst();
+        assertEquals(want.getMimeType(), got.getMimeType());
+        assertEquals(want.getName(), got.getName());
+        assertEquals(want.getId(), got.getId());
+        assertArrayEquals((byte[]) want.getData(), (byte[]) got.getData());
+        assertEquals(((AssistantMessage) expected.get(2)).getToolCalls(), ((AssistantMessage) actual.get(2)).getToolCalls());
+        assertEquals(((ToolResponseMessage) expected.get(3)).getResponses(), ((ToolResponseMessage) actual.get(3)).getResponses());
+    }
+
+    private MappedChatMemoryRepository open(int segmentBytes) {
+        return new MappedChatMemoryRepository(directory, segmentBytes, 0.5, false);
+    }
+
+    private List<Path> segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("segment-")).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package se.lexicon.g54springai.memory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedChatMemoryRepositoryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void theLeastRecentlyUsedConversationIsEvictedAboveTheCount() {
+        try (ShardedChatMemoryRepository repository = repository(1, 2, Long.MAX_VALUE, Duration.ofHours(1))) {
+            repository.saveAll("a", List.of(new UserMessage("a")));
+            repository.saveAll("b", List.of(new UserMessage("b")));
+            repository.findByConversationId("a"); // a is now more recent than b
+            repository.saveAll("c", List.of(new UserMessage("c")));
+
+            assertEquals(2, repository.conversationCount());
+            assertTrue(repository.findByConversationId("b").isEmpty());
+            assertEquals("a", repository.findByConversationId("a").getFirst().getText());
+            assertEquals(1.0, evictions("count"));
+        }
+    }
+
+    @Test
+    void theEstimatedSizeIsCappedButTheConversationJustSavedIsKept() {
+        String text = "x".repeat(1000);
+        try (ShardedChatMemoryRepository repository = repository(1, 1000, 5000, Duration.ofHours(1))) {
+            for (int i = 0; i < 10; i++) {
+                repository.saveAll("c" + i, List.of(new UserMessage(text)));
+            }
+            assertTrue(repository.estimatedBytes() <= 5000, "bytes: " + repository.estimatedBytes());
+            assertEquals(2, repository.conversationCount());
+            assertEquals(8.0, evictions("bytes"));
+
+            // alone over the cap: it stays, there is nothing else to evict it for
+            repository.saveAll("big", List.of(new UserMessage("y".repeat(10_000))));
+            assertEquals(List.of("big"), repository.findConversationIds());
+        }
+    }
+
+    @Test
+    void theCapHoldsOverAllShards() {
+        try (ShardedChatMemoryRepository repository = repository(8, 10, Long.MAX_VALUE, Duration.ofHours(1))) {
+            for (int i = 0; i < 200; i++) {
+                repository.saveAll("c" + i, List.of(new UserMessage("m" + i)));
+                assertTrue(repository.conversationCount() <= 10);
+                assertEquals("m" + i, repository.findByConversationId("c" + i).getFirst().getText());
+            }
+            assertEquals(10, repository.conversationCount());
+            assertEquals(10, repository.findConversationIds().size());
+        }
+    }
+
+    @Test
+    void idleConversationsAreSwept() throws Exception {
+        try (ShardedChatMemoryRepository repository = repository(4, 1000, Long.MAX_VALUE, Duration.ofMillis(50))) {
+            repository.saveAll("a", List.of(new UserMessage("a")));
+            repository.saveAll("b", List.of(new UserMessage("b")));
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (repository.conversationCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, repository.conversationCount());
+            assertEquals(0, repository.estimatedBytes());
+            assertEquals(2.0, evictions("idle"));
+        }
+    }
+
+    @Test
+    void deletingAndOverwritingKeepTheTotalsRight() {
+        try (ShardedChatMemoryRepository repository = repository(4, 1000, Long.MAX_VALUE, Duration.ofHours(1))) {
+            repository.saveAll("a", List.of(new UserMessage("short")));
+            repository.saveAll("a", List.of(new UserMessage("much longer"), new UserMessage("and more")));
+            repository.saveAll("b", List.of(new UserMessage("b")));
+            repository.deleteByConversationId("b");
+            repository.deleteByConversationId("unknown");
+
+            assertEquals(1, repository.conversationCount());
+            repository.deleteByConversationId("a");
+            assertEquals(0, repository.conversationCount());
+            assertEquals(0, repository.estimatedBytes());
+        }
+    }
+
+    private ShardedChatMemoryRepository repository(int shards, long maxConversations, long maxBytes, Duration idleTtl) {
+        return new ShardedChatMemoryRepository(shards, idleTtl, maxConversations, maxBytes, Duration.ofMillis(10),
+                meterRegistry);
+    }
+
+    private double evictions(String cause) {
+        return meterRegistry.counter("chat.memory.evictions", "cause", cause).count();
+    }
+}
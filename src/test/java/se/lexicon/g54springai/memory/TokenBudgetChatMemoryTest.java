@@ -0,0 +1,168 @@
+package se.lexicon.g54springai.memory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import se.lexicon.g54springai.service.AdaptiveConcurrencyLimit;
+import se.lexicon.g54springai.service.UpstreamCallGuard;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBudgetChatMemoryTest {
+
+    private static final String CONVERSATION = "conversation-1";
+    private static final JTokkitTokenCountEstimator ESTIMATOR = new JTokkitTokenCountEstimator();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InMemoryChatMemoryRepository repository = new InMemoryChatMemoryRepository();
+    private final UpstreamCallGuard guard = new UpstreamCallGuard(4, Duration.ofSeconds(5),
+            AdaptiveConcurrencyLimit.Settings.fixed(4, 4), meterRegistry);
+
+    @Test
+    void withoutASummarizerOnlyTheNewestMessagesWithinTheBudgetAreKept() {
+        try (TokenBudgetChatMemory chatMemory = memory(100, 100, null)) {
+            for (int i = 0; i < 20; i++) {
+                chatMemory.add(CONVERSATION, List.of(new UserMessage("message number " + i + " about the weather")));
+            }
+            List<Message> stored = repository.findByConversationId(CONVERSATION);
+            assertTrue(tokens(stored) <= 100, "tokens: " + tokens(stored));
+            assertEquals("message number 19 about the weather", stored.getLast().getText());
+            assertTrue(stored.size() < 20);
+            assertEquals(stored, chatMemory.get(CONVERSATION));
+        }
+    }
+
+    @Test
+    void getReturnsTheNewestMessagesThatFitInTheBudget() {
+        try (TokenBudgetChatMemory chatMemory = memory(60, 1000, new SummaryModel(null))) {
+            for (int i = 0; i < 10; i++) {
+                chatMemory.add(CONVERSATION, List.of(new UserMessage("message number " + i + " about the weather")));
+            }
+            List<Message> window = chatMemory.get(CONVERSATION);
+            assertTrue(tokens(window) <= 60, "tokens: " + tokens(window));
+            assertEquals("message number 9 about the weather", window.getLast().getText());
+            assertTrue(window.size() < 10);
+        }
+    }
+
+    @Test
+    void theCallersMessagesAreNotModified() {
+        try (TokenBudgetChatMemory chatMemory = memory(100, 100, null)) {
+            UserMessage question = new UserMessage("What is the capital of Sweden?");
+            AssistantMessage answer = new AssistantMessage("Stockholm.");
+            chatMemory.add(CONVERSATION, List.of(question, answer));
+
+            assertFalse(question.getMetadata().containsKey("tokenCount"));
+            assertFalse(answer.getMetadata().containsKey("tokenCount"));
+            List<Message> stored = repository.findByConversationId(CONVERSATION);
+            assertEquals(List.of(MessageType.USER, MessageType.ASSISTANT),
+                    stored.stream().map(Message::getMessageType).toList());
+            assertEquals(cost(question), stored.get(0).getMetadata().get("tokenCount"));
+        }
+    }
+
+    @Test
+    void olderMessagesAreFoldedIntoASummaryThroughTheGuard() throws Exception {
+        SummaryModel summarizer = new SummaryModel("The user talked about the weather.");
+        try (TokenBudgetChatMemory chatMemory = memory(60, 1000, summarizer)) {
+            for (int i = 0; i < 10; i++) {
+                chatMemory.add(CONVERSATION, List.of(new UserMessage("message number " + i + " about the weather")));
+            }
+            await(() -> isSummary(repository.findByConversationId(CONVERSATION).getFirst()));
+
+            List<Message> window = chatMemory.get(CONVERSATION);
+            assertTrue(window.getFirst().getText().endsWith("The user talked about the weather."));
+            assertEquals("message number 9 about the weather", window.getLast().getText());
+            // the summary went through the admission control of its model
+            assertNotNull(meterRegistry.find("upstream.admission.limit")
+                    .tag("operation", "chat.memory.summary").tag("model", "summary-model").gauge());
+        }
+    }
+
+    @Test
+    void whenSummariesFailTheStoredConversationStillStaysUnderTheHardCap() throws Exception {
+        SummaryModel summarizer = new SummaryModel(null);
+        try (TokenBudgetChatMemory chatMemory = memory(40, 120, summarizer)) {
+            for (int i = 0; i < 30; i++) {
+                chatMemory.add(CONVERSATION, List.of(new UserMessage("message number " + i + " about the weather")));
+                List<Message> stored = repository.findByConversationId(CONVERSATION);
+                assertTrue(tokens(stored) <= 120, "tokens: " + tokens(stored));
+            }
+            await(() -> summarizer.calls.get() > 0);
+            List<Message> stored = repository.findByConversationId(CONVERSATION);
+            assertFalse(isSummary(stored.getFirst()));
+            assertEquals("message number 29 about the weather", stored.getLast().getText());
+
+            // a failed summary does not block the next one
+            int calls = summarizer.calls.get();
+            Thread.sleep(50);
+            chatMemory.add(CONVERSATION, List.of(new UserMessage("one more")));
+            await(() -> summarizer.calls.get() > calls);
+        }
+    }
+
+    private TokenBudgetChatMemory memory(int maxTokens, int maxStoredTokens, ChatModel summarizer) {
+        ChatOptions summaryOptions = ChatOptions.builder().model("summary-model").build();
+        return new TokenBudgetChatMemory(repository, ESTIMATOR, maxTokens, maxStoredTokens, summarizer, summaryOptions,
+                1, guard, meterRegistry);
+    }
+
+    // same estimate as the memory: text plus the per-message overhead
+    private static int cost(Message message) {
+        return 4 + ESTIMATOR.estimate(message.getText());
+    }
+
+    private static int tokens(List<Message> messages) {
+        return messages.stream().mapToInt(TokenBudgetChatMemoryTest::cost).sum();
+    }
+
+    private static boolean isSummary(Message message) {
+        return message.getMessageType() == MessageType.SYSTEM && message.getText().startsWith("Summary of the earlier");
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    // answers with the given summary, or fails when it is null
+    private static final class SummaryModel implements ChatModel {
+
+        private final String summary;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        SummaryModel(String summary) {
+            this.summary = summary;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            calls.incrementAndGet();
+            if (summary == null) {
+                throw new IllegalStateException("summary model unavailable");
+            }
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(summary))));
+        }
+    }
+}
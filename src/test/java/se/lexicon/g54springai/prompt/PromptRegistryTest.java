@@ -0,0 +1,55 @@
+package se.lexicon.g54springai.prompt;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PromptRegistryTest {
+
+    @Test
+    void buildsPromptsWithTheSystemMessageFirst() {
+        try (PromptRegistry registry = new PromptRegistry(new ClassPathResource("prompts.yml"), Duration.ZERO)) {
+            ChatPromptTemplate lexbot = registry.chat(PromptRegistry.LEXBOT);
+            Prompt first = lexbot.prompt(new UserMessage("first"));
+            Prompt second = lexbot.prompt(new UserMessage("second"));
+
+            assertSame(first.getInstructions().get(0), second.getInstructions().get(0));
+            assertEquals("gpt-4.1-mini", first.getOptions().getModel());
+            assertEquals(0.3, first.getOptions().getTemperature());
+            assertEquals(500, registry.chat(PromptRegistry.CHAT_MEMORY).options().getMaxTokens());
+            assertEquals("dall-e-3", registry.image(PromptRegistry.IMAGE).model());
+            assertEquals(true, registry.image(PromptRegistry.IMAGE).prompt("a cat", "url")
+                    .getInstructions().get(0).getText().endsWith("Subject: a cat\n"));
+        }
+    }
+
+    @Test
+    void reloadKeepsTheCurrentTemplatesWhenTheFileIsInvalid(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("prompts.yml");
+        try (InputStream defaults = new ClassPathResource("prompts.yml").getInputStream()) {
+            Files.copy(defaults, file);
+        }
+        try (PromptRegistry registry = new PromptRegistry(new FileSystemResource(file), Duration.ZERO)) {
+            Files.writeString(file, Files.readString(file).replace("named LEXBOT", "named LEXI"));
+            registry.reload();
+            assertEquals("You are ans AI Assistant named LEXI", registry.chat(PromptRegistry.LEXBOT).systemText());
+
+            Files.writeString(file, "prompts:\n  chat:\n    lexbot:\n      system: only one template\n");
+            assertThrows(IllegalStateException.class, registry::reload);
+            assertEquals("You are ans AI Assistant named LEXI", registry.chat(PromptRegistry.LEXBOT).systemText());
+        }
+    }
+}
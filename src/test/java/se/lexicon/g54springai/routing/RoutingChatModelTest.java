@@ -0,0 +1,165 @@
+package se.lexicon.g54springai.routing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.retry.support.RetryTemplate;
+import se.lexicon.g54springai.load.Latency;
+import se.lexicon.g54springai.load.OpenAiStubServer;
+import se.lexicon.g54springai.load.StubProfile;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Two endpoints behind one RoutingChatModel: in-process stubs with a fixed latency where the test depends on
+// latency (a real client's first call on a fresh JVM takes seconds), local OpenAI stubs otherwise.
+class RoutingChatModelTest {
+
+    private static final String CHAT = "/v1/chat/completions";
+    private static final RoutingProperties.Ejection EJECTION =
+            new RoutingProperties.Ejection(3, 3.0, Duration.ofMinutes(1), Duration.ofMinutes(5), 50);
+    private static final RoutingProperties.Hedging NO_HEDGING =
+            new RoutingProperties.Hedging(false, 0.95, Duration.ofSeconds(2), Duration.ofMillis(50));
+
+    @Test
+    void sendsMostCallsToTheFasterEndpoint() {
+        StubModel fast = new StubModel("fast", 10);
+        StubModel slow = new StubModel("slow", 150);
+        try (RoutingChatModel router = router(fast, slow, NO_HEDGING, new SimpleMeterRegistry())) {
+            for (int i = 0; i < 40; i++) {
+                router.call(new Prompt("Question " + i));
+            }
+            assertTrue(fast.calls.get() > 3 * slow.calls.get(), "fast " + fast.calls + ", slow " + slow.calls);
+        }
+    }
+
+    @Test
+    void ejectsAnEndpointAfterConsecutiveFailures() {
+        try (OpenAiStubServer healthy = OpenAiStubServer.start(profile(5));
+             OpenAiStubServer failing = OpenAiStubServer.start(profile(5));
+             RoutingChatModel router = router(healthy, failing, NO_HEDGING)) {
+            failing.failStatus(500);
+            int failures = 0;
+            for (int i = 0; i < 40; i++) {
+                try {
+                    router.call(new Prompt("Question " + i));
+                } catch (RuntimeException e) {
+                    failures++;
+                }
+            }
+            // once ejected it gets no more calls until the ejection time is over
+            assertEquals(failing.requestCount(CHAT), failures);
+            assertTrue(failures <= EJECTION.consecutiveFailures(), failures + " failures");
+            assertEquals(40 - failures, healthy.requestCount(CHAT));
+        }
+    }
+
+    @Test
+    void hedgesAroundTheSlowEndpointAndLearnsItsLatencyFromTheLostCalls() {
+        RoutingProperties.Hedging hedging =
+                new RoutingProperties.Hedging(true, 0.95, Duration.ofMillis(100), Duration.ofMillis(50));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StubModel fast = new StubModel("fast", 20);
+        StubModel slow = new StubModel("slow", 1000);
+        try (RoutingChatModel router = router(fast, slow, hedging, meterRegistry)) {
+            // until the slow endpoint was the primary once; the fast endpoint answers every call, directly or as hedge
+            for (int i = 0; i < 50 && slow.calls.get() == 0; i++) {
+                assertEquals("fast", router.call(new Prompt("Question " + i)).getResult().getOutput().getText());
+            }
+            assertEquals(1, slow.calls.get());
+            assertEquals(1, meterRegistry.get("model.hedge.requests").tag("outcome", "won").counter().count());
+
+            // the cancelled call ran for at least the hedge delay: the slow endpoint no longer gets the average latency
+            await(() -> meterRegistry.find("model.endpoint.calls").tag("endpoint", "second").tag("outcome", "cancelled")
+                    .counter() != null);
+            assertTrue(meterRegistry.get("model.endpoint.latency").tag("endpoint", "second").gauge().value() >= 100);
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals("fast", router.call(new Prompt("Question " + i)).getResult().getOutput().getText());
+            }
+            // every call sent to the slow endpoint was hedged, and the hedge won
+            assertEquals(slow.calls.get(), meterRegistry.get("model.hedge.requests").tag("outcome", "won").counter().count());
+            assertFalse(meterRegistry.find("model.hedge.requests").tag("outcome", "lost").counters().stream()
+                    .anyMatch(counter -> counter.count() > 0));
+        }
+    }
+
+    private static RoutingChatModel router(OpenAiStubServer first, OpenAiStubServer second,
+                                           RoutingProperties.Hedging hedging) {
+        return router(model(first), model(second), hedging, new SimpleMeterRegistry());
+    }
+
+    private static RoutingChatModel router(ChatModel first, ChatModel second, RoutingProperties.Hedging hedging,
+                                           SimpleMeterRegistry meterRegistry) {
+        Map<String, ChatModel> models = new LinkedHashMap<>();
+        models.put("first", first);
+        models.put("second", second);
+        return new RoutingChatModel(models, EJECTION, hedging, meterRegistry);
+    }
+
+    private static ChatModel model(OpenAiStubServer stub) {
+        return OpenAiChatModel.builder()
+                .openAiApi(OpenAiApi.builder().baseUrl(stub.baseUrl()).apiKey("stub-key").build())
+                .defaultOptions(OpenAiChatOptions.builder().model("gpt-4o").build())
+                .retryTemplate(RetryTemplate.builder().maxAttempts(1).build())
+                .build();
+    }
+
+    private static StubProfile profile(long latencyMillis) {
+        return new StubProfile(Latency.fixed(latencyMillis), Duration.ZERO, 5, 0.0, "fetchNames", "{}",
+                Latency.none(), Latency.none(), Latency.none(), 16);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 5 s");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // Answers with its name after a fixed latency; an interrupted (cancelled) call fails.
+    private static final class StubModel implements ChatModel {
+
+        final String name;
+        final long latencyMillis;
+        final AtomicInteger calls = new AtomicInteger();
+
+        StubModel(String name, long latencyMillis) {
+            this.name = name;
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Call cancelled", e);
+            }
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(name))));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package se.lexicon.g54springai.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void growsWhileSaturatedAndBacksOffOnOverload() throws InterruptedException {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+                new AdaptiveConcurrencyLimit.Settings(2, 1, 10, 0, 0.5, 2.0));
+
+        // two full windows of fast calls: the limit grows by about one per window
+        for (int i = 0; i < 4; i++) {
+            assertEquals(AdaptiveConcurrencyLimit.Admission.ADMITTED, limit.acquire(System.nanoTime()));
+            assertEquals(AdaptiveConcurrencyLimit.Admission.ADMITTED, limit.acquire(System.nanoTime()));
+            limit.release(AdaptiveConcurrencyLimit.Outcome.SUCCESS, LATENCY);
+            limit.release(AdaptiveConcurrencyLimit.Outcome.SUCCESS, LATENCY);
+        }
+        assertTrue(limit.limit() > 2.5, "limit " + limit.limit());
+
+        double before = limit.limit();
+        assertTrue(limit.tryAcquire());
+        limit.release(AdaptiveConcurrencyLimit.Outcome.OVERLOADED, 0);
+        assertEquals(before * 0.5, limit.limit(), 1e-9);
+        // a second 429 of the same burst does not shrink it again
+        assertTrue(limit.tryAcquire());
+        limit.release(AdaptiveConcurrencyLimit.Outcome.OVERLOADED, 0);
+        assertEquals(before * 0.5, limit.limit(), 1e-9);
+    }
+
+    @Test
+    void oneFastOutlierDoesNotMakeNormalCallsLookSlow() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+                new AdaptiveConcurrencyLimit.Settings(4, 1, 10, 0, 0.5, 2.0));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limit.tryAcquire());
+            limit.release(AdaptiveConcurrencyLimit.Outcome.SUCCESS, LATENCY);
+        }
+        // e.g. an empty answer
+        assertTrue(limit.tryAcquire());
+        limit.release(AdaptiveConcurrencyLimit.Outcome.SUCCESS, LATENCY / 10);
+
+        assertTrue(limit.tryAcquire());
+        limit.release(AdaptiveConcurrencyLimit.Outcome.SUCCESS, LATENCY);
+        assertEquals(4, limit.limit(), 1e-9);
+    }
+
+    @Test
+    void backsOffWithoutACall() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+                new AdaptiveConcurrencyLimit.Settings(4, 1, 10, 0, 0.5, 2.0));
+        limit.backOff();
+        assertEquals(2, limit.limit(), 1e-9);
+        assertEquals(0, limit.inFlight());
+    }
+
+    @Test
+    void queuesUpToTheDeadlineAndRejectsBeyondTheQueue() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(AdaptiveConcurrencyLimit.Settings.fixed(1, 1));
+        assertTrue(limit.tryAcquire());
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<AdaptiveConcurrencyLimit.Admission> queued = executor.submit(
+                    () -> limit.acquire(System.nanoTime() + TimeUnit.SECONDS.toNanos(5)));
+            while (limit.waiting() == 0) {
+                Thread.onSpinWait();
+            }
+            assertEquals(AdaptiveConcurrencyLimit.Admission.QUEUE_FULL,
+                    limit.acquire(System.nanoTime() + TimeUnit.SECONDS.toNanos(5)));
+            assertFalse(limit.tryAcquire());
+
+            limit.release(AdaptiveConcurrencyLimit.Outcome.SUCCESS, LATENCY);
+            assertEquals(AdaptiveConcurrencyLimit.Admission.ADMITTED, queued.get());
+        }
+
+        AdaptiveConcurrencyLimit full = new AdaptiveConcurrencyLimit(AdaptiveConcurrencyLimit.Settings.fixed(1, 4));
+        assertTrue(full.tryAcquire());
+        assertEquals(AdaptiveConcurrencyLimit.Admission.TIMED_OUT,
+                full.acquire(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20)));
+    }
+}
@@ -0,0 +1,67 @@
+package se.lexicon.g54springai.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BatchChatServiceImplTest {
+
+    @Test
+    void answersEveryQuestionWithinTheConcurrencyLimit() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        OpenAIService openAIService = mock(OpenAIService.class);
+        when(openAIService.processSimpleChatQuery(anyString(), anyBoolean())).thenAnswer(invocation -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                String question = invocation.getArgument(0);
+                if (question.equals("fail")) {
+                    throw new RuntimeException("Error processing chat query: boom");
+                }
+                Thread.sleep(20);
+                return "answer to " + question;
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+
+        try (BatchChatServiceImpl batchService = new BatchChatServiceImpl(openAIService, 3, 100)) {
+            List<String> questions = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                questions.add("q" + i);
+            }
+            questions.set(5, "fail");
+            questions.set(7, " ");
+
+            List<BatchChatResult> results = batchService.processBatch(questions, false).collectList().block();
+
+            assertEquals(20, results.size());
+            List<BatchChatResult> ordered = results.stream().sorted(Comparator.comparingInt(BatchChatResult::index)).toList();
+            assertEquals("answer to q0", ordered.get(0).answer());
+            assertNull(ordered.get(0).error());
+            assertEquals("Error processing chat query: boom", ordered.get(5).error());
+            assertEquals("Question cannot be blank", ordered.get(7).error());
+            assertTrue(peak.get() <= 3);
+        }
+    }
+
+    @Test
+    void rejectsEmptyAndOversizedBatches() {
+        try (BatchChatServiceImpl batchService = new BatchChatServiceImpl(mock(OpenAIService.class), 2, 2)) {
+            assertThrows(IllegalArgumentException.class, () -> batchService.processBatch(List.of(), false));
+            assertThrows(IllegalArgumentException.class, () -> batchService.processBatch(List.of("a", "b", "c"), false));
+        }
+    }
+}
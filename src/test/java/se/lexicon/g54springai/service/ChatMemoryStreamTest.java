@@ -0,0 +1,154 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.core.io.ClassPathResource;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import se.lexicon.g54springai.prompt.PromptRegistry;
+import se.lexicon.g54springai.store.IndexedNameStore;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The streaming chat-memory endpoints of both services: the exchange is stored once, when the answer is complete.
+class ChatMemoryStreamTest {
+
+    private static final String CONVERSATION = "conversation-1";
+
+    @Test
+    void storesTheExchangeWhenTheStreamCompletes() {
+        for (Variant variant : Variant.values()) {
+            ChatMemory chatMemory = MessageWindowChatMemory.builder().build();
+            Flux<String> answer = variant.open(new StreamingStubModel(tokens("Hi ", "there!")), chatMemory);
+
+            StepVerifier.create(answer).expectNext("Hi ", "there!").verifyComplete();
+
+            List<Message> stored = chatMemory.get(CONVERSATION);
+            assertEquals(2, stored.size(), variant.name());
+            assertInstanceOf(UserMessage.class, stored.get(0));
+            assertEquals("Hello", stored.get(0).getText());
+            assertInstanceOf(AssistantMessage.class, stored.get(1));
+            assertEquals("Hi there!", stored.get(1).getText());
+        }
+    }
+
+    @Test
+    void storesNothingWhenTheStreamFails() {
+        for (Variant variant : Variant.values()) {
+            ChatMemory chatMemory = MessageWindowChatMemory.builder().build();
+            Flux<ChatResponse> failing = tokens("Hi ").concatWith(Flux.error(new IllegalStateException("connection reset")));
+            Flux<String> answer = variant.open(new StreamingStubModel(failing), chatMemory);
+
+            StepVerifier.create(answer).expectNext("Hi ").expectErrorMessage("connection reset").verify();
+
+            assertTrue(chatMemory.get(CONVERSATION).isEmpty(), variant.name());
+        }
+    }
+
+    @Test
+    void storesNothingWhenTheClientCancels() {
+        for (Variant variant : Variant.values()) {
+            ChatMemory chatMemory = MessageWindowChatMemory.builder().build();
+            Flux<String> answer = variant.open(new StreamingStubModel(tokens("Hi ", "there", "!")), chatMemory);
+
+            StepVerifier.create(answer, 1).expectNext("Hi ").thenCancel().verify();
+
+            assertTrue(chatMemory.get(CONVERSATION).isEmpty(), variant.name());
+        }
+    }
+
+    @Test
+    void doesNotTouchTheMemoryBeforeSubscription() {
+        ChatMemory chatMemory = MessageWindowChatMemory.builder().build();
+        Variant.OPEN_AI_SERVICE.open(new StreamingStubModel(tokens("Hi")), chatMemory);
+        Variant.CHAT_CLIENT_SERVICE.open(new StreamingStubModel(tokens("Hi")), chatMemory);
+
+        assertTrue(chatMemory.get(CONVERSATION).isEmpty());
+    }
+
+    private enum Variant {
+        OPEN_AI_SERVICE((model, chatMemory) -> openAIService(model, chatMemory).chatMemoryStream("Hello", CONVERSATION)),
+        CHAT_CLIENT_SERVICE((model, chatMemory) -> chatClientService(model, chatMemory).chatMemoryStream("Hello", CONVERSATION));
+
+        private final BiFunction<ChatModel, ChatMemory, Flux<String>> stream;
+
+        Variant(BiFunction<ChatModel, ChatMemory, Flux<String>> stream) {
+            this.stream = stream;
+        }
+
+        Flux<String> open(ChatModel model, ChatMemory chatMemory) {
+            return stream.apply(model, chatMemory);
+        }
+    }
+
+    private static OpenAIService openAIService(ChatModel chatModel, ChatMemory chatMemory) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new OpenAIServiceImpl(chatModel, null, null, null, chatMemory,
+                new ChatResponseCache(false, 1, Duration.ofMinutes(1), meterRegistry),
+                new RequestCoalescer(meterRegistry),
+                guard(meterRegistry),
+                new ModelCallMetrics(meterRegistry),
+                new PromptRegistry(new ClassPathResource("prompts.yml"), Duration.ZERO),
+                null, null, null, false, false, 2);
+    }
+
+    private static ChatClientService chatClientService(ChatModel chatModel, ChatMemory chatMemory) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new ChatClientServiceImpl(ChatClient.builder(chatModel), chatMemory,
+                new AppToolCalling(new IndexedNameStore(), 25, 2000, 100),
+                new PromptRegistry(new ClassPathResource("prompts.yml"), Duration.ZERO),
+                guard(meterRegistry),
+                new ModelCallMetrics(meterRegistry),
+                ObservationRegistry.NOOP);
+    }
+
+    private static UpstreamCallGuard guard(SimpleMeterRegistry meterRegistry) {
+        return new UpstreamCallGuard(8, Duration.ofSeconds(5), AdaptiveConcurrencyLimit.Settings.fixed(8, 8), meterRegistry);
+    }
+
+    private static Flux<ChatResponse> tokens(String... tokens) {
+        return Flux.fromArray(tokens).map(token -> new ChatResponse(List.of(new Generation(new AssistantMessage(token)))));
+    }
+
+    private static class StreamingStubModel implements ChatModel {
+
+        private final Flux<ChatResponse> responses;
+
+        StreamingStubModel(Flux<ChatResponse> responses) {
+            this.responses = responses;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            throw new UnsupportedOperationException("Only the streaming endpoints are tested here");
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return responses;
+        }
+
+        @Override
+        public ChatOptions getDefaultOptions() {
+            return ChatOptions.builder().model("stub-model").build();
+        }
+    }
+}
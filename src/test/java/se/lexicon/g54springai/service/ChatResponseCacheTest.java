@@ -0,0 +1,86 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ChatResponseCacheTest {
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntryBeyondMaxEntries() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ChatResponseCache cache = new ChatResponseCache(true, 2, Duration.ofMinutes(10), meterRegistry);
+        cache.put(key("a"), response("A"));
+        cache.put(key("b"), response("B"));
+        // reading "a" makes "b" the least recently used
+        assertNotNull(cache.get(key("a")));
+        cache.put(key("c"), response("C"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(key("a")));
+        assertNull(cache.get(key("b")));
+        assertNotNull(cache.get(key("c")));
+        assertEquals(1.0, meterRegistry.counter("chat.cache.evictions", "cause", "size").count());
+    }
+
+    @Test
+    void dropsExpiredEntries() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // expires as soon as it is stored
+        ChatResponseCache cache = new ChatResponseCache(true, 10, Duration.ZERO, meterRegistry);
+        cache.put(key("a"), response("A"));
+
+        assertNull(cache.get(key("a")));
+        assertEquals(0, cache.size());
+        assertEquals(1.0, meterRegistry.counter("chat.cache.evictions", "cause", "expired").count());
+    }
+
+    @Test
+    void callsUpstreamOnceAndRefreshesOnBypass() {
+        ChatResponseCache cache = new ChatResponseCache(true, 10, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        AtomicInteger calls = new AtomicInteger();
+
+        ChatResponse first = cache.getOrCall(key("a"), false, () -> response("answer " + calls.incrementAndGet()));
+        assertSame(first, cache.getOrCall(key("a"), false, () -> response("answer " + calls.incrementAndGet())));
+        assertEquals(1, calls.get());
+
+        ChatResponse fresh = cache.getOrCall(key("a"), true, () -> response("answer " + calls.incrementAndGet()));
+        assertEquals(2, calls.get());
+        assertSame(fresh, cache.getOrCall(key("a"), false, () -> response("answer " + calls.incrementAndGet())));
+    }
+
+    @Test
+    void neverCachesEmptyResponses() {
+        ChatResponseCache cache = new ChatResponseCache(true, 10, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        cache.getOrCall(key("a"), false, () -> new ChatResponse(List.of()));
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void normalizesTheQuestionInTheKey() {
+        assertEquals(key("What is  Lexicon?"), key("  What is\tLexicon? "));
+        // case can change the meaning, e.g. an acronym or an identifier
+        assertNotEquals(key("What is LIFO?"), key("What is lifo?"));
+    }
+
+    private static ChatRequestKey key(String prompt) {
+        return ChatRequestKey.of(prompt, null, "gpt-4.1-mini", 0.7);
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+}
@@ -0,0 +1,118 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.core.io.ClassPathResource;
+import se.lexicon.g54springai.prompt.PromptRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Compares sustained concurrent requests through OpenAIServiceImpl on a fixed platform thread pool
+// (standing in for the Tomcat worker pool) against one virtual thread per request, using a local stub model.
+class ExecutionModeComparisonTest {
+
+    private static final int REQUESTS = 400;
+    private static final int PLATFORM_POOL_SIZE = 50;
+    private static final Duration MODEL_LATENCY = Duration.ofMillis(100);
+
+    @Test
+    void virtualThreadsSustainMoreConcurrentRequestsThanPlatformPool() throws Exception {
+        StubChatModel stubModel = new StubChatModel(MODEL_LATENCY);
+        OpenAIService service = newService(stubModel, REQUESTS);
+
+        try (ExecutorService platform = Executors.newFixedThreadPool(PLATFORM_POOL_SIZE)) {
+            runRequests(service, platform);
+        }
+        int platformPeak = stubModel.peakConcurrency.getAndSet(0);
+
+        try (ExecutorService virtual = Executors.newVirtualThreadPerTaskExecutor()) {
+            runRequests(service, virtual);
+        }
+        int virtualPeak = stubModel.peakConcurrency.get();
+
+        // concurrency, not wall-clock time: the peak does not depend on how busy the machine is
+        assertTrue(platformPeak <= PLATFORM_POOL_SIZE, "platform peak " + platformPeak);
+        assertTrue(virtualPeak > PLATFORM_POOL_SIZE, "virtual peak " + virtualPeak);
+    }
+
+    @Test
+    void upstreamCallGuardBoundsConcurrencyOnVirtualThreads() throws Exception {
+        int maxConcurrentCalls = 20;
+        StubChatModel stubModel = new StubChatModel(MODEL_LATENCY);
+        OpenAIService service = newService(stubModel, maxConcurrentCalls);
+
+        try (ExecutorService virtual = Executors.newVirtualThreadPerTaskExecutor()) {
+            runRequests(service, virtual);
+        }
+
+        assertEquals(REQUESTS, stubModel.calls.get());
+        assertTrue(stubModel.peakConcurrency.get() <= maxConcurrentCalls);
+    }
+
+    private static OpenAIService newService(ChatModel chatModel, int maxConcurrentCalls) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new OpenAIServiceImpl(chatModel, null, null, null,
+                MessageWindowChatMemory.builder().build(),
+                new ChatResponseCache(false, 1, Duration.ofMinutes(1), meterRegistry),
+                new RequestCoalescer(meterRegistry),
+                new UpstreamCallGuard(maxConcurrentCalls, Duration.ofSeconds(30),
+                        AdaptiveConcurrencyLimit.Settings.fixed(maxConcurrentCalls, Integer.MAX_VALUE), meterRegistry),
+                new ModelCallMetrics(meterRegistry),
+                new PromptRegistry(new ClassPathResource("prompts.yml"), Duration.ZERO),
+                new MediaArchiver("target/generated-media", 16, 1, meterRegistry), null, null, false, false, 2);
+    }
+
+    private static void runRequests(OpenAIService service, ExecutorService executor) throws Exception {
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            String question = "Question number " + i; // distinct, so nothing is coalesced
+            futures.add(executor.submit(() -> service.processSimpleChatQuery(question)));
+        }
+        for (Future<String> future : futures) {
+            assertEquals("stub answer", future.get());
+        }
+    }
+
+    // Blocks for a fixed latency like a real upstream call and records the observed concurrency.
+    private static class StubChatModel implements ChatModel {
+
+        private final Duration latency;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peakConcurrency = new AtomicInteger();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        StubChatModel(Duration latency) {
+            this.latency = latency;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            calls.incrementAndGet();
+            int current = inFlight.incrementAndGet();
+            peakConcurrency.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("stub answer"))));
+        }
+    }
+}
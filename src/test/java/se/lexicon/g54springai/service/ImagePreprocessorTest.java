@@ -0,0 +1,96 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.MimeTypeUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImagePreprocessorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ImagePreprocessor preprocessor = new ImagePreprocessor(true, 512, 0.85f, 1, 4, meterRegistry);
+
+    @AfterEach
+    void shutdown() {
+        preprocessor.shutdown();
+    }
+
+    @Test
+    void scalesDownLargeImagesAndDetectsTheRealFormat() throws IOException {
+        // a PNG upload without transparency comes back as a smaller JPEG within the maximum size
+        byte[] png = encode(picture(3000, 2000, BufferedImage.TYPE_INT_RGB), "png");
+
+        ImagePreprocessor.PreparedImage prepared = preprocessor.prepare(png);
+
+        BufferedImage result = ImageIO.read(new ByteArrayInputStream(prepared.data()));
+        assertEquals(MimeTypeUtils.IMAGE_JPEG, prepared.mimeType());
+        assertEquals(512, result.getWidth());
+        assertEquals(341, result.getHeight());
+        assertTrue(prepared.savedBytes() > 0);
+        assertEquals(prepared.savedBytes(), meterRegistry.get("image.preprocess.saved").summary().totalAmount(), 0.5);
+    }
+
+    @Test
+    void keepsTransparencyAndSmallImages() throws IOException {
+        byte[] transparent = encode(picture(1024, 1024, BufferedImage.TYPE_INT_ARGB), "png");
+        ImagePreprocessor.PreparedImage scaled = preprocessor.prepare(transparent);
+        assertEquals(MimeTypeUtils.IMAGE_PNG, scaled.mimeType());
+        assertTrue(ImageIO.read(new ByteArrayInputStream(scaled.data())).getColorModel().hasAlpha());
+
+        // nothing to gain from re-encoding a tiny PNG: the original bytes are kept
+        byte[] small = encode(picture(16, 16, BufferedImage.TYPE_INT_RGB), "png");
+        ImagePreprocessor.PreparedImage kept = preprocessor.prepare(small);
+        assertEquals(MimeTypeUtils.IMAGE_PNG, kept.mimeType());
+        assertArrayEquals(small, kept.data());
+    }
+
+    @Test
+    void rejectsContentThatIsNoImage() {
+        assertThrows(IllegalArgumentException.class,
+                () -> preprocessor.prepare("%PDF-1.7 not an image".getBytes()));
+    }
+
+    @Test
+    void readsExifOrientation() {
+        // SOI, APP1 with a little-endian TIFF header and one IFD0 entry: Orientation (0x0112) = 6
+        byte[] jpeg = {
+                (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1, 0x00, 0x22,
+                'E', 'x', 'i', 'f', 0, 0,
+                'I', 'I', 0x2A, 0x00, 0x08, 0x00, 0x00, 0x00,
+                0x01, 0x00,
+                0x12, 0x01, 0x03, 0x00, 0x01, 0x00, 0x00, 0x00, 0x06, 0x00, 0x00, 0x00,
+                0x00, 0x00, 0x00, 0x00,
+                (byte) 0xFF, (byte) 0xD9};
+        assertEquals(6, ImagePreprocessor.exifOrientation(jpeg));
+    }
+
+    private static BufferedImage picture(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(30, 120, 200, type == BufferedImage.TYPE_INT_ARGB ? 128 : 255));
+        graphics.fillRect(0, 0, width / 2, height);
+        graphics.setColor(Color.ORANGE);
+        graphics.fillOval(width / 4, height / 4, width / 2, height / 2);
+        graphics.dispose();
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,144 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MediaArchiverTest {
+
+    @TempDir
+    Path storageDir;
+
+    @Test
+    void writesTheChunksOfAnArchiveInOrder() throws Exception {
+        MediaArchiver archiver = new MediaArchiver(storageDir.toString(), 16, 1, new SimpleMeterRegistry());
+        MediaArchiver.Archive archive = archiver.open("speech.mp3");
+        archive.append(bytes("first "));
+        archive.append(bytes("second "));
+        archive.append(bytes("third"));
+        archive.complete();
+        drain(archiver);
+
+        assertArrayEquals(bytes("first second third"), Files.readAllBytes(storageDir.resolve("speech.mp3")));
+        archiver.shutdown();
+    }
+
+    @Test
+    void abortRemovesThePartialFile() throws Exception {
+        MediaArchiver archiver = new MediaArchiver(storageDir.toString(), 16, 1, new SimpleMeterRegistry());
+        MediaArchiver.Archive archive = archiver.open("speech.mp3");
+        archive.append(bytes("first "));
+        drain(archiver);
+        assertTrue(Files.exists(storageDir.resolve("speech.mp3")));
+
+        archive.abort();
+        archive.append(bytes("ignored"));
+        drain(archiver);
+
+        assertFalse(Files.exists(storageDir.resolve("speech.mp3")));
+        archiver.shutdown();
+    }
+
+    @Test
+    void identicalContentIsStoredOnceUnderItsHash() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MediaArchiver archiver = new MediaArchiver(storageDir.toString(), 16, 1, meterRegistry);
+
+        Path first = archiver.storeContentAddressed(new ByteArrayInputStream(bytes("pixels")), "png");
+        Path second = archiver.storeContentAddressed(new ByteArrayInputStream(bytes("pixels")), "png");
+
+        assertEquals(first, second);
+        assertEquals(sha256("pixels") + ".png", first.getFileName().toString());
+        assertArrayEquals(bytes("pixels"), Files.readAllBytes(first));
+        assertEquals(List.of(first), files()); // no temp files left behind
+        assertEquals(1.0, meterRegistry.counter("media.archive.written").count());
+        assertEquals(1.0, meterRegistry.counter("media.archive.deduplicated").count());
+        archiver.shutdown();
+    }
+
+    @Test
+    void inMemoryMediaIsStoredInTheBackground() throws Exception {
+        MediaArchiver archiver = new MediaArchiver(storageDir.toString(), 16, 1, new SimpleMeterRegistry());
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(archiver.submit(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        // the archiver thread is busy: the call returns without having written anything
+        archiver.archiveContentAddressed(bytes("image"), "png");
+        assertTrue(files().isEmpty());
+
+        release.countDown();
+        drain(archiver);
+        assertEquals(List.of(storageDir.resolve(sha256("image") + ".png")), files());
+        archiver.shutdown();
+    }
+
+    @Test
+    void remoteMediaIsDownloadedInTheBackground() throws Exception {
+        Path source = Files.write(Files.createTempFile("remote", ".png"), bytes("remote image"));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MediaArchiver archiver = new MediaArchiver(storageDir.resolve("media").toString(), 16, 1, meterRegistry);
+        try {
+            archiver.archiveFromUrl(source.toUri().toString(), "png");
+            archiver.archiveFromUrl(source.resolveSibling("missing.png").toUri().toString(), "png");
+
+            Path stored = storageDir.resolve("media").resolve(sha256("remote image") + ".png");
+            await(() -> Files.exists(stored) && meterRegistry.counter("media.archive.failed").count() == 1.0);
+            assertArrayEquals(bytes("remote image"), Files.readAllBytes(stored));
+        } finally {
+            archiver.shutdown();
+            Files.deleteIfExists(source);
+        }
+    }
+
+    private List<Path> files() throws Exception {
+        try (Stream<Path> files = Files.list(storageDir)) {
+            return files.toList();
+        }
+    }
+
+    private static String sha256(String text) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes(text)));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    // waits until the archiver thread has run every task queued before
+    static void drain(MediaArchiver archiver) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        assertTrue(archiver.submit(done::countDown));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
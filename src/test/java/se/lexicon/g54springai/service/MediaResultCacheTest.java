@@ -0,0 +1,124 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MediaResultCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keysDependOnContentAndOptions() throws IOException {
+        byte[] content = "same audio".getBytes();
+        String key = MediaResultCache.key("transcription", "whisper-1", content);
+        assertEquals(key, MediaResultCache.key("transcription", "whisper-1", new ByteArrayInputStream(content)));
+        assertNotEquals(key, MediaResultCache.key("transcription", "whisper-2", content));
+        assertNotEquals(key, MediaResultCache.key("speech", "whisper-1", content));
+    }
+
+    @Test
+    void computesOnceAndSurvivesARestartOnDisk() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        MediaResultCache cache = cache(DataSize.ofMegabytes(1));
+        String key = MediaResultCache.key("vision", "gpt-4o", new byte[]{1, 2, 3});
+        assertEquals("a lighthouse", cache.getOrComputeText(key, () -> {
+            calls.incrementAndGet();
+            return "a lighthouse";
+        }));
+        assertEquals("a lighthouse", cache.getOrComputeText(key, () -> "other" + calls.incrementAndGet()));
+        assertEquals(1, calls.get());
+        cache.flush();
+        cache.shutdown();
+
+        MediaResultCache restarted = cache(DataSize.ofMegabytes(1));
+        assertEquals("a lighthouse", restarted.getOrComputeText(key, () -> "other" + calls.incrementAndGet()));
+        assertEquals(1, calls.get());
+        restarted.shutdown();
+    }
+
+    @Test
+    void largeValuesAreServedFromDiskAndOldestFilesEvicted() throws Exception {
+        MediaResultCache cache = cache(DataSize.ofKilobytes(250));
+        byte[] audio = new byte[100 * 1024];
+        for (int i = 0; i < 3; i++) {
+            audio[0] = (byte) i;
+            cache.put(speechKey(i), audio.clone());
+            cache.flush();
+            Thread.sleep(5); // distinct access times
+        }
+        cache.shutdown();
+
+        // three 100 KB files do not fit in 250 KB: the oldest one went
+        MediaResultCache restarted = cache(DataSize.ofKilobytes(250));
+        assertNull(restarted.file(speechKey(0)));
+        Path file = restarted.file(speechKey(2));
+        assertNotNull(file);
+        assertEquals(2, Files.readAllBytes(file)[0]);
+        assertArrayEquals(Files.readAllBytes(file), restarted.get(speechKey(2)));
+        restarted.shutdown();
+    }
+
+    @Test
+    void anEvictedFileStaysOnDiskForTheResponseThatIsSendingIt() throws Exception {
+        MediaResultCache cache = cache(DataSize.ofKilobytes(250));
+        byte[] audio = new byte[100 * 1024];
+        cache.put(speechKey(0), audio.clone());
+        cache.flush();
+        Path sending = cache.file(speechKey(0));
+        assertNotNull(sending);
+        Thread.sleep(5);
+        cache.put(speechKey(1), audio.clone());
+        cache.flush();
+        Thread.sleep(5);
+        cache.put(speechKey(2), audio.clone());
+        cache.flush();
+
+        // evicted from the cache, but the file a response already got is still there to be sent
+        assertNull(cache.file(speechKey(0)));
+        assertTrue(Files.exists(sending));
+
+        cache.shutdown();
+        assertFalse(Files.exists(sending));
+    }
+
+    @Test
+    void onlyFilesNamedLikeAKeyAreLoaded() throws Exception {
+        Files.write(directory.resolve("notes.txt"), "not a cached result".getBytes());
+        Files.write(directory.resolve(speechKey(0) + ".tmp"), new byte[10]);
+        Files.write(directory.resolve(speechKey(1)), new byte[]{42});
+
+        MediaResultCache cache = cache(DataSize.ofMegabytes(1));
+        assertNull(cache.file("notes.txt"));
+        assertNotNull(cache.file(speechKey(1)));
+        assertTrue(Files.exists(directory.resolve("notes.txt")));
+        assertFalse(Files.exists(directory.resolve(speechKey(0) + ".tmp")));
+        cache.shutdown();
+    }
+
+    private static String speechKey(int text) {
+        return MediaResultCache.key("speech", "tts-1", new byte[]{(byte) text});
+    }
+
+    private MediaResultCache cache(DataSize maxDiskSize) {
+        return new MediaResultCache(true, directory.toString(), DataSize.ofMegabytes(1), DataSize.ofKilobytes(64),
+                maxDiskSize, 16, Duration.ofHours(1), new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,146 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.openai.api.OpenAiApi;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ModelCallMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ModelCallMetrics metrics = new ModelCallMetrics(meterRegistry);
+
+    @Test
+    void aCallRecordsItsDurationAndTokenUsage() {
+        ChatResponse response = response("Hi", "gpt-4.1", new DefaultUsage(12, 3));
+
+        assertSame(response, metrics.record("chat", "gpt-4.1", () -> response));
+
+        assertEquals(1, duration("chat", "gpt-4.1", "success"));
+        assertEquals(12.0, tokens("chat", "gpt-4.1", "prompt"));
+        assertEquals(3.0, tokens("chat", "gpt-4.1", "completion"));
+    }
+
+    @Test
+    void withoutARequestedModelTheResponseModelIsUsed() {
+        metrics.record("chat", null, () -> response("Hi", "gpt-4.1-2025-04-14", new DefaultUsage(1, 1)));
+        metrics.record("image", null, () -> "not a chat response");
+
+        assertEquals(1, duration("chat", "gpt-4.1-2025-04-14", "success"));
+        assertEquals(1, duration("image", "unknown", "success"));
+    }
+
+    @Test
+    void aFailedCallIsTimedAndCountedByExceptionType() {
+        assertThrows(IllegalStateException.class,
+                () -> metrics.record("chat", "gpt-4.1", () -> {
+                    throw new IllegalStateException("boom");
+                }));
+
+        assertEquals(1, duration("chat", "gpt-4.1", "error"));
+        assertEquals(1.0, meterRegistry.get("model.call.errors")
+                .tags("operation", "chat", "model", "gpt-4.1", "exception", "IllegalStateException").counter().count());
+    }
+
+    @Test
+    void cachedPromptTokensAreRecordedWithTheirShare() {
+        OpenAiApi.Usage nativeUsage = new OpenAiApi.Usage(5, 200, 205,
+                new OpenAiApi.Usage.PromptTokensDetails(null, 80), null);
+        metrics.record("chat", "gpt-4.1", () -> response("Hi", "gpt-4.1", new DefaultUsage(200, 5, 205, nativeUsage)));
+
+        assertEquals(80.0, tokens("chat", "gpt-4.1", "cached"));
+        assertEquals(0.4, meterRegistry.get("model.call.cached-token-share")
+                .tags("operation", "chat", "model", "gpt-4.1").summary().mean(), 1e-9);
+    }
+
+    @Test
+    void aCompletedStreamRecordsTimeToFirstTokenAndThroughput() {
+        Flux<String> chunks = Flux.just("a", "b", "c", "d").delayElements(Duration.ofMillis(5));
+
+        StepVerifier.create(metrics.stream("chat.stream", "gpt-4.1", chunks)).expectNextCount(4).verifyComplete();
+
+        assertEquals(1, duration("chat.stream", "gpt-4.1", "success"));
+        assertEquals(1, meterRegistry.get("model.stream.time-to-first-token")
+                .tags("operation", "chat.stream", "model", "gpt-4.1").timer().count());
+        assertEquals(1, meterRegistry.get("model.stream.tokens-per-second")
+                .tags("operation", "chat.stream", "model", "gpt-4.1").summary().count());
+    }
+
+    @Test
+    void theUsageOfTheLastStreamedChunkIsRecorded() {
+        Flux<ChatResponse> chunks = Flux.just(
+                response("Hel", null, null),
+                response("lo", "gpt-4.1-mini-2025-04-14", new DefaultUsage(20, 7)));
+
+        StepVerifier.create(metrics.stream("chat.memory.stream", null, chunks)).expectNextCount(2).verifyComplete();
+
+        assertEquals(1, duration("chat.memory.stream", "gpt-4.1-mini-2025-04-14", "success"));
+        assertEquals(7.0, tokens("chat.memory.stream", "gpt-4.1-mini-2025-04-14", "completion"));
+    }
+
+    @Test
+    void aCancelledOrFailedStreamIsTimedWithoutThroughput() {
+        StepVerifier.create(metrics.stream("chat.stream", "gpt-4.1", Flux.just("a", "b", "c")), 1)
+                .expectNext("a")
+                .thenCancel()
+                .verify();
+        Flux<String> failing = Flux.just("a").concatWith(Flux.error(new IllegalStateException("reset")));
+        StepVerifier.create(metrics.stream("chat.stream", "gpt-4.1", failing)).expectNext("a").verifyError();
+
+        assertEquals(1, duration("chat.stream", "gpt-4.1", "cancelled"));
+        assertEquals(1, duration("chat.stream", "gpt-4.1", "error"));
+        assertEquals(1.0, meterRegistry.get("model.call.errors")
+                .tags("operation", "chat.stream", "exception", "IllegalStateException").counter().count());
+        assertNull(meterRegistry.find("model.stream.tokens-per-second").summary());
+    }
+
+    @Test
+    void streamedAudioHasATimeToFirstByteButNoTokenRate() {
+        Flux<byte[]> audio = Flux.just(new byte[]{1}, new byte[]{2}, new byte[]{3}).delayElements(Duration.ofMillis(5));
+
+        StepVerifier.create(metrics.stream("speech.stream", "tts-1", audio)).expectNextCount(3).verifyComplete();
+
+        assertEquals(1, meterRegistry.get("model.stream.time-to-first-token")
+                .tags("operation", "speech.stream", "model", "tts-1").timer().count());
+        assertNull(meterRegistry.find("model.stream.tokens-per-second").summary());
+    }
+
+    private long duration(String operation, String model, String outcome) {
+        return meterRegistry.get("model.call.duration")
+                .tags("operation", operation, "model", model, "outcome", outcome).timer().count();
+    }
+
+    private double tokens(String operation, String model, String type) {
+        return meterRegistry.get("model.call.tokens")
+                .tags("operation", operation, "model", model, "type", type).summary().totalAmount();
+    }
+
+    private static ChatResponse response(String text, String model, Usage usage) {
+        ChatResponseMetadata.Builder metadata = ChatResponseMetadata.builder();
+        if (model != null) {
+            metadata.model(model);
+        }
+        if (usage != null) {
+            metadata.usage(usage);
+        }
+        return ChatResponse.builder()
+                .generations(List.of(new Generation(new AssistantMessage(text))))
+                .metadata(metadata.build())
+                .build();
+    }
+}
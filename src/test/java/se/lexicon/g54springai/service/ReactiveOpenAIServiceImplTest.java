@@ -0,0 +1,139 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.core.io.ClassPathResource;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+import se.lexicon.g54springai.prompt.PromptRegistry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReactiveOpenAIServiceImplTest {
+
+    @Test
+    void aggregatesTheStreamedTokensAndCachesTheAnswer() {
+        StreamingStubModel model = new StreamingStubModel(() -> tokens("Lexicon ", "is ", "a school."));
+        ReactiveOpenAIService service = newService(model, mock(OpenAIService.class));
+
+        StepVerifier.create(service.processSimpleChatQuery("What is Lexicon?"))
+                .expectNext("Lexicon is a school.")
+                .verifyComplete();
+        // answered from the cache: the model is not asked again
+        StepVerifier.create(service.processSimpleChatQuery(" What is  Lexicon?"))
+                .expectNext("Lexicon is a school.")
+                .verifyComplete();
+        assertEquals(1, model.streams.get());
+    }
+
+    @Test
+    void endsWithTheUpstreamErrorAndCachesNothing() {
+        AtomicInteger attempt = new AtomicInteger();
+        StreamingStubModel model = new StreamingStubModel(() -> attempt.incrementAndGet() == 1
+                ? tokens("Lexicon ").concatWith(Flux.error(new IllegalStateException("connection reset")))
+                : tokens("Lexicon is a school."));
+        ReactiveOpenAIService service = newService(model, mock(OpenAIService.class));
+
+        StepVerifier.create(service.processSimpleChatQueryWithContext("Who are you?"))
+                .expectErrorMessage("connection reset")
+                .verify();
+        StepVerifier.create(service.processSimpleChatQueryWithContext("Who are you?"))
+                .expectNext("Lexicon is a school.")
+                .verifyComplete();
+        assertEquals(2, model.streams.get());
+    }
+
+    @Test
+    void signalsInvalidInputAsAnErrorInsteadOfThrowing() {
+        ReactiveOpenAIService service = newService(new StreamingStubModel(Flux::empty), mock(OpenAIService.class));
+
+        StepVerifier.create(service.processSimpleChatQuery(""))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(service.chatMemory("Hello", " "))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    @Test
+    void joinsTheStreamedChatMemoryAnswer() {
+        OpenAIService openAIService = mock(OpenAIService.class);
+        when(openAIService.chatMemoryStream("Hello", "conversation-1")).thenReturn(Flux.just("Hi ", "there!"));
+        ReactiveOpenAIService service = newService(new StreamingStubModel(Flux::empty), openAIService);
+
+        StepVerifier.create(service.chatMemory("Hello", "conversation-1"))
+                .expectNext("Hi there!")
+                .verifyComplete();
+    }
+
+    @Test
+    void runsBlockingOperationsOnTheIoScheduler() {
+        OpenAIService openAIService = mock(OpenAIService.class);
+        when(openAIService.generateImageAndReturnUrl("A lighthouse")).thenReturn("https://images/lighthouse.png");
+        ReactiveOpenAIService service = newService(new StreamingStubModel(Flux::empty), openAIService);
+
+        StepVerifier.create(service.generateImageAndReturnUrl("A lighthouse"))
+                .expectNext("https://images/lighthouse.png")
+                .verifyComplete();
+        verify(openAIService).generateImageAndReturnUrl("A lighthouse");
+    }
+
+    private static ReactiveOpenAIService newService(ChatModel chatModel, OpenAIService openAIService) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new ReactiveOpenAIServiceImpl(openAIService, chatModel,
+                new ChatResponseCache(true, 10, Duration.ofMinutes(1), meterRegistry),
+                new RequestCoalescer(meterRegistry),
+                Schedulers.boundedElastic(),
+                new ModelCallMetrics(meterRegistry),
+                new PromptRegistry(new ClassPathResource("prompts.yml"), Duration.ZERO),
+                new UpstreamCallGuard(8, Duration.ofSeconds(5), AdaptiveConcurrencyLimit.Settings.fixed(8, 8), meterRegistry));
+    }
+
+    private static Flux<ChatResponse> tokens(String... tokens) {
+        return Flux.fromArray(tokens).map(token -> new ChatResponse(List.of(new Generation(new AssistantMessage(token)))));
+    }
+
+    // Streams whatever the supplier returns and counts the streams it was asked for.
+    private static class StreamingStubModel implements ChatModel {
+
+        private final Supplier<Flux<ChatResponse>> responses;
+        private final AtomicInteger streams = new AtomicInteger();
+
+        StreamingStubModel(Supplier<Flux<ChatResponse>> responses) {
+            this.responses = responses;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            throw new UnsupportedOperationException("The reactive service only streams");
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.defer(() -> {
+                streams.incrementAndGet();
+                return responses.get();
+            });
+        }
+
+        @Override
+        public ChatOptions getDefaultOptions() {
+            return ChatOptions.builder().model("stub-model").temperature(0.7).build();
+        }
+    }
+}
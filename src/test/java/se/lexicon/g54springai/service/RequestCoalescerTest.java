@@ -0,0 +1,135 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestCoalescerTest {
+
+    @Test
+    void concurrentIdenticalCallsShareOneUpstreamCall() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RequestCoalescer coalescer = new RequestCoalescer(meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> coalescer.execute("key", () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    return "answer";
+                })));
+            }
+            // every caller has arrived (one leader, seven waiting) before the leader may finish
+            while (meterRegistry.counter("chat.coalescing.requests", "role", "collapsed").count() < 7) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("answer", result.get(5, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(1, calls.get());
+
+        // the flight is over: the next caller calls upstream again
+        coalescer.execute("key", () -> "again" + calls.incrementAndGet());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void followersGetTheLeadersError() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RequestCoalescer coalescer = new RequestCoalescer(meterRegistry);
+        IllegalStateException failure = new IllegalStateException("upstream failed");
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> leader = executor.submit(() -> coalescer.execute("key", () -> {
+                await(release);
+                throw failure;
+            }));
+            while (meterRegistry.counter("chat.coalescing.requests", "role", "leader").count() < 1) {
+                Thread.onSpinWait();
+            }
+            Future<?> follower = executor.submit(() -> coalescer.execute("key", () -> "not called"));
+            while (meterRegistry.counter("chat.coalescing.requests", "role", "collapsed").count() < 1) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            Exception leaderError = assertThrows(Exception.class, leader::get);
+            Exception followerError = assertThrows(Exception.class, follower::get);
+            assertSame(failure, leaderError.getCause());
+            assertSame(failure, followerError.getCause());
+        }
+    }
+
+    @Test
+    void concurrentStreamsShareOneUpstreamAndReplayToLateSubscribers() {
+        RequestCoalescer coalescer = new RequestCoalescer(new SimpleMeterRegistry());
+        AtomicInteger subscriptions = new AtomicInteger();
+        Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        Flux<String> upstream = tokens.asFlux().doOnSubscribe(subscription -> subscriptions.incrementAndGet());
+
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        coalescer.stream("key", () -> upstream).subscribe(first::add);
+        tokens.tryEmitNext("Hel");
+        // joins after the first token: it is replayed
+        coalescer.stream("key", () -> upstream).subscribe(second::add);
+        tokens.tryEmitNext("lo");
+        tokens.tryEmitComplete();
+
+        assertEquals(1, subscriptions.get());
+        assertEquals(List.of("Hel", "lo"), first);
+        assertEquals(List.of("Hel", "lo"), second);
+
+        // completed: a new stream for the same key starts a new upstream call
+        AtomicInteger newCalls = new AtomicInteger();
+        assertEquals(List.of("again"), coalescer.stream("key", () -> {
+            newCalls.incrementAndGet();
+            return Flux.just("again");
+        }).collectList().block());
+        assertEquals(1, newCalls.get());
+    }
+
+    @Test
+    void streamErrorsReachEverySubscriber() {
+        RequestCoalescer coalescer = new RequestCoalescer(new SimpleMeterRegistry());
+        Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        List<Throwable> errors = new ArrayList<>();
+
+        coalescer.stream("key", tokens::asFlux).subscribe(token -> { }, errors::add);
+        coalescer.stream("key", tokens::asFlux).subscribe(token -> { }, errors::add);
+        tokens.tryEmitError(new IllegalStateException("upstream failed"));
+
+        assertEquals(2, errors.size());
+        assertTrue(errors.stream().allMatch(error -> error.getMessage().equals("upstream failed")));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package se.lexicon.g54springai.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// OpenAIServiceImpl.splitIntoSpeechChunks: the text-to-speech stream synthesizes one chunk per request.
+class SpeechChunksTest {
+
+    @Test
+    void sendsTheFirstSentenceOnItsOwnAndGroupsTheRest() {
+        List<String> chunks = OpenAIServiceImpl.splitIntoSpeechChunks(
+                "Hello there. This is the second sentence. And a third one.", 1000);
+
+        assertEquals(List.of("Hello there.", "This is the second sentence. And a third one."), chunks);
+    }
+
+    @Test
+    void startsANewChunkBeforeTheLimitIsExceeded() {
+        String text = "One short sentence. " + "Another sentence of text. ".repeat(10) + "The end.";
+
+        List<String> chunks = OpenAIServiceImpl.splitIntoSpeechChunks(text, 60);
+
+        assertTrue(chunks.size() > 3, chunks.toString());
+        for (String chunk : chunks) {
+            assertTrue(chunk.length() <= 60, chunk);
+            // split on sentence boundaries only
+            assertTrue(chunk.endsWith("."), chunk);
+        }
+        assertEquals(text.replace(" ", ""), String.join("", chunks).replace(" ", ""));
+    }
+
+    @Test
+    void hardSplitsASentenceLongerThanTheLimit() {
+        String sentence = "a".repeat(120);
+
+        List<String> chunks = OpenAIServiceImpl.splitIntoSpeechChunks(sentence, 50);
+
+        assertEquals(List.of("a".repeat(50), "a".repeat(50), "a".repeat(20)), chunks);
+    }
+
+    @Test
+    void returnsNoChunksForBlankText() {
+        assertEquals(List.of(), OpenAIServiceImpl.splitIntoSpeechChunks("   ", 100));
+    }
+}
@@ -0,0 +1,91 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.audio.transcription.AudioTranscriptionPrompt;
+import org.springframework.ai.openai.OpenAiAudioTranscriptionModel;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SpeechTranscriptionPipelineTest {
+
+    @Test
+    void cancelsTheSegmentsInFlightWhenTheUploadCannotBeRead() throws Exception {
+        CountDownLatch segmentStarted = new CountDownLatch(1);
+        CountDownLatch segmentInterrupted = new CountDownLatch(1);
+        OpenAiAudioTranscriptionModel model = mock(OpenAiAudioTranscriptionModel.class);
+        when(model.call(any(AudioTranscriptionPrompt.class))).thenAnswer(invocation -> {
+            segmentStarted.countDown();
+            try {
+                Thread.sleep(Duration.ofSeconds(30));
+            } catch (InterruptedException e) {
+                segmentInterrupted.countDown();
+            }
+            throw new IllegalStateException("cancelled");
+        });
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // 1 s segments with 0.1 s overlap: a 3 s recording is cut into several segments
+        SpeechTranscriptionPipeline pipeline = new SpeechTranscriptionPipeline(model,
+                new UpstreamCallGuard(4, Duration.ofSeconds(5), AdaptiveConcurrencyLimit.Settings.fixed(4, 4), meterRegistry),
+                new ModelCallMetrics(meterRegistry), 1, 0.1, 4);
+
+        // the connection drops after the first segment has been read and sent to the model
+        byte[] wav = silentWav(3);
+        InputStream upload = new FilterInputStream(new ByteArrayInputStream(wav)) {
+            private int read;
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (read > 48_000) {
+                    awaitQuietly(segmentStarted);
+                    throw new IOException("Connection reset");
+                }
+                int count = super.read(buffer, offset, length);
+                read += Math.max(count, 0);
+                return count;
+            }
+        };
+        MultipartFile file = mock(MultipartFile.class);
+        when(file.getInputStream()).thenReturn(upload);
+
+        assertThrows(IOException.class, () -> pipeline.transcribe(file));
+        assertTrue(segmentInterrupted.await(5, TimeUnit.SECONDS), "the first segment was not cancelled");
+        pipeline.shutdown();
+    }
+
+    private static byte[] silentWav(int seconds) throws IOException {
+        AudioFormat format = new AudioFormat(16_000, 16, 1, true, false);
+        byte[] pcm = new byte[seconds * 16_000 * 2];
+        ByteArrayOutputStream wav = new ByteArrayOutputStream(pcm.length + 64);
+        try (AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(pcm), format, pcm.length / 2)) {
+            AudioSystem.write(stream, AudioFileFormat.Type.WAVE, wav);
+        }
+        return wav.toByteArray();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package se.lexicon.g54springai.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+import se.lexicon.g54springai.exception.UpstreamOverloadedException;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UpstreamCallGuardTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void holdsAStreamsSlotUntilItCompletes() {
+        UpstreamCallGuard guard = guard(AdaptiveConcurrencyLimit.Settings.fixed(1, 0));
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        Disposable running = guard.stream("chat.stream", "model", upstream.asFlux()).subscribe();
+
+        assertEquals(1, inFlight("chat.stream", "model"));
+        StepVerifier.create(guard.stream("chat.stream", "model", Flux.just("second")))
+                .expectError(UpstreamOverloadedException.class)
+                .verify(Duration.ofSeconds(5));
+        assertEquals(1, meterRegistry.get("upstream.admission.rejected")
+                .tag("operation", "chat.stream").tag("reason", "queue-full").counter().count());
+
+        upstream.tryEmitNext("first");
+        upstream.tryEmitComplete();
+        assertEquals(0, inFlight("chat.stream", "model"));
+        StepVerifier.create(guard.stream("chat.stream", "model", Flux.just("second")))
+                .expectNext("second")
+                .verifyComplete();
+        running.dispose();
+    }
+
+    @Test
+    void releasesTheSlotOfACancelledStream() {
+        UpstreamCallGuard guard = guard(AdaptiveConcurrencyLimit.Settings.fixed(1, 0));
+        Disposable running = guard.stream("speech.stream", "model", Flux.never()).subscribe();
+        assertEquals(1, inFlight("speech.stream", "model"));
+
+        running.dispose();
+
+        assertEquals(0, inFlight("speech.stream", "model"));
+    }
+
+    @Test
+    void rejectsAtOnceOnANonBlockingThreadInsteadOfQueueing() {
+        UpstreamCallGuard guard = guard(AdaptiveConcurrencyLimit.Settings.fixed(1, 4));
+        Disposable running = guard.stream("speech.stream", "model", Flux.never()).subscribe();
+
+        // a blocking caller would wait up to the 5 s acquire timeout
+        StepVerifier.create(guard.stream("speech.stream", "model", Flux.just("chunk")).subscribeOn(Schedulers.parallel()))
+                .expectError(UpstreamOverloadedException.class)
+                .verify(Duration.ofSeconds(1));
+        running.dispose();
+    }
+
+    @Test
+    void keepsOperationsApartButBacksOffTheWholeModelOnARateLimit() {
+        UpstreamCallGuard guard = guard(new AdaptiveConcurrencyLimit.Settings(8, 1, 32, 8, 0.5, 3.0));
+        guard.limit("chat", "model");
+        guard.limit("chat", "other-model");
+
+        StepVerifier.create(guard.stream("speech.stream", "model",
+                        Flux.error(new IllegalStateException("429 - Rate limit reached"))))
+                .expectError(UpstreamOverloadedException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(4, guard.limit("speech.stream", "model"), 1e-9);
+        assertEquals(4, guard.limit("chat", "model"), 1e-9);
+        assertEquals(8, guard.limit("chat", "other-model"), 1e-9);
+        // a call of its own, with its own slots
+        assertEquals("answer", guard.call("image", "model", () -> "answer"));
+        assertEquals(8, guard.limit("image", "model"), 1e-9);
+    }
+
+    private UpstreamCallGuard guard(AdaptiveConcurrencyLimit.Settings settings) {
+        return new UpstreamCallGuard(4, Duration.ofSeconds(5), settings, meterRegistry);
+    }
+
+    private double inFlight(String operation, String model) {
+        return meterRegistry.get("upstream.admission.in-flight").tag("operation", operation).tag("model", model)
+                .gauge().value();
+    }
+}
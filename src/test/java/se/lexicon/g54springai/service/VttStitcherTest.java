@@ -0,0 +1,87 @@
+package se.lexicon.g54springai.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VttStitcherTest {
+
+    @Test
+    void shiftsTheCuesOfEachSegmentByItsStart() {
+        String stitched = VttStitcher.stitch(List.of(
+                new VttStitcher.Segment(0, 0, vtt("00:00.000 --> 00:02.500", "Hello")),
+                new VttStitcher.Segment(1, 3600, vtt("00:10.000 --> 00:12.000", "An hour later"))), 0);
+
+        assertEquals("""
+                WEBVTT
+
+                00:00:00.000 --> 00:00:02.500
+                Hello
+
+                01:00:10.000 --> 01:00:12.000
+                An hour later
+                """, stitched);
+    }
+
+    @Test
+    void keepsEachCueOfTheOverlapOnce() {
+        // segments of 120 s overlapping by 2 s: the second starts at 118 s, the cut is at 119 s
+        String first = vtt("00:00.000 --> 00:05.000", "Hello",
+                "01:57.500 --> 02:00.000", "crosses the boundary",
+                "01:59.500 --> 02:00.000", "cut off");
+        String second = vtt("00:00.000 --> 00:02.000", "crosses the boundary",
+                "00:01.500 --> 00:02.000", "cut off",
+                "00:03.000 --> 00:04.000", "after the overlap");
+
+        String stitched = VttStitcher.stitch(List.of(
+                new VttStitcher.Segment(0, 0, first),
+                new VttStitcher.Segment(1, 118, second)), 2);
+
+        assertEquals("""
+                WEBVTT
+
+                00:00:00.000 --> 00:00:05.000
+                Hello
+
+                00:01:57.500 --> 00:02:00.000
+                crosses the boundary
+
+                00:01:59.500 --> 00:02:00.000
+                cut off
+
+                00:02:01.000 --> 00:02:02.000
+                after the overlap
+                """, stitched);
+    }
+
+    @Test
+    void keepsCueSettingsMultiLineTextAndHourTimestamps() {
+        String segment = "WEBVTT\r\n\r\n01:00:01.000 --> 01:00:02.000 align:start\r\nfirst line\r\nsecond line\r\n";
+
+        String stitched = VttStitcher.stitch(List.of(new VttStitcher.Segment(0, 60, segment)), 0);
+
+        assertEquals("""
+                WEBVTT
+
+                01:01:01.000 --> 01:01:02.000 align:start
+                first line
+                second line
+                """, stitched);
+    }
+
+    @Test
+    void toleratesAnEmptyTranscript() {
+        assertEquals("WEBVTT\n", VttStitcher.stitch(List.of(new VttStitcher.Segment(0, 0, null)), 2));
+    }
+
+    // timing, text, timing, text, ...
+    private static String vtt(String... cues) {
+        StringBuilder vtt = new StringBuilder("WEBVTT\n");
+        for (int i = 0; i < cues.length; i += 2) {
+            vtt.append('\n').append(cues[i]).append('\n').append(cues[i + 1]).append('\n');
+        }
+        return vtt.toString();
+    }
+}
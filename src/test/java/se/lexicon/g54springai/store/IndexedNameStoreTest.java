@@ -0,0 +1,107 @@
+package se.lexicon.g54springai.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexedNameStoreTest {
+
+    @Test
+    void findsSubstringsIgnoringCaseInInsertionOrder() {
+        IndexedNameStore store = new IndexedNameStore(List.of("Mehrdad", "Elnaz", "Simon", "Marcus", "Amira"));
+
+        assertEquals(List.of("Mehrdad", "Simon", "Marcus", "Amira"), store.findContaining("m"));
+        assertEquals(List.of("Marcus"), store.findContaining("MARC"));
+        assertEquals(List.of("Mehrdad"), store.findContaining("rdad"));
+        assertEquals(List.of(), store.findContaining("dadm"));   // all 3-grams occur, but not in a row
+        assertEquals(List.of(), store.findContaining("xyz"));
+        assertEquals(5, store.findContaining("").size());
+    }
+
+    @Test
+    void pagesThroughMatchesWithTotalAndCursor() {
+        IndexedNameStore store = new IndexedNameStore(List.of("Mehrdad", "Elnaz", "Simon", "Marcus", "Amira", "Mia"));
+
+        NamePage first = store.findPage("m", 0, 2, 1000);
+        assertEquals(List.of("Mehrdad", "Simon"), first.names());
+        assertEquals(5, first.total());
+        NamePage second = store.findPage("m", first.nextCursor(), 2, 1000);
+        assertEquals(List.of("Marcus", "Amira"), second.names());
+        NamePage last = store.findPage("m", second.nextCursor(), 2, 1000);
+        assertEquals(List.of("Mia"), last.names());
+        assertNull(last.nextCursor());
+
+        // the character cap ends a page early, but a page always holds at least one name
+        assertEquals(List.of("Mehrdad", "Elnaz"), store.findPage(null, 0, 10, 12).names());
+        assertEquals(List.of("Mehrdad"), store.findPage(null, 0, 10, 3).names());
+        assertEquals(new NamePage(List.of(), 0, null), store.findPage("xyz", 0, 10, 1000));
+    }
+
+    @Test
+    void matchesAFullScanOnRandomNames() {
+        Random random = new Random(7);
+        IndexedNameStore store = new IndexedNameStore();
+        List<String> all = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            String name = randomName(random);
+            store.add(name);
+            all.add(name);
+        }
+        for (String query : List.of("a", "ab", "abc", "bca", "Aab", "zzzz", "ec")) {
+            List<String> expected = all.stream()
+                    .filter(name -> name.toLowerCase(Locale.ROOT).contains(query.toLowerCase(Locale.ROOT)))
+                    .toList();
+            assertEquals(expected, store.findContaining(query), query);
+        }
+    }
+
+    @Test
+    void readersSeeConsistentResultsWhileNamesAreAdded() throws Exception {
+        IndexedNameStore store = new IndexedNameStore();
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    store.add("Name" + i);
+                }
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 3; r++) {
+                readers.add(executor.submit(() -> {
+                    while (!writer.isDone()) {
+                        int size = store.size();
+                        List<String> found = store.findContaining("name");
+                        assertTrue(found.size() >= size);
+                        for (int i = 0; i < size; i++) {
+                            assertEquals("Name" + i, found.get(i));
+                        }
+                    }
+                }));
+            }
+            writer.get();
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        }
+        assertEquals(20_000, store.findContaining("NAME").size());
+    }
+
+    private static String randomName(Random random) {
+        StringBuilder name = new StringBuilder();
+        int length = 3 + random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            char c = (char) ('a' + random.nextInt(5));
+            name.append(i == 0 ? Character.toUpperCase(c) : c);
+        }
+        return name.toString();
+    }
+}
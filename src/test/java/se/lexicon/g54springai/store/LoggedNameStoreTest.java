@@ -0,0 +1,136 @@
+package se.lexicon.g54springai.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoggedNameStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void namesSurviveARestartAndInitialNamesAreOnlyUsedOnce() throws Exception {
+        try (LoggedNameStore store = new LoggedNameStore(directory, 1000, true, List.of("Mehrdad", "Elnaz"))) {
+            store.add("Simon");
+        }
+        try (LoggedNameStore store = new LoggedNameStore(directory, 1000, true, List.of("Mehrdad", "Elnaz"))) {
+            assertEquals(List.of("Mehrdad", "Elnaz", "Simon"), store.findAll());
+            assertEquals(List.of("Simon"), store.findContaining("SIM"));
+        }
+    }
+
+    @Test
+    void concurrentAddsAreAllStoredAcrossSnapshots() throws Exception {
+        try (LoggedNameStore store = new LoggedNameStore(directory, 50, true, List.of());
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> adds = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                String name = "Name" + i;
+                adds.add(executor.submit(() -> store.add(name)));
+            }
+            for (Future<?> add : adds) {
+                add.get();
+            }
+            assertEquals(500, store.size());
+        }
+        assertTrue(Files.exists(directory.resolve("names.snapshot")));
+        try (LoggedNameStore store = new LoggedNameStore(directory, 50, true, List.of())) {
+            assertEquals(500, store.size());
+            assertEquals(1, store.findContaining("name499").size());
+        }
+    }
+
+    @Test
+    void aTornRecordAtTheEndOfTheLogIsCutOff() throws Exception {
+        try (LoggedNameStore store = new LoggedNameStore(directory, 1000, true, List.of("Marcus"))) {
+            store.add("Simon");
+        }
+        Path log;
+        try (Stream<Path> files = Files.list(directory)) {
+            log = files.filter(path -> path.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            // length 5, bogus checksum, only two bytes of the name: a crash in the middle of a write
+            channel.write(ByteBuffer.allocate(10).putInt(5).putInt(42).put((byte) 'E').put((byte) 'l').flip());
+        }
+
+        try (LoggedNameStore store = new LoggedNameStore(directory, 1000, true, List.of("Marcus"))) {
+            assertEquals(List.of("Marcus", "Simon"), store.findAll());
+            store.add("Elnaz");
+        }
+        try (LoggedNameStore store = new LoggedNameStore(directory, 1000, true, List.of("Marcus"))) {
+            assertEquals(List.of("Marcus", "Simon", "Elnaz"), store.findAll());
+        }
+    }
+
+    @Test
+    void aFailedWriteDoesNotHideTheNamesAddedAfterIt() throws Exception {
+        AtomicBoolean failNext = new AtomicBoolean();
+        // writes half of the batch, then fails: a full disk or an I/O error in the middle of a write
+        LoggedNameStore.LogWriter flaky = (log, records, sync) -> {
+            if (failNext.getAndSet(false)) {
+                ByteBuffer half = records.duplicate();
+                half.limit(records.position() + records.remaining() / 2);
+                log.write(half);
+                throw new IOException("disk full");
+            }
+            while (records.hasRemaining()) {
+                log.write(records);
+            }
+        };
+        try (LoggedNameStore store = new LoggedNameStore(directory, 1000, true, List.of("Marcus"), flaky)) {
+            failNext.set(true);
+            assertThrows(IllegalStateException.class, () -> store.add("Elnaz"));
+            store.add("Simon");
+            assertEquals(List.of("Marcus", "Simon"), store.findAll());
+        }
+        try (LoggedNameStore store = new LoggedNameStore(directory, 1000, true, List.of("Marcus"))) {
+            assertEquals(List.of("Marcus", "Simon"), store.findAll());
+        }
+    }
+
+    @Test
+    void aFailedSnapshotDoesNotFailTheAdd() throws Exception {
+        // a directory in the way of the snapshot's temp file makes every snapshot fail
+        Path blocker = Files.createDirectories(directory.resolve("names.snapshot.tmp"));
+        try (LoggedNameStore store = new LoggedNameStore(directory, 1, true, List.of())) {
+            store.add("Simon");
+            store.add("Marcus");
+            store.add("Amira");
+            assertEquals(List.of("Simon", "Marcus", "Amira"), store.findAll());
+            // the retries reuse the generation the first attempt started
+            assertEquals(2, logFiles());
+
+            Files.delete(blocker);
+            store.add("Elnaz");
+        }
+        assertTrue(Files.exists(directory.resolve("names.snapshot")));
+        try (LoggedNameStore store = new LoggedNameStore(directory, 1, true, List.of())) {
+            assertEquals(List.of("Simon", "Marcus", "Amira", "Elnaz"), store.findAll());
+        }
+    }
+
+    private long logFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).count();
+        }
+    }
+}
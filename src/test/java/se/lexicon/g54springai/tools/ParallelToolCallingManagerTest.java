@@ -0,0 +1,180 @@
+package se.lexicon.g54springai.tools;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.DefaultToolCallingManager;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.DefaultToolExecutionExceptionProcessor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelToolCallingManagerTest {
+
+    @Test
+    void runsTheCallsOfOneTurnConcurrentlyAndKeepsTheirOrder() {
+        List<ToolCallback> tools = List.of(
+                tool("slow", () -> sleep(300, "slow result")),
+                tool("fast", () -> sleep(10, "fast result")),
+                tool("medium", () -> sleep(150, "medium result")));
+        try (ParallelToolCallingManager manager = manager(Duration.ofSeconds(5), Set.of())) {
+            long start = System.nanoTime();
+            List<ToolResponseMessage.ToolResponse> responses = responses(
+                    manager.executeToolCalls(prompt(tools), turn("slow", "fast", "medium")));
+            long millis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+            assertEquals(List.of("slow result", "fast result", "medium result"),
+                    responses.stream().map(ToolResponseMessage.ToolResponse::responseData).toList());
+            assertEquals(List.of("call-0", "call-1", "call-2"),
+                    responses.stream().map(ToolResponseMessage.ToolResponse::id).toList());
+            // about the slowest call, not the 460 ms of all three in a row
+            assertTrue(millis < 450, "turn took " + millis + " ms");
+        }
+    }
+
+    @Test
+    void answersATimedOutCallWithoutWaitingForIt() {
+        List<ToolCallback> tools = List.of(
+                tool("stuck", () -> sleep(5_000, "too late")),
+                tool("fast", () -> "fast result"));
+        try (ParallelToolCallingManager manager = manager(Duration.ofMillis(100), Set.of())) {
+            long start = System.nanoTime();
+            List<ToolResponseMessage.ToolResponse> responses = responses(
+                    manager.executeToolCalls(prompt(tools), turn("stuck", "fast")));
+            long millis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+            assertTrue(responses.get(0).responseData().contains("timed out"), responses.get(0).responseData());
+            assertEquals("fast result", responses.get(1).responseData());
+            assertTrue(millis < 1_000, "turn took " + millis + " ms");
+        }
+    }
+
+    @Test
+    void neverOverlapsSerialToolsAndRunsThemInTheModelsOrder() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<String> inputs = Collections.synchronizedList(new ArrayList<>());
+        Function<String, String> addName = input -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            // the first call is the slowest: run concurrently, it would finish last
+            sleep(inputs.isEmpty() ? 60 : 10, "");
+            inputs.add(input);
+            running.decrementAndGet();
+            return "added";
+        };
+        List<ToolCallback> tools = List.of(tool("addNewName", addName), tool("addNewNames", addName),
+                tool("searchNames", () -> sleep(30, "found")));
+        try (ParallelToolCallingManager manager = manager(Duration.ofSeconds(5), Set.of("addNewName", "addNewNames"))) {
+            manager.executeToolCalls(prompt(tools),
+                    turn("addNewName", "searchNames", "addNewNames", "addNewName", "addNewNames"));
+        }
+        assertEquals(1, maxRunning.get());
+        assertEquals(List.of(arguments(0), arguments(2), arguments(3), arguments(4)), inputs);
+    }
+
+    @Test
+    void doesNotTimeOutSerialTools() {
+        // a write cut off by the timeout may still have happened; the model would repeat it
+        List<ToolCallback> tools = List.of(tool("addNewName", () -> sleep(200, "added")));
+        try (ParallelToolCallingManager manager = manager(Duration.ofMillis(50), Set.of("addNewName"))) {
+            List<ToolResponseMessage.ToolResponse> responses = responses(
+                    manager.executeToolCalls(prompt(tools), turn("addNewName")));
+
+            assertEquals("added", responses.get(0).responseData());
+        }
+    }
+
+    @Test
+    void startsTheTimeoutOnceTheCallHasAPermit() {
+        List<ToolCallback> tools = List.of(tool("first", () -> sleep(100, "first result")),
+                tool("second", () -> sleep(100, "second result")));
+        try (ParallelToolCallingManager manager = manager(1, Duration.ofMillis(150), Set.of())) {
+            List<ToolResponseMessage.ToolResponse> responses = responses(
+                    manager.executeToolCalls(prompt(tools), turn("first", "second")));
+
+            // the second call waits about 100 ms for the only permit and then runs for 100 ms
+            assertEquals(List.of("first result", "second result"),
+                    responses.stream().map(ToolResponseMessage.ToolResponse::responseData).toList());
+        }
+    }
+
+    private static ParallelToolCallingManager manager(Duration timeout, Set<String> serial) {
+        return manager(8, timeout, serial);
+    }
+
+    private static ParallelToolCallingManager manager(int parallelism, Duration timeout, Set<String> serial) {
+        return new ParallelToolCallingManager(DefaultToolCallingManager.builder().build(), name -> null,
+                DefaultToolExecutionExceptionProcessor.builder().build(), ObservationRegistry.NOOP,
+                new SimpleMeterRegistry(), new ToolExecutionProperties(parallelism, timeout, Map.of(), serial));
+    }
+
+    private static Prompt prompt(List<ToolCallback> tools) {
+        return new Prompt(List.of(new UserMessage("question")),
+                ToolCallingChatOptions.builder().toolCallbacks(tools).build());
+    }
+
+    private static ChatResponse turn(String... toolNames) {
+        List<AssistantMessage.ToolCall> calls = new ArrayList<>();
+        for (int i = 0; i < toolNames.length; i++) {
+            calls.add(new AssistantMessage.ToolCall("call-" + i, "function", toolNames[i], arguments(i)));
+        }
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(), calls))));
+    }
+
+    private static String arguments(int call) {
+        return "{\"call\":" + call + "}";
+    }
+
+    private static List<ToolResponseMessage.ToolResponse> responses(ToolExecutionResult result) {
+        List<?> history = result.conversationHistory();
+        return ((ToolResponseMessage) history.get(history.size() - 1)).getResponses();
+    }
+
+    private static ToolCallback tool(String name, Supplier<String> body) {
+        return tool(name, input -> body.get());
+    }
+
+    private static ToolCallback tool(String name, Function<String, String> body) {
+        ToolDefinition definition = ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return definition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return body.apply(toolInput);
+            }
+        };
+    }
+
+    private static String sleep(long millis, String result) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+}
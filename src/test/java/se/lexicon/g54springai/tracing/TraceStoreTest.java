@@ -0,0 +1,105 @@
+package se.lexicon.g54springai.tracing;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TraceStoreTest {
+
+    @Test
+    void buildsTheTimelineOfARequestWithItsModelAndToolCalls() {
+        TraceStore store = new TraceStore(10, 100);
+        try (SdkTracerProvider provider = tracerProvider(store)) {
+            Tracer tracer = provider.get("test");
+            Span request = tracer.spanBuilder("http get /api/chat/messages/new-chat-memory").startSpan();
+            try (Scope ignored = request.makeCurrent()) {
+                // two round trips with a tool call in between, as in Spring AI's tool-calling loop
+                tracer.spanBuilder("chat gpt-4o").setAttribute("gen_ai.operation.name", "chat").startSpan().end();
+                tracer.spanBuilder("tool_call fetchNames").setAttribute("spring.ai.kind", "tool_call")
+                        .setAttribute(AttributeKey.stringKey("tool.result.size"), "120").startSpan().end();
+                tracer.spanBuilder("chat gpt-4o").setAttribute("gen_ai.operation.name", "chat").startSpan().end();
+            }
+            request.end();
+
+            String traceId = request.getSpanContext().getTraceId();
+            TraceTimeline timeline = store.get(traceId);
+            assertEquals("http get /api/chat/messages/new-chat-memory", timeline.name());
+            assertEquals(2, timeline.modelCalls());
+            assertEquals(1, timeline.toolCalls());
+            List<String> names = timeline.spans().stream().map(TraceSpan::name).toList();
+            assertEquals(List.of("http get /api/chat/messages/new-chat-memory", "chat gpt-4o", "tool_call fetchNames",
+                    "chat gpt-4o"), names);
+            TraceSpan tool = timeline.spans().get(2);
+            assertEquals(request.getSpanContext().getSpanId(), tool.parentSpanId());
+            assertEquals("120", tool.attributes().get("tool.result.size"));
+            assertTrue(tool.startMillis() >= 0);
+        }
+    }
+
+    @Test
+    void keepsOnlyTheMostRecentTracesAndCapsTheirSpans() {
+        TraceStore store = new TraceStore(2, 3);
+        try (SdkTracerProvider provider = tracerProvider(store)) {
+            Tracer tracer = provider.get("test");
+            Span first = tracer.spanBuilder("first").startSpan();
+            first.end();
+            String last = null;
+            for (int i = 0; i < 2; i++) {
+                Span root = tracer.spanBuilder("request " + i).startSpan();
+                try (Scope ignored = root.makeCurrent()) {
+                    for (int round = 0; round < 5; round++) {
+                        tracer.spanBuilder("round trip").startSpan().end();
+                    }
+                }
+                root.end();
+                last = root.getSpanContext().getTraceId();
+            }
+
+            assertNull(store.get(first.getSpanContext().getTraceId()));
+            List<TraceTimeline> recent = store.recent(10);
+            assertEquals(2, recent.size());
+            assertEquals(last, recent.get(0).traceId());
+            assertNull(recent.get(0).spans());
+            // 6 spans ended, 3 round trips and the root kept: the count still shows the loop
+            assertEquals(6, recent.get(0).spanCount());
+            assertEquals(4, store.get(last).spans().size());
+            assertEquals("request 1", recent.get(0).name());
+        }
+    }
+
+    @Test
+    void readingATraceDoesNotKeepItFromBeingDropped() {
+        TraceStore store = new TraceStore(2, 10);
+        try (SdkTracerProvider provider = tracerProvider(store)) {
+            Tracer tracer = provider.get("test");
+            Span first = tracer.spanBuilder("first").startSpan();
+            first.end();
+            Span second = tracer.spanBuilder("second").startSpan();
+            second.end();
+
+            // a client polling the oldest trace must not turn it into the newest one
+            store.get(first.getSpanContext().getTraceId());
+            assertEquals("second", store.recent(1).get(0).name());
+
+            tracer.spanBuilder("third").startSpan().end();
+            assertNull(store.get(first.getSpanContext().getTraceId()));
+            assertEquals(List.of("third", "second"), store.recent(10).stream().map(TraceTimeline::name).toList());
+        }
+    }
+
+    private static SdkTracerProvider tracerProvider(TraceStore store) {
+        return SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(new InMemorySpanExporter(store)))
+                .build();
+    }
+}